@@ -63,6 +63,7 @@ public class BulletStats {
 
     // JAVA NOTE: added for statistics in applet demo
     public static long stepSimulationTime;
+    public static long stepSimulationNanos;
     public static long updateTime;
 
     private static boolean enableProfile = false;
@@ -607,6 +607,85 @@ public abstract class AxisSweep3Internal extends BroadphaseInterface {
         return true;
     }
 
+    public void aabbTest(Vector3f aabbMin, Vector3f aabbMax, BroadphaseAabbCallback callback) {
+        int[] min = new int[3], max = new int[3];
+        quantize(min, aabbMin, 0);
+        quantize(max, aabbMax, 1);
+
+        // A handle overlaps the query on an axis when its min edge is not above the query max and its max edge is not
+        // below the query min. So either all min edges up to the query max, or all max edges from the query min onwards
+        // have to be scanned; pick the axis and side with the fewest edges.
+        int limit = numHandles * 2;
+        int scanAxis = 0;
+        int scanFrom = 1;
+        int scanTo = limit;
+        int scanMax = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            int upper = upperBound(pEdges[axis], max[axis], limit);
+            if (upper - 1 < scanTo - scanFrom + 1) {
+                scanAxis = axis;
+                scanFrom = 1;
+                scanTo = upper - 1;
+                scanMax = 0;
+            }
+            int lower = lowerBound(pEdges[axis], min[axis], limit);
+            if (limit - lower + 1 < scanTo - scanFrom + 1) {
+                scanAxis = axis;
+                scanFrom = lower;
+                scanTo = limit;
+                scanMax = 1;
+            }
+        }
+
+        EdgeArray edges = pEdges[scanAxis];
+        for (int i = scanFrom; i <= scanTo; i++) {
+            if (edges.isMax(i) != scanMax) {
+                continue;
+            }
+            Handle handle = getHandle(edges.getHandle(i));
+            boolean overlap = true;
+            for (int axis = 0; axis < 3; axis++) {
+                if (pEdges[axis].getPos(handle.getMinEdges(axis)) > max[axis] || pEdges[axis].getPos(handle.getMaxEdges(axis)) < min[axis]) {
+                    overlap = false;
+                    break;
+                }
+            }
+            if (overlap && !callback.process(handle)) {
+                return;
+            }
+        }
+    }
+
+    // index of the first edge with a position above pos, edges 1..limit are sorted by position
+    private static int upperBound(EdgeArray edges, int pos, int limit) {
+        int lo = 1;
+        int hi = limit + 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (edges.getPos(mid) <= pos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // index of the first edge with a position not below pos
+    private static int lowerBound(EdgeArray edges, int pos, int limit) {
+        int lo = 1;
+        int hi = limit + 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (edges.getPos(mid) < pos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     public OverlappingPairCache getOverlappingPairCache() {
         return pairCache;
     }
@@ -43,6 +43,9 @@ public abstract class BroadphaseInterface {
 
     public abstract OverlappingPairCache getOverlappingPairCache();
 
+    ///aabbTest reports every proxy whose AABB overlaps the given AABB to the callback
+    public abstract void aabbTest(Vector3f aabbMin, Vector3f aabbMax, BroadphaseAabbCallback callback);
+
     ///getAabb returns the axis aligned bounding box in the 'global' coordinate frame
     ///will add some transform later
     public abstract void getBroadphaseAabb(Vector3f aabbMin, Vector3f aabbMax);
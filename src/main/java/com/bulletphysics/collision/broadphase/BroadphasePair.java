@@ -39,6 +39,10 @@ public class BroadphasePair {
     public CollisionAlgorithm algorithm;
     public Object userInfo;
 
+    // position in the awake or sleeping list of HashedOverlappingPairCache
+    boolean sleeping;
+    int listIndex = -1;
+
     public BroadphasePair() {
     }
 
@@ -46,6 +46,8 @@ public class BroadphaseProxy {
 
     public int uniqueId; // uniqueId is introduced for paircache. could get rid of this, by calculating the address offset etc.
 
+    int numSleepingPairs; // pairs kept on sleeping list by HashedOverlappingPairCache
+
     public BroadphaseProxy() {
     }
 
@@ -57,6 +57,7 @@ public class Dbvt {
         }
         //btAlignedFree(m_free);
         free = null;
+        leaves = 0;
     }
 
     public boolean empty() {
@@ -318,9 +319,19 @@ public class Dbvt {
     }
 
     public static void collideTV(Node root, DbvtAabbMm volume, ICollide policy) {
+        if (root != null) {
+            collideTV(root, volume, policy, new ObjectArrayList<Node>(SIMPLE_STACKSIZE));
+        }
+    }
+
+    /**
+     * Same as {@link #collideTV(Node, DbvtAabbMm, ICollide)} but uses the given
+     * traversal stack, which is cleared first, so repeated queries don't allocate.
+     */
+    public static void collideTV(Node root, DbvtAabbMm volume, ICollide policy, ObjectArrayList<Node> stack) {
         //DBVT_CHECKTYPE
         if (root != null) {
-            ObjectArrayList<Node> stack = new ObjectArrayList<Node>(SIMPLE_STACKSIZE);
+            stack.clear();
             stack.add(root);
             do {
                 Node n = stack.remove(stack.size() - 1);
@@ -362,6 +373,50 @@ public class Dbvt {
         }
     }
 
+    /**
+     * Like {@link #collideRAY} but limited to the segment between rayFrom and rayTo.
+     */
+    public static void rayTest(Node root, Vector3f rayFrom, Vector3f rayTo, ICollide policy) {
+        if (root != null) {
+            Vector3f dir = new Vector3f();
+            dir.sub(rayTo, rayFrom);
+            // avoid NaNs from 0*inf when the ray starts exactly on a slab boundary
+            float invX = dir.x == 0f ? 1e30f : 1f / dir.x;
+            float invY = dir.y == 0f ? 1e30f : 1f / dir.y;
+            float invZ = dir.z == 0f ? 1e30f : 1f / dir.z;
+            ObjectArrayList<Node> stack = new ObjectArrayList<Node>(SIMPLE_STACKSIZE);
+            stack.add(root);
+            do {
+                Node node = stack.remove(stack.size() - 1);
+                Vector3f mi = node.volume.Mins();
+                Vector3f mx = node.volume.Maxs();
+
+                float t0 = (mi.x - rayFrom.x) * invX;
+                float t1 = (mx.x - rayFrom.x) * invX;
+                float tmin = Math.min(t0, t1);
+                float tmax = Math.max(t0, t1);
+                t0 = (mi.y - rayFrom.y) * invY;
+                t1 = (mx.y - rayFrom.y) * invY;
+                tmin = Math.max(tmin, Math.min(t0, t1));
+                tmax = Math.min(tmax, Math.max(t0, t1));
+                t0 = (mi.z - rayFrom.z) * invZ;
+                t1 = (mx.z - rayFrom.z) * invZ;
+                tmin = Math.max(tmin, Math.min(t0, t1));
+                tmax = Math.min(tmax, Math.max(t0, t1));
+
+                if (tmin <= tmax && tmax >= 0f && tmin <= 1f) {
+                    if (node.isinternal()) {
+                        stack.add(node.childs[0]);
+                        stack.add(node.childs[1]);
+                    } else {
+                        policy.Process(node);
+                    }
+                }
+            }
+            while (stack.size() != 0);
+        }
+    }
+
     public static void collideKDOP(Node root, Vector3f[] normals, float[] offsets, int count, ICollide policy) {
         //DBVT_CHECKTYPE
         if (root != null) {
@@ -51,6 +51,14 @@ public class DbvtBroadphase extends BroadphaseInterface {
     public int gid;                                                // Gen id
     public boolean releasepaircache;                               // Release pair cache on delete
 
+    private final DbvtAabbMm setAabbVolume = new DbvtAabbMm();
+    private final Vector3f setAabbDelta = new Vector3f();
+    private final Vector3f setAabbCenter = new Vector3f();
+
+    // reused by aabbTest, a nested query from the callback falls back to a new collider:
+    private final DbvtAabbCollider aabbTestCollider = new DbvtAabbCollider(null);
+    private final ObjectArrayList<Dbvt.Node> aabbTestStack = new ObjectArrayList<Dbvt.Node>(Dbvt.SIMPLE_STACKSIZE);
+
     //#if DBVT_BP_PROFILE
     //btClock					m_clock;
     //struct	{
@@ -196,7 +204,7 @@ public class DbvtBroadphase extends BroadphaseInterface {
 
     public void setAabb(BroadphaseProxy absproxy, Vector3f aabbMin, Vector3f aabbMax, Dispatcher dispatcher) {
         DbvtProxy proxy = (DbvtProxy) absproxy;
-        DbvtAabbMm aabb = DbvtAabbMm.FromMM(aabbMin, aabbMax, new DbvtAabbMm());
+        DbvtAabbMm aabb = DbvtAabbMm.FromMM(aabbMin, aabbMax, setAabbVolume);
         if (proxy.stage == STAGECOUNT) {
             // fixed -> dynamic set
             sets[1].remove(proxy.leaf);
@@ -204,10 +212,10 @@ public class DbvtBroadphase extends BroadphaseInterface {
         } else {
             // dynamic set:
             if (DbvtAabbMm.Intersect(proxy.leaf.volume, aabb)) {/* Moving				*/
-                Vector3f delta = new Vector3f();
+                Vector3f delta = setAabbDelta;
                 delta.add(aabbMin, aabbMax);
                 delta.scale(0.5f);
-                delta.sub(proxy.aabb.Center(new Vector3f()));
+                delta.sub(proxy.aabb.Center(setAabbCenter));
                 //#ifdef DBVT_BP_MARGIN
                 delta.scale(predictedframes);
                 sets[0].update(proxy.leaf, aabb, delta, DBVT_BP_MARGIN);
@@ -252,6 +260,37 @@ public class DbvtBroadphase extends BroadphaseInterface {
         //#endif
     }
 
+    /**
+     * Reports proxies overlapping the given AABB to the callback. Reuses an instance
+     * collider and traversal stack, so like the other broadphase methods it must be
+     * called serially, not from multiple threads at once. The callback may issue
+     * nested queries.
+     */
+    public void aabbTest(Vector3f aabbMin, Vector3f aabbMax, BroadphaseAabbCallback callback) {
+        if (aabbTestCollider.callback != null) {
+            DbvtAabbCollider collider = new DbvtAabbCollider(callback);
+            DbvtAabbMm.FromMM(aabbMin, aabbMax, collider.bounds);
+            Dbvt.collideTV(sets[DYNAMIC_SET].root, collider.bounds, collider);
+            if (!collider.stopped) {
+                Dbvt.collideTV(sets[FIXED_SET].root, collider.bounds, collider);
+            }
+            return;
+        }
+
+        DbvtAabbCollider collider = aabbTestCollider;
+        collider.callback = callback;
+        collider.stopped = false;
+        try {
+            DbvtAabbMm.FromMM(aabbMin, aabbMax, collider.bounds);
+            Dbvt.collideTV(sets[DYNAMIC_SET].root, collider.bounds, collider, aabbTestStack);
+            if (!collider.stopped) {
+                Dbvt.collideTV(sets[FIXED_SET].root, collider.bounds, collider, aabbTestStack);
+            }
+        } finally {
+            collider.callback = null;
+        }
+    }
+
     public OverlappingPairCache getOverlappingPairCache() {
         return paircache;
     }
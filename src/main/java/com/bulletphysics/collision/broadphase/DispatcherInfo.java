@@ -42,6 +42,14 @@ public class DispatcherInfo {
     public boolean enableSPU = true;
     public boolean useEpa = true;
     public float allowedCcdPenetration = 0.04f;
+    // skip GJK for separated convex pairs while a conservative distance bound stays above the contact threshold
+    public boolean useConvexConservativeDistanceUtil = true;
+    // also skip separated triangles of concave meshes (requires the above), assumes static mesh vertices:
+    // call ConvexConcaveCollisionAlgorithm.clearCache after the mesh is refit or deformed
+    public boolean useTriangleSeparationCache = false;
+    // gather contacts of convex objects against triangle meshes, remove internal edge contacts and keep at most four,
+    // changes the generated contacts: enable by world.getDispatchInfo().useMeshContactReduction = true
+    public boolean useMeshContactReduction = false;
     //btStackAlloc*	m_stackAllocator;
 
     public DispatcherInfo() {
@@ -24,13 +24,19 @@
 package com.bulletphysics.collision.broadphase;
 
 import com.bulletphysics.BulletStats;
+import com.bulletphysics.collision.dispatch.CollisionObject;
 import com.bulletphysics.linearmath.MiscUtil;
 import com.bulletphysics.util.IntArrayList;
 import com.bulletphysics.util.ObjectArrayList;
 import com.bulletphysics.util.ObjectPool;
 
 /**
- * Hash-space based {@link OverlappingPairCache}.
+ * Hash-space based {@link OverlappingPairCache}.<p>
+ *
+ * When sleeping pairs are enabled (see {@link #setUseSleepingPairs}), pairs of
+ * objects that are both sleeping or static are kept on a separate list that is
+ * not walked by {@link #processAwakeOverlappingPairs} until one of the objects
+ * is activated again.
  *
  * @author jezek2
  */
@@ -48,6 +54,10 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
     private IntArrayList next = new IntArrayList();
     protected OverlappingPairCallback ghostPairCallback;
 
+    private boolean useSleepingPairs = false;
+    private final ObjectArrayList<BroadphasePair> awakePairs = new ObjectArrayList<BroadphasePair>();
+    private final ObjectArrayList<BroadphasePair> sleepingPairs = new ObjectArrayList<BroadphasePair>();
+
     public HashedOverlappingPairCache() {
         int initialAllocatedSize = 2;
         // JAVA TODO: overlappingPairArray.ensureCapacity(initialAllocatedSize);
@@ -90,6 +100,10 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
 
         cleanOverlappingPair(pair, dispatcher);
 
+        if (useSleepingPairs) {
+            removeFromList(pair);
+        }
+
         Object userData = pair.userInfo;
 
         assert (pair.pProxy0.getUid() == proxyId1);
@@ -157,7 +171,16 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
         }
 
         // Copy the last pair into the remove pair's spot.
-        overlappingPairArray.getQuick(pairIndex).set(overlappingPairArray.getQuick(lastPairIndex));
+        overlappingPairArray.getQuick(pairIndex).set(last);
+
+        if (useSleepingPairs) {
+            // the removed pair instance now represents the last pair, take its place in the list
+            ObjectArrayList<BroadphasePair> list = last.sleeping ? sleepingPairs : awakePairs;
+            list.setQuick(last.listIndex, pair);
+            pair.sleeping = last.sleeping;
+            pair.listIndex = last.listIndex;
+            last.listIndex = -1;
+        }
 
         // Insert the last pair into the hash table
         next.set(pairIndex, hashTable.get(lastHash));
@@ -195,6 +218,87 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
         }
     }
 
+    /**
+     * Same as {@link #processAllOverlappingPairs}, but when sleeping pairs are enabled
+     * only awake pairs are passed to the callback. Pairs of objects that are both
+     * sleeping or static are moved to the sleeping list instead.
+     */
+    public void processAwakeOverlappingPairs(OverlapCallback callback, Dispatcher dispatcher) {
+        if (!useSleepingPairs) {
+            processAllOverlappingPairs(callback, dispatcher);
+            return;
+        }
+
+        for (int i = 0; i < awakePairs.size(); ) {
+            BroadphasePair pair = awakePairs.getQuick(i);
+            if (isResting(pair.pProxy0) && isResting(pair.pProxy1)) {
+                removeFromList(pair);
+                addToList(pair, true);
+            } else if (callback.processOverlap(pair)) {
+                removeOverlappingPair(pair.pProxy0, pair.pProxy1, dispatcher);
+
+                BulletStats.gOverlappingPairs--;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Moves sleeping pairs that have an activated object back to the awake list.
+     */
+    public void wakeUpSleepingPairs() {
+        for (int i = 0; i < sleepingPairs.size(); ) {
+            BroadphasePair pair = sleepingPairs.getQuick(i);
+            if (!isResting(pair.pProxy0) || !isResting(pair.pProxy1)) {
+                removeFromList(pair);
+                addToList(pair, false);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Returns true when the object of given proxy has some sleeping pairs, but it was
+     * activated since the pairs were put to sleep.
+     */
+    public boolean needsWakeUp(BroadphaseProxy proxy) {
+        return proxy.numSleepingPairs > 0 && !isResting(proxy);
+    }
+
+    public boolean getUseSleepingPairs() {
+        return useSleepingPairs;
+    }
+
+    public void setUseSleepingPairs(boolean useSleepingPairs) {
+        if (this.useSleepingPairs == useSleepingPairs) {
+            return;
+        }
+
+        for (int i = 0; i < sleepingPairs.size(); i++) {
+            BroadphasePair pair = sleepingPairs.getQuick(i);
+            pair.pProxy0.numSleepingPairs--;
+            pair.pProxy1.numSleepingPairs--;
+        }
+        awakePairs.clear();
+        sleepingPairs.clear();
+
+        this.useSleepingPairs = useSleepingPairs;
+        for (int i = 0; i < overlappingPairArray.size(); i++) {
+            BroadphasePair pair = overlappingPairArray.getQuick(i);
+            pair.sleeping = false;
+            pair.listIndex = -1;
+            if (useSleepingPairs) {
+                addToList(pair, false);
+            }
+        }
+    }
+
+    public int getNumSleepingPairs() {
+        return sleepingPairs.size();
+    }
+
     public void removeOverlappingPairsContainingProxy(BroadphaseProxy proxy, Dispatcher dispatcher) {
         processAllOverlappingPairs(new RemovePairCallback(proxy), dispatcher);
     }
@@ -224,7 +328,7 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
         if (proxy0.getUid() > proxy1.getUid()) {
             BroadphaseProxy tmp = proxy0;
             proxy0 = proxy1;
-            proxy1 = proxy0;
+            proxy1 = tmp;
         }
         int proxyId1 = proxy0.getUid();
         int proxyId2 = proxy1.getUid();
@@ -328,6 +432,10 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
 
         overlappingPairArray.setQuick(overlappingPairArray.size() - 1, pair);
 
+        if (useSleepingPairs) {
+            addToList(pair, false);
+        }
+
         next.set(count, hashTable.get(hash));
         hashTable.set(hash, count);
 
@@ -365,6 +473,45 @@ public class HashedOverlappingPairCache extends OverlappingPairCache {
         }
     }
 
+    private void addToList(BroadphasePair pair, boolean sleeping) {
+        ObjectArrayList<BroadphasePair> list = sleeping ? sleepingPairs : awakePairs;
+        pair.sleeping = sleeping;
+        pair.listIndex = list.size();
+        list.add(pair);
+
+        if (sleeping) {
+            pair.pProxy0.numSleepingPairs++;
+            pair.pProxy1.numSleepingPairs++;
+        }
+    }
+
+    private void removeFromList(BroadphasePair pair) {
+        ObjectArrayList<BroadphasePair> list = pair.sleeping ? sleepingPairs : awakePairs;
+        int lastIndex = list.size() - 1;
+        BroadphasePair last = list.getQuick(lastIndex);
+        list.setQuick(pair.listIndex, last);
+        last.listIndex = pair.listIndex;
+        list.removeQuick(lastIndex);
+        pair.listIndex = -1;
+
+        if (pair.sleeping) {
+            pair.pProxy0.numSleepingPairs--;
+            pair.pProxy1.numSleepingPairs--;
+            pair.sleeping = false;
+        }
+    }
+
+    /**
+     * Static and sleeping objects don't move, so their pairs don't need to be processed.
+     */
+    private static boolean isResting(BroadphaseProxy proxy) {
+        if (proxy.clientObject instanceof CollisionObject) {
+            CollisionObject colObj = (CollisionObject) proxy.clientObject;
+            return !colObj.isActive() || colObj.isStaticObject();
+        }
+        return false;
+    }
+
     private boolean equalsPair(BroadphasePair pair, int proxyId1, int proxyId2) {
         return pair.pProxy0.getUid() == proxyId1 && pair.pProxy1.getUid() == proxyId2;
     }
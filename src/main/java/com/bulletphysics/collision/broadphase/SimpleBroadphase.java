@@ -23,6 +23,7 @@
 
 package com.bulletphysics.collision.broadphase;
 
+import com.bulletphysics.linearmath.AabbUtil2;
 import com.bulletphysics.util.ObjectArrayList;
 
 import javax.vecmath.Vector3f;
@@ -109,6 +110,17 @@ public class SimpleBroadphase extends BroadphaseInterface {
         }
     }
 
+    public void aabbTest(Vector3f aabbMin, Vector3f aabbMax, BroadphaseAabbCallback callback) {
+        for (int i = 0; i < handles.size(); i++) {
+            SimpleBroadphaseProxy proxy = handles.getQuick(i);
+            if (AabbUtil2.testAabbAgainstAabb2(aabbMin, aabbMax, proxy.min, proxy.max)) {
+                if (!callback.process(proxy)) {
+                    return;
+                }
+            }
+        }
+    }
+
     public OverlappingPairCache getOverlappingPairCache() {
         return pairCache;
     }
@@ -0,0 +1,216 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.BulletGlobals;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.shapes.CapsuleShape;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.linearmath.TransformUtil;
+import com.bulletphysics.linearmath.VectorUtil;
+import com.bulletphysics.util.ObjectArrayList;
+import com.bulletphysics.util.ObjectPool;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * CapsuleCapsuleCollisionAlgorithm provides collision detection between two capsules, using the closest points of
+ * their core segments.
+ */
+public class CapsuleCapsuleCollisionAlgorithm extends CollisionAlgorithm {
+
+    private boolean ownManifold;
+    private PersistentManifold manifoldPtr;
+
+    public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+        super.init(ci);
+        ownManifold = false;
+        manifoldPtr = mf;
+
+        if (manifoldPtr == null && dispatcher.needsCollision(body0, body1)) {
+            manifoldPtr = dispatcher.getNewManifold(body0, body1);
+            ownManifold = true;
+        }
+    }
+
+    @Override
+    public void init(CollisionAlgorithmConstructionInfo ci) {
+        super.init(ci);
+    }
+
+    @Override
+    public void destroy() {
+        if (ownManifold) {
+            if (manifoldPtr != null) {
+                dispatcher.releaseManifold(manifoldPtr);
+            }
+            manifoldPtr = null;
+        }
+    }
+
+    @Override
+    public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        if (manifoldPtr == null) {
+            return;
+        }
+
+        CapsuleShape capsuleA = (CapsuleShape) body0.getCollisionShape();
+        CapsuleShape capsuleB = (CapsuleShape) body1.getCollisionShape();
+
+        Transform transformA = body0.getWorldTransform(new Transform());
+        Transform transformB = body1.getWorldTransform(new Transform());
+
+        Vector3f directionA = new Vector3f();
+        transformA.basis.getColumn(capsuleA.getUpAxis(), directionA);
+        Vector3f directionB = new Vector3f();
+        transformB.basis.getColumn(capsuleB.getUpAxis(), directionB);
+        float radiusA = getScaledRadius(capsuleA);
+        float radiusB = getScaledRadius(capsuleB);
+
+        // translation between centers
+        Vector3f translation = new Vector3f();
+        translation.sub(transformB.origin, transformA.origin);
+
+        // compute the closest points of the capsule line segments
+        Vector3f ptsVector = new Vector3f(); // the vector between the closest points
+        Vector3f offsetA = new Vector3f(); // offsets from segment centers to their closest points
+        Vector3f offsetB = new Vector3f();
+        segmentsClosestPoints(ptsVector, offsetA, offsetB, translation, directionA, capsuleA.getHalfHeight(), directionB, capsuleB.getHalfHeight());
+
+        float lenSqr = ptsVector.lengthSquared();
+        float distance = (float) Math.sqrt(lenSqr) - radiusA - radiusB;
+
+        resultOut.setPersistentManifold(manifoldPtr);
+
+        if (distance < manifoldPtr.getContactBreakingThreshold()) {
+            Vector3f normalOnB = new Vector3f();
+            if (lenSqr <= BulletGlobals.SIMD_EPSILON * BulletGlobals.SIMD_EPSILON) {
+                // degenerate case where the segments intersect: take a vector tangential to directionA
+                TransformUtil.planeSpace1(directionA, normalOnB, new Vector3f());
+            } else {
+                normalOnB.scale(-1f / (float) Math.sqrt(lenSqr), ptsVector);
+            }
+
+            Vector3f pointOnB = new Vector3f();
+            pointOnB.add(transformB.origin, offsetB);
+            pointOnB.scaleAdd(radiusB, normalOnB, pointOnB);
+
+            // report a contact. internally this will be kept persistent, and contact reduction is done
+            resultOut.addContactPoint(normalOnB, pointOnB, distance);
+        }
+
+        if (ownManifold) {
+            if (manifoldPtr.getNumContacts() != 0) {
+                resultOut.refreshContactPoints();
+            }
+        }
+    }
+
+    /**
+     * @return The radius of the capsule, including the local scaling of its radial axes.
+     */
+    static float getScaledRadius(CapsuleShape capsule) {
+        Vector3f scaling = capsule.getLocalScaling(new Vector3f());
+        return capsule.getRadius() * VectorUtil.getCoord(scaling, (capsule.getUpAxis() + 2) % 3);
+    }
+
+    private static void segmentsClosestPoints(Vector3f ptsVector, Vector3f offsetA, Vector3f offsetB, Vector3f translation,
+                                              Vector3f dirA, float hlenA, Vector3f dirB, float hlenB) {
+        // compute the parameters of the closest points on each line segment
+        float dirA_dot_dirB = dirA.dot(dirB);
+        float dirA_dot_trans = dirA.dot(translation);
+        float dirB_dot_trans = dirB.dot(translation);
+
+        float denom = 1f - dirA_dot_dirB * dirA_dot_dirB;
+
+        float tA, tB;
+        if (denom == 0f) {
+            tA = 0f;
+        } else {
+            tA = (dirA_dot_trans - dirB_dot_trans * dirA_dot_dirB) / denom;
+            tA = clamp(tA, hlenA);
+        }
+
+        tB = tA * dirA_dot_dirB - dirB_dot_trans;
+
+        if (tB < -hlenB) {
+            tB = -hlenB;
+            tA = clamp(tB * dirA_dot_dirB + dirA_dot_trans, hlenA);
+        } else if (tB > hlenB) {
+            tB = hlenB;
+            tA = clamp(tB * dirA_dot_dirB + dirA_dot_trans, hlenA);
+        }
+
+        // compute the closest points relative to segment centers.
+        offsetA.scale(tA, dirA);
+        offsetB.scale(tB, dirB);
+
+        ptsVector.sub(translation, offsetA);
+        ptsVector.add(offsetB);
+    }
+
+    private static float clamp(float t, float halfLength) {
+        if (t < -halfLength) {
+            return -halfLength;
+        } else if (t > halfLength) {
+            return halfLength;
+        }
+        return t;
+    }
+
+    @Override
+    public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        // not yet
+        return 1f;
+    }
+
+    @Override
+    public void getAllContactManifolds(ObjectArrayList<PersistentManifold> manifoldArray) {
+        if (manifoldPtr != null && ownManifold) {
+            manifoldArray.add(manifoldPtr);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+        private final ObjectPool<CapsuleCapsuleCollisionAlgorithm> pool = new ObjectPool<CapsuleCapsuleCollisionAlgorithm>(CapsuleCapsuleCollisionAlgorithm.class);
+
+        @Override
+        public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+            CapsuleCapsuleCollisionAlgorithm algo = pool.get();
+            algo.init(null, ci, body0, body1);
+            return algo;
+        }
+
+        @Override
+        public void releaseCollisionAlgorithm(CollisionAlgorithm algo) {
+            pool.release((CapsuleCapsuleCollisionAlgorithm) algo);
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.BulletGlobals;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.shapes.CapsuleShape;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.linearmath.TransformUtil;
+import com.bulletphysics.util.ObjectArrayList;
+import com.bulletphysics.util.ObjectPool;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * CapsuleSphereCollisionAlgorithm provides collision detection between a capsule and a sphere, using the closest point
+ * on the core segment of the capsule.
+ */
+public class CapsuleSphereCollisionAlgorithm extends CollisionAlgorithm {
+
+    private boolean ownManifold;
+    private PersistentManifold manifoldPtr;
+    private boolean isSwapped;
+
+    public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+        super.init(ci);
+        this.ownManifold = false;
+        this.manifoldPtr = mf;
+        this.isSwapped = isSwapped;
+
+        CollisionObject capsuleObj = isSwapped ? col1 : col0;
+        CollisionObject sphereObj = isSwapped ? col0 : col1;
+
+        if (manifoldPtr == null && dispatcher.needsCollision(capsuleObj, sphereObj)) {
+            manifoldPtr = dispatcher.getNewManifold(capsuleObj, sphereObj);
+            ownManifold = true;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (ownManifold) {
+            if (manifoldPtr != null) {
+                dispatcher.releaseManifold(manifoldPtr);
+            }
+            manifoldPtr = null;
+        }
+    }
+
+    @Override
+    public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        if (manifoldPtr == null) {
+            return;
+        }
+
+        CollisionObject capsuleObj = isSwapped ? body1 : body0;
+        CollisionObject sphereObj = isSwapped ? body0 : body1;
+
+        CapsuleShape capsule = (CapsuleShape) capsuleObj.getCollisionShape();
+        SphereShape sphere = (SphereShape) sphereObj.getCollisionShape();
+
+        Transform capsuleTrans = capsuleObj.getWorldTransform(new Transform());
+        Vector3f sphereCenter = new Vector3f(sphereObj.getWorldTransform(new Transform()).origin);
+
+        Vector3f direction = new Vector3f();
+        capsuleTrans.basis.getColumn(capsule.getUpAxis(), direction);
+        float capsuleRadius = CapsuleCapsuleCollisionAlgorithm.getScaledRadius(capsule);
+        float sphereRadius = sphere.getRadius();
+
+        // closest point on the capsule segment to the sphere center
+        Vector3f diff = new Vector3f();
+        diff.sub(sphereCenter, capsuleTrans.origin);
+        float t = direction.dot(diff);
+        float halfHeight = capsule.getHalfHeight();
+        if (t < -halfHeight) {
+            t = -halfHeight;
+        } else if (t > halfHeight) {
+            t = halfHeight;
+        }
+        Vector3f closest = new Vector3f();
+        closest.scaleAdd(t, direction, capsuleTrans.origin);
+
+        // normal pointing from the capsule towards the sphere
+        Vector3f normal = new Vector3f();
+        normal.sub(sphereCenter, closest);
+        float lenSqr = normal.lengthSquared();
+        float len = (float) Math.sqrt(lenSqr);
+        float dist = len - capsuleRadius - sphereRadius;
+
+        resultOut.setPersistentManifold(manifoldPtr);
+
+        if (dist < manifoldPtr.getContactBreakingThreshold()) {
+            if (lenSqr <= BulletGlobals.SIMD_EPSILON * BulletGlobals.SIMD_EPSILON) {
+                // sphere center on the capsule segment: take a vector tangential to the capsule axis
+                TransformUtil.planeSpace1(direction, normal, new Vector3f());
+            } else {
+                normal.scale(1f / len);
+            }
+
+            // report a contact in the order of the manifold (capsule, sphere). internally this will be kept persistent,
+            // and contact reduction is done
+            Vector3f pOnSphere = new Vector3f();
+            pOnSphere.scaleAdd(-sphereRadius, normal, sphereCenter);
+            normal.negate();
+            resultOut.addContactPoint(normal, pOnSphere, dist);
+        }
+
+        if (ownManifold) {
+            if (manifoldPtr.getNumContacts() != 0) {
+                resultOut.refreshContactPoints();
+            }
+        }
+    }
+
+    @Override
+    public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        // not yet
+        return 1f;
+    }
+
+    @Override
+    public void getAllContactManifolds(ObjectArrayList<PersistentManifold> manifoldArray) {
+        if (manifoldPtr != null && ownManifold) {
+            manifoldArray.add(manifoldPtr);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+        private final ObjectPool<CapsuleSphereCollisionAlgorithm> pool = new ObjectPool<CapsuleSphereCollisionAlgorithm>(CapsuleSphereCollisionAlgorithm.class);
+
+        @Override
+        public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+            CapsuleSphereCollisionAlgorithm algo = pool.get();
+            algo.init(null, ci, body0, body1, swapped);
+            return algo;
+        }
+
+        @Override
+        public void releaseCollisionAlgorithm(CollisionAlgorithm algo) {
+            pool.release((CapsuleSphereCollisionAlgorithm) algo);
+        }
+    }
+
+}
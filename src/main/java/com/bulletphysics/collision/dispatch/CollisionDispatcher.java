@@ -29,6 +29,7 @@ import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
 import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
 import com.bulletphysics.collision.broadphase.Dispatcher;
 import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.broadphase.HashedOverlappingPairCache;
 import com.bulletphysics.collision.broadphase.OverlapCallback;
 import com.bulletphysics.collision.broadphase.OverlappingPairCache;
 import com.bulletphysics.collision.narrowphase.PersistentManifold;
@@ -45,7 +46,7 @@ import java.util.Collections;
  */
 public class CollisionDispatcher extends Dispatcher {
 
-    protected final ObjectPool<PersistentManifold> manifoldsPool = ObjectPool.get(PersistentManifold.class);
+    protected final ObjectPool<PersistentManifold> manifoldsPool = new ObjectPool<PersistentManifold>(PersistentManifold.class);
 
     private static final int MAX_BROADPHASE_COLLISION_TYPES = BroadphaseNativeType.MAX_BROADPHASE_COLLISION_TYPES.ordinal();
     private int count = 0;
@@ -85,6 +86,19 @@ public class CollisionDispatcher extends Dispatcher {
         doubleDispatch[proxyType0][proxyType1] = createFunc;
     }
 
+    /**
+     * Overrides the create function used for the given pair of shape types. Pairs that
+     * already have an algorithm keep it until their algorithm is freed.
+     */
+    public void registerCollisionCreateFunc(BroadphaseNativeType proxyType0, BroadphaseNativeType proxyType1, CollisionAlgorithmCreateFunc createFunc) {
+        assert (createFunc != null);
+        doubleDispatch[proxyType0.ordinal()][proxyType1.ordinal()] = createFunc;
+    }
+
+    public CollisionAlgorithmCreateFunc getCollisionCreateFunc(BroadphaseNativeType proxyType0, BroadphaseNativeType proxyType1) {
+        return doubleDispatch[proxyType0.ordinal()][proxyType1.ordinal()];
+    }
+
     public NearCallback getNearCallback() {
         return nearCallback;
     }
@@ -244,7 +258,12 @@ public class CollisionDispatcher extends Dispatcher {
     public void dispatchAllCollisionPairs(OverlappingPairCache pairCache, DispatcherInfo dispatchInfo, Dispatcher dispatcher) {
         //m_blockedForChanges = true;
         collisionPairCallback.init(dispatchInfo, this);
-        pairCache.processAllOverlappingPairs(collisionPairCallback, dispatcher);
+        if (pairCache instanceof HashedOverlappingPairCache) {
+            // pairs on the sleeping list are skipped entirely
+            ((HashedOverlappingPairCache) pairCache).processAwakeOverlappingPairs(collisionPairCallback, dispatcher);
+        } else {
+            pairCache.processAllOverlappingPairs(collisionPairCallback, dispatcher);
+        }
         //m_blockedForChanges = false;
     }
 
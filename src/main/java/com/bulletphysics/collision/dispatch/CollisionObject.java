@@ -74,6 +74,9 @@ public class CollisionObject {
     ///users can point to their objects, m_userPointer is not used by Bullet, see setUserPointer/getUserPointer
     protected Object userObjectPointer;
 
+    ///users can store an id of their object, it's not used by Bullet except for the transform export
+    protected int userIndex = -1;
+
     // internalType is reserved to distinguish Bullet's CollisionObject, RigidBody, SoftBody etc.
     // do not assign your own internalType unless you write a new dynamics object class.
     protected CollisionObjectType internalType = CollisionObjectType.COLLISION_OBJECT;
@@ -88,6 +91,17 @@ public class CollisionObject {
     /// If some object should have elaborate collision filtering by sub-classes
     protected boolean checkCollideWith;
 
+    // AABB computed by the dynamics world right after integrating the transform, used by the next updateAabbs
+    protected final Vector3f cachedAabbMin = new Vector3f();
+    protected final Vector3f cachedAabbMax = new Vector3f();
+    protected boolean cachedAabbValid;
+    // local bounds version of the shape the cached AABB was computed for, see CollisionShape.getLocalBoundsVersion
+    protected int cachedAabbShapeVersion;
+    // AABB last set to the broadphase, unchanged objects skip the broadphase update
+    protected final Vector3f broadphaseAabbMin = new Vector3f();
+    protected final Vector3f broadphaseAabbMax = new Vector3f();
+    protected boolean broadphaseAabbValid;
+
     public CollisionObject() {
         this.collisionFlags = CollisionFlags.STATIC_OBJECT;
         this.islandTag1 = -1;
@@ -129,6 +143,7 @@ public class CollisionObject {
     public void setCollisionShape(CollisionShape collisionShape) {
         this.collisionShape = collisionShape;
         this.rootCollisionShape = collisionShape;
+        cachedAabbValid = false;
     }
 
     public CollisionShape getRootCollisionShape() {
@@ -149,7 +164,10 @@ public class CollisionObject {
 
     public void setActivationState(int newState) {
         if ((activationState1 != DISABLE_DEACTIVATION) && (activationState1 != DISABLE_SIMULATION)) {
-            this.activationState1 = newState;
+            if (activationState1 != newState) {
+                this.activationState1 = newState;
+                activationStateChanged();
+            }
         }
     }
 
@@ -162,7 +180,17 @@ public class CollisionObject {
     }
 
     public void forceActivationState(int newState) {
-        this.activationState1 = newState;
+        if (activationState1 != newState) {
+            this.activationState1 = newState;
+            activationStateChanged();
+        }
+    }
+
+    /**
+     * Called when activation state or collision flags are changed, allows dynamics
+     * worlds to keep track of active objects.
+     */
+    protected void activationStateChanged() {
     }
 
     public void activate() {
@@ -208,6 +236,24 @@ public class CollisionObject {
 
     public void setWorldTransform(Transform worldTransform) {
         this.worldTransform.set(worldTransform);
+        transformChanged();
+    }
+
+    /**
+     * Avoid using this internal API call.
+     * internalSetTemporaryWorldTransform is used to temporary replace the world transform by a transform of child
+     * collision shape, without reporting the change.
+     */
+    public void internalSetTemporaryWorldTransform(Transform worldTransform) {
+        this.worldTransform.set(worldTransform);
+    }
+
+    /**
+     * Called when the world transform is changed, allows dynamics worlds to keep track
+     * of moved objects.
+     */
+    protected void transformChanged() {
+        cachedAabbValid = false;
     }
 
     public BroadphaseProxy getBroadphaseHandle() {
@@ -216,6 +262,7 @@ public class CollisionObject {
 
     public void setBroadphaseHandle(BroadphaseProxy broadphaseHandle) {
         this.broadphaseHandle = broadphaseHandle;
+        broadphaseAabbValid = false;
     }
 
     public Transform getInterpolationWorldTransform(Transform out) {
@@ -275,6 +322,8 @@ public class CollisionObject {
 
     public void setCollisionFlags(int collisionFlags) {
         this.collisionFlags = collisionFlags;
+        cachedAabbValid = false;
+        activationStateChanged();
     }
 
     // Swept sphere radius (0.0 by default), see btConvexConvexAlgorithm::
@@ -309,6 +358,18 @@ public class CollisionObject {
         this.userObjectPointer = userObjectPointer;
     }
 
+    public int getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Sets id of the user object, it's used to identify bodies in the buffers written by
+     * {@link com.bulletphysics.dynamics.DiscreteDynamicsWorld#setTransformExportBuffers}.
+     */
+    public void setUserIndex(int userIndex) {
+        this.userIndex = userIndex;
+    }
+
     public boolean checkCollideWith(CollisionObject co) {
         if (checkCollideWith) {
             return checkCollideWithOverride(co);
@@ -25,12 +25,17 @@ package com.bulletphysics.collision.dispatch;
 
 import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.BulletStats;
+import com.bulletphysics.collision.broadphase.BroadphaseAabbCallback;
 import com.bulletphysics.collision.broadphase.BroadphaseInterface;
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.broadphase.BroadphasePair;
 import com.bulletphysics.collision.broadphase.BroadphaseProxy;
 import com.bulletphysics.collision.broadphase.CollisionFilterGroups;
+import com.bulletphysics.collision.broadphase.Dbvt;
+import com.bulletphysics.collision.broadphase.DbvtAabbMm;
 import com.bulletphysics.collision.broadphase.Dispatcher;
 import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.broadphase.HashedOverlappingPairCache;
 import com.bulletphysics.collision.broadphase.OverlappingPairCache;
 import com.bulletphysics.collision.narrowphase.ConvexCast;
 import com.bulletphysics.collision.narrowphase.ConvexCast.CastResult;
@@ -47,7 +52,9 @@ import com.bulletphysics.collision.shapes.ConcaveShape;
 import com.bulletphysics.collision.shapes.ConvexShape;
 import com.bulletphysics.collision.shapes.SphereShape;
 import com.bulletphysics.collision.shapes.TriangleMeshShape;
+import com.bulletphysics.collision.shapes.voxel.VoxelChangeListener;
 import com.bulletphysics.collision.shapes.voxel.VoxelInfo;
+import com.bulletphysics.collision.shapes.voxel.VoxelOccupancy;
 import com.bulletphysics.collision.shapes.voxel.VoxelPhysicsWorld;
 import com.bulletphysics.collision.shapes.voxel.VoxelWorldShape;
 import com.bulletphysics.linearmath.AabbUtil2;
@@ -60,9 +67,7 @@ import com.bulletphysics.util.ObjectArrayList;
 
 import javax.vecmath.Matrix3f;
 import javax.vecmath.Matrix4f;
-import javax.vecmath.Point3i;
 import javax.vecmath.Quat4f;
-import javax.vecmath.Tuple3i;
 import javax.vecmath.Vector3f;
 
 /**
@@ -86,6 +91,7 @@ public class CollisionWorld {
     //protected btStackAlloc*	m_stackAlloc;
     protected BroadphaseInterface broadphasePairCache;
     protected IDebugDraw debugDrawer;
+    protected final ObjectArrayList<VoxelChangeHandler> voxelChangeHandlers = new ObjectArrayList<VoxelChangeHandler>();
 
     /**
      * This constructor doesn't own the dispatcher and paircache/broadphase.
@@ -109,6 +115,12 @@ public class CollisionWorld {
                 getBroadphase().destroyProxy(bp, dispatcher1);
             }
         }
+
+        for (int i = 0; i < voxelChangeHandlers.size(); i++) {
+            VoxelChangeHandler handler = voxelChangeHandlers.getQuick(i);
+            ((VoxelWorldShape) handler.voxelObject.getRootCollisionShape()).removeChangeListener(handler);
+        }
+        voxelChangeHandlers.clear();
     }
 
     public void addCollisionObject(CollisionObject collisionObject) {
@@ -138,6 +150,12 @@ public class CollisionWorld {
                 collisionFilterGroup,
                 collisionFilterMask,
                 dispatcher1, null));
+
+        if (collisionObject.getCollisionShape().isVoxelWorld()) {
+            VoxelChangeHandler handler = new VoxelChangeHandler(collisionObject);
+            ((VoxelWorldShape) collisionObject.getCollisionShape()).addChangeListener(handler);
+            voxelChangeHandlers.add(handler);
+        }
     }
 
     public void performDiscreteCollisionDetection() {
@@ -147,6 +165,8 @@ public class CollisionWorld {
 
             updateAabbs();
 
+            wakeUpSleepingPairs();
+
             BulletStats.pushProfile("calculateOverlappingPairs");
             try {
                 broadphasePairCache.calculateOverlappingPairs(dispatcher1);
@@ -185,6 +205,15 @@ public class CollisionWorld {
             }
         }
 
+        for (int i = 0; i < voxelChangeHandlers.size(); i++) {
+            VoxelChangeHandler handler = voxelChangeHandlers.getQuick(i);
+            if (handler.voxelObject == collisionObject) {
+                ((VoxelWorldShape) collisionObject.getRootCollisionShape()).removeChangeListener(handler);
+                voxelChangeHandlers.removeQuick(i);
+                break;
+            }
+        }
+
         //swapremove
         collisionObjects.remove(collisionObject);
     }
@@ -211,25 +240,83 @@ public class CollisionWorld {
 
     private static boolean updateAabbs_reportMe = true;
 
+    private final Vector3f updateAabbsMin = new Vector3f();
+    private final Vector3f updateAabbsMax = new Vector3f();
+
     // JAVA NOTE: ported from 2.74, missing contact threshold stuff
+    /**
+     * Calculates AABB of the object and updates it in the broadphase.
+     */
     public void updateSingleAabb(CollisionObject colObj) {
         Vector3f minAabb = new Vector3f(), maxAabb = new Vector3f();
-        Vector3f tmp = new Vector3f();
-        Transform tmpTrans = new Transform();
+        colObj.cachedAabbValid = false;
+        calculateAabb(colObj, minAabb, maxAabb);
+        setAabb(colObj, minAabb, maxAabb);
+    }
 
-        colObj.getCollisionShape().getAabb(colObj.getWorldTransform(tmpTrans), minAabb, maxAabb);
+    /**
+     * Calculates AABB of the object increased by the contact threshold. Doesn't modify
+     * the world, so it can be called from multiple threads for different objects.
+     */
+    protected void calculateAabb(CollisionObject colObj, Vector3f minAabb, Vector3f maxAabb) {
+        colObj.getCollisionShape().getAabb(colObj.worldTransform, minAabb, maxAabb);
         // need to increase the aabb for contact thresholds
-        Vector3f contactThreshold = new Vector3f();
-        contactThreshold.set(BulletGlobals.getContactBreakingThreshold(), BulletGlobals.getContactBreakingThreshold(), BulletGlobals.getContactBreakingThreshold());
-        minAabb.sub(contactThreshold);
-        maxAabb.add(contactThreshold);
+        float contactThreshold = BulletGlobals.getContactBreakingThreshold();
+        minAabb.x -= contactThreshold;
+        minAabb.y -= contactThreshold;
+        minAabb.z -= contactThreshold;
+        maxAabb.x += contactThreshold;
+        maxAabb.y += contactThreshold;
+        maxAabb.z += contactThreshold;
+    }
+
+    /**
+     * Calculates AABB of the object for its current transform and keeps it for the next
+     * {@link #updateAabbs}. Called by dynamics worlds right after integrating the transform.
+     */
+    protected void cacheAabb(CollisionObject colObj) {
+        calculateAabb(colObj, colObj.cachedAabbMin, colObj.cachedAabbMax);
+        colObj.cachedAabbShapeVersion = colObj.getCollisionShape().getLocalBoundsVersion();
+        colObj.cachedAabbValid = true;
+    }
+
+    /**
+     * Returns AABB of the object for the broadphase update, either cached when its
+     * transform was integrated or calculated. The cached AABB is used only once, and
+     * not at all when the shape was modified in place since it was computed.
+     */
+    protected void getUpdatedAabb(CollisionObject colObj, Vector3f minAabb, Vector3f maxAabb) {
+        if (colObj.cachedAabbValid) {
+            colObj.cachedAabbValid = false;
+            if (colObj.cachedAabbShapeVersion == colObj.getCollisionShape().getLocalBoundsVersion()) {
+                minAabb.set(colObj.cachedAabbMin);
+                maxAabb.set(colObj.cachedAabbMax);
+                return;
+            }
+        }
+        calculateAabb(colObj, minAabb, maxAabb);
+    }
+
+    /**
+     * Updates AABB of the object in the broadphase, computed by {@link #calculateAabb}.
+     * Nothing is done when the AABB didn't change since the last update.
+     */
+    protected void setAabb(CollisionObject colObj, Vector3f minAabb, Vector3f maxAabb) {
+        if (colObj.broadphaseAabbValid && colObj.broadphaseAabbMin.equals(minAabb) && colObj.broadphaseAabbMax.equals(maxAabb)) {
+            return;
+        }
 
         BroadphaseInterface bp = broadphasePairCache;
 
         // moving objects should be moderately sized, probably something wrong if not
-        tmp.sub(maxAabb, minAabb); // TODO: optimize
-        if (colObj.isStaticObject() || (tmp.lengthSquared() < 1e12f)) {
+        float dx = maxAabb.x - minAabb.x;
+        float dy = maxAabb.y - minAabb.y;
+        float dz = maxAabb.z - minAabb.z;
+        if (colObj.isStaticObject() || (dx * dx + dy * dy + dz * dz < 1e12f)) {
             bp.setAabb(colObj.getBroadphaseHandle(), minAabb, maxAabb, dispatcher1);
+            colObj.broadphaseAabbMin.set(minAabb);
+            colObj.broadphaseAabbMax.set(maxAabb);
+            colObj.broadphaseAabbValid = true;
         } else {
             // something went wrong, investigate
             // this assert is unwanted in 3D modelers (danger of loosing work)
@@ -248,12 +335,15 @@ public class CollisionWorld {
     public void updateAabbs() {
         BulletStats.pushProfile("updateAabbs");
         try {
+            Vector3f minAabb = updateAabbsMin;
+            Vector3f maxAabb = updateAabbsMax;
             for (int i = 0; i < collisionObjects.size(); i++) {
                 CollisionObject colObj = collisionObjects.getQuick(i);
 
                 // only update aabb of active objects
                 if (colObj.isActive()) {
-                    updateSingleAabb(colObj);
+                    getUpdatedAabb(colObj, minAabb, maxAabb);
+                    setAabb(colObj, minAabb, maxAabb);
                 }
             }
         } finally {
@@ -261,6 +351,31 @@ public class CollisionWorld {
         }
     }
 
+    /**
+     * Moves sleeping pairs of the pair cache back to the awake list when any of their
+     * objects was activated since the last dispatch (by island management, constraints
+     * or user code).
+     */
+    protected void wakeUpSleepingPairs() {
+        OverlappingPairCache pairCache = broadphasePairCache.getOverlappingPairCache();
+        if (!(pairCache instanceof HashedOverlappingPairCache)) {
+            return;
+        }
+
+        HashedOverlappingPairCache hashedPairCache = (HashedOverlappingPairCache) pairCache;
+        if (hashedPairCache.getNumSleepingPairs() == 0) {
+            return;
+        }
+
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            BroadphaseProxy proxy = collisionObjects.getQuick(i).getBroadphaseHandle();
+            if (proxy != null && hashedPairCache.needsWakeUp(proxy)) {
+                hashedPairCache.wakeUpSleepingPairs();
+                break;
+            }
+        }
+    }
+
     public IDebugDraw getDebugDrawer() {
         return debugDrawer;
     }
@@ -406,8 +521,11 @@ public class CollisionWorld {
             }
 
             for (; number > 0; --number) {
-                VoxelInfo childInfo = world.getCollisionShapeAt(currentVoxX, currentVoxY, currentVoxZ);
-                if (childInfo.isColliding()) {
+                VoxelInfo childInfo = null;
+                if (voxelShape.getOccupancy(currentVoxX, currentVoxY, currentVoxZ) != VoxelOccupancy.EMPTY) {
+                    childInfo = world.getCollisionShapeAt(currentVoxX, currentVoxY, currentVoxZ);
+                }
+                if (childInfo != null && childInfo.isColliding()) {
                     Vector3f pos = new Vector3f();
                     pos.set(currentVoxX, currentVoxY, currentVoxZ);
                     pos.add(childInfo.getCollisionOffset());
@@ -452,26 +570,56 @@ public class CollisionWorld {
                 }
             }
         } else if (collisionShape.isCompound()) {
-            // todo: use AABB tree or other BVH acceleration structure!
             CompoundShape compoundShape = (CompoundShape) collisionShape;
-            int i = 0;
-            Transform childTrans = new Transform();
-            for (i = 0; i < compoundShape.getNumChildShapes(); i++) {
-                compoundShape.getChildTransform(i, childTrans);
-                CollisionShape childCollisionShape = compoundShape.getChildShape(i);
-                Transform childWorldTrans = new Transform(colObjWorldTransform);
-                childWorldTrans.mul(childTrans);
-                // replace collision shape so that callback can determine the triangle
-                CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
-                collisionObject.internalSetTemporaryCollisionShape(childCollisionShape);
-                rayTestSingle(rayFromTrans, rayToTrans,
-                        collisionObject,
-                        childCollisionShape,
-                        childWorldTrans,
-                        resultCallback);
-                // restore
-                collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
-            }
+
+            // visit only children whose AABB is crossed by the ray, in local space of the compound
+            Transform worldTocollisionObject = new Transform();
+            worldTocollisionObject.inverse(colObjWorldTransform);
+            Vector3f rayFromLocal = new Vector3f(rayFromTrans.origin);
+            worldTocollisionObject.transform(rayFromLocal);
+            Vector3f rayToLocal = new Vector3f(rayToTrans.origin);
+            worldTocollisionObject.transform(rayToLocal);
+
+            CompoundRayTester rayTester = new CompoundRayTester(rayFromTrans, rayToTrans, collisionObject, compoundShape, colObjWorldTransform, resultCallback);
+            Dbvt.rayTest(compoundShape.getDynamicAabbTree().root, rayFromLocal, rayToLocal, rayTester);
+        }
+    }
+
+    private static class CompoundRayTester extends Dbvt.ICollide {
+        private final Transform rayFromTrans;
+        private final Transform rayToTrans;
+        private final CollisionObject collisionObject;
+        private final CompoundShape compoundShape;
+        private final Transform colObjWorldTransform;
+        private final RayResultCallback resultCallback;
+        private final Transform childTrans = new Transform();
+
+        public CompoundRayTester(Transform rayFromTrans, Transform rayToTrans, CollisionObject collisionObject, CompoundShape compoundShape, Transform colObjWorldTransform, RayResultCallback resultCallback) {
+            this.rayFromTrans = rayFromTrans;
+            this.rayToTrans = rayToTrans;
+            this.collisionObject = collisionObject;
+            this.compoundShape = compoundShape;
+            this.colObjWorldTransform = colObjWorldTransform;
+            this.resultCallback = resultCallback;
+        }
+
+        @Override
+        public void Process(Dbvt.Node leaf) {
+            int i = (Integer) leaf.data;
+            compoundShape.getChildTransform(i, childTrans);
+            CollisionShape childCollisionShape = compoundShape.getChildShape(i);
+            Transform childWorldTrans = new Transform(colObjWorldTransform);
+            childWorldTrans.mul(childTrans);
+            // replace collision shape so that callback can determine the triangle
+            CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
+            collisionObject.internalSetTemporaryCollisionShape(childCollisionShape);
+            rayTestSingle(rayFromTrans, rayToTrans,
+                    collisionObject,
+                    childCollisionShape,
+                    childWorldTrans,
+                    resultCallback);
+            // restore
+            collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
         }
     }
 
@@ -597,65 +745,193 @@ public class CollisionWorld {
             }
         } else if (collisionShape.isVoxelWorld()) {
             VoxelWorldShape worldShape = (VoxelWorldShape) collisionShape;
-            // TODO: Replace with AABB sweep.
+
+            // Swept AABB traversal: the cast shape's box is moved along the sweep and each cell is visited once, at the
+            // time the leading face of the box enters it. Cells are therefore visited in order of entry time, and as a hit
+            // can never happen before its cell is entered the traversal stops once it passes the closest hit so far.
             Vector3f minAABB1 = new Vector3f();
             Vector3f maxAABB1 = new Vector3f();
             Vector3f minAABB2 = new Vector3f();
             Vector3f maxAABB2 = new Vector3f();
             castShape.getAabb(convexFromTrans, minAABB1, maxAABB1);
             castShape.getAabb(convexToTrans, minAABB2, maxAABB2);
-            Tuple3i min = new Point3i();
-            min.x = IntUtil.floorToInt(Math.min(minAABB1.x, minAABB2.x) + 0.5f);
-            min.y = IntUtil.floorToInt(Math.min(minAABB1.y, minAABB2.y) + 0.5f);
-            min.z = IntUtil.floorToInt(Math.min(minAABB1.z, minAABB2.z) + 0.5f);
-            Tuple3i max = new Point3i();
-            max.x = IntUtil.floorToInt(Math.max(maxAABB1.x, maxAABB2.x) + 0.5f);
-            max.y = IntUtil.floorToInt(Math.max(maxAABB1.y, maxAABB2.y) + 0.5f);
-            max.z = IntUtil.floorToInt(Math.max(maxAABB1.z, maxAABB2.z) + 0.5f);
-
-            for (int x = min.x; x <= max.x; ++x) {
-                for (int y = min.y; y <= max.y; ++y) {
-                    for (int z = min.z; z <= max.z; ++z) {
-                        VoxelInfo childInfo = worldShape.getWorld().getCollisionShapeAt(x, y, z);
-                        if (!childInfo.isBlocking()) {
-                            continue;
-                        }
-                        Vector3f pos = new Vector3f();
-                        pos.set(x, y, z);
-                        pos.add(childInfo.getCollisionOffset());
-                        Transform childTrans = new Transform(new Matrix4f(IDENTITY_MAT3F, pos, 1.0f));
-                        // replace collision shape so that callback can determine the triangle
-                        CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
-                        collisionObject.internalSetTemporaryCollisionShape(childInfo.getCollisionShape());
-                        collisionObject.setUserPointer(childInfo.getUserData());
-                        objectQuerySingle(castShape, convexFromTrans, convexToTrans,
-                                collisionObject,
-                                childInfo.getCollisionShape(),
-                                childTrans,
-                                resultCallback, allowedPenetration);
-                        // restore
-                        collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
+
+            // box extents relative to the swept origin, conservative over the start and end orientation
+            Vector3f boxMin = new Vector3f();
+            Vector3f boxMax = new Vector3f();
+            boxMin.sub(minAABB1, convexFromTrans.origin);
+            boxMax.sub(maxAABB1, convexFromTrans.origin);
+            Vector3f tmp = new Vector3f();
+            tmp.sub(minAABB2, convexToTrans.origin);
+            VectorUtil.setMin(boxMin, tmp);
+            tmp.sub(maxAABB2, convexToTrans.origin);
+            VectorUtil.setMax(boxMax, tmp);
+
+            Vector3f from = convexFromTrans.origin;
+            Vector3f motion = new Vector3f();
+            motion.sub(convexToTrans.origin, from);
+
+            int[] min = new int[3];
+            int[] max = new int[3];
+            for (int axis = 0; axis < 3; axis++) {
+                float origin = VectorUtil.getCoord(from, axis);
+                min[axis] = IntUtil.floorToInt(origin + VectorUtil.getCoord(boxMin, axis) + 0.5f);
+                max[axis] = IntUtil.floorToInt(origin + VectorUtil.getCoord(boxMax, axis) + 0.5f);
+            }
+
+            objectQueryVoxelRange(castShape, convexFromTrans, convexToTrans, collisionObject, worldShape, min, max, resultCallback, allowedPenetration);
+
+            // per axis: time at which the leading face crosses into the next layer of cells, and the time between layers
+            float[] tNext = new float[3];
+            float[] tDelta = new float[3];
+            int[] step = new int[3];
+            for (int axis = 0; axis < 3; axis++) {
+                float d = VectorUtil.getCoord(motion, axis);
+                float origin = VectorUtil.getCoord(from, axis);
+                if (d > 0f) {
+                    step[axis] = 1;
+                    tDelta[axis] = 1f / d;
+                    tNext[axis] = (max[axis] + 0.5f - (origin + VectorUtil.getCoord(boxMax, axis))) * tDelta[axis];
+                } else if (d < 0f) {
+                    step[axis] = -1;
+                    tDelta[axis] = -1f / d;
+                    tNext[axis] = (origin + VectorUtil.getCoord(boxMin, axis) - (min[axis] - 0.5f)) * tDelta[axis];
+                } else {
+                    tNext[axis] = Float.MAX_VALUE;
+                }
+            }
+
+            int[] layerMin = new int[3];
+            int[] layerMax = new int[3];
+            Vector3f pos = new Vector3f();
+            while (true) {
+                int axis = tNext[0] < tNext[1] ? (tNext[0] < tNext[2] ? 0 : 2) : (tNext[1] < tNext[2] ? 1 : 2);
+                float t = tNext[axis];
+                if (t > 1f || t > resultCallback.closestHitFraction) {
+                    break;
+                }
+                tNext[axis] += tDelta[axis];
+
+                // the box extent on the other axes at the moment it enters the new layer; the leading side is taken from
+                // the layers entered so far so that rounding can't skip the cells of simultaneous crossings
+                pos.scaleAdd(t, motion, from);
+                for (int i = 0; i < 3; i++) {
+                    if (step[i] > 0) {
+                        layerMin[i] = Math.min(IntUtil.floorToInt(VectorUtil.getCoord(pos, i) + VectorUtil.getCoord(boxMin, i) + 0.5f), max[i]);
+                        layerMax[i] = max[i];
+                    } else if (step[i] < 0) {
+                        layerMin[i] = min[i];
+                        layerMax[i] = Math.max(IntUtil.floorToInt(VectorUtil.getCoord(pos, i) + VectorUtil.getCoord(boxMax, i) + 0.5f), min[i]);
+                    } else {
+                        layerMin[i] = min[i];
+                        layerMax[i] = max[i];
                     }
                 }
+
+                int layer = (step[axis] > 0) ? ++max[axis] : --min[axis];
+                layerMin[axis] = layer;
+                layerMax[axis] = layer;
+
+                objectQueryVoxelRange(castShape, convexFromTrans, convexToTrans, collisionObject, worldShape, layerMin, layerMax, resultCallback, allowedPenetration);
             }
         } else if (collisionShape.isCompound()) {
-            // todo: use AABB tree or other BVH acceleration structure!
             CompoundShape compoundShape = (CompoundShape) collisionShape;
-            for (int i = 0; i < compoundShape.getNumChildShapes(); i++) {
-                Transform childTrans = compoundShape.getChildTransform(i, new Transform());
-                CollisionShape childCollisionShape = compoundShape.getChildShape(i);
-                Transform childWorldTrans = new Transform();
-                childWorldTrans.mul(colObjWorldTransform, childTrans);
-                // replace collision shape so that callback can determine the triangle
-                CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
-                collisionObject.internalSetTemporaryCollisionShape(childCollisionShape);
-                objectQuerySingle(castShape, convexFromTrans, convexToTrans,
-                        collisionObject,
-                        childCollisionShape,
-                        childWorldTrans,
-                        resultCallback, allowedPenetration);
-                // restore
-                collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
+
+            // visit only children overlapping the swept AABB of the cast shape, in local space of the compound
+            Transform worldTocollisionObject = new Transform();
+            worldTocollisionObject.inverse(colObjWorldTransform);
+            Transform localTrans = new Transform();
+            Vector3f castMin = new Vector3f(), castMax = new Vector3f();
+            Vector3f tmpMin = new Vector3f(), tmpMax = new Vector3f();
+            localTrans.mul(worldTocollisionObject, convexFromTrans);
+            castShape.getAabb(localTrans, castMin, castMax);
+            localTrans.mul(worldTocollisionObject, convexToTrans);
+            castShape.getAabb(localTrans, tmpMin, tmpMax);
+            VectorUtil.setMin(castMin, tmpMin);
+            VectorUtil.setMax(castMax, tmpMax);
+
+            CompoundConvexCaster caster = new CompoundConvexCaster(castShape, convexFromTrans, convexToTrans, collisionObject, compoundShape, colObjWorldTransform, resultCallback, allowedPenetration);
+            Dbvt.collideTV(compoundShape.getDynamicAabbTree().root, DbvtAabbMm.FromMM(castMin, castMax, new DbvtAabbMm()), caster);
+        }
+    }
+
+    private static class CompoundConvexCaster extends Dbvt.ICollide {
+        private final ConvexShape castShape;
+        private final Transform convexFromTrans;
+        private final Transform convexToTrans;
+        private final CollisionObject collisionObject;
+        private final CompoundShape compoundShape;
+        private final Transform colObjWorldTransform;
+        private final ConvexResultCallback resultCallback;
+        private final float allowedPenetration;
+        private final Transform childTrans = new Transform();
+
+        public CompoundConvexCaster(ConvexShape castShape, Transform convexFromTrans, Transform convexToTrans, CollisionObject collisionObject, CompoundShape compoundShape, Transform colObjWorldTransform, ConvexResultCallback resultCallback, float allowedPenetration) {
+            this.castShape = castShape;
+            this.convexFromTrans = convexFromTrans;
+            this.convexToTrans = convexToTrans;
+            this.collisionObject = collisionObject;
+            this.compoundShape = compoundShape;
+            this.colObjWorldTransform = colObjWorldTransform;
+            this.resultCallback = resultCallback;
+            this.allowedPenetration = allowedPenetration;
+        }
+
+        @Override
+        public void Process(Dbvt.Node leaf) {
+            int i = (Integer) leaf.data;
+            compoundShape.getChildTransform(i, childTrans);
+            CollisionShape childCollisionShape = compoundShape.getChildShape(i);
+            Transform childWorldTrans = new Transform();
+            childWorldTrans.mul(colObjWorldTransform, childTrans);
+            // replace collision shape so that callback can determine the triangle
+            CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
+            collisionObject.internalSetTemporaryCollisionShape(childCollisionShape);
+            objectQuerySingle(castShape, convexFromTrans, convexToTrans,
+                    collisionObject,
+                    childCollisionShape,
+                    childWorldTrans,
+                    resultCallback, allowedPenetration);
+            // restore
+            collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
+        }
+    }
+
+    /**
+     * Performs objectQuerySingle against every blocking voxel in the given (inclusive) range of cells.
+     */
+    private static void objectQueryVoxelRange(ConvexShape castShape, Transform convexFromTrans, Transform convexToTrans, CollisionObject collisionObject, VoxelWorldShape worldShape, int[] min, int[] max, ConvexResultCallback resultCallback, float allowedPenetration) {
+        if (worldShape.isEmpty(min[0], min[1], min[2], max[0], max[1], max[2])) {
+            return;
+        }
+        Vector3f pos = new Vector3f();
+        Transform childTrans = new Transform();
+        childTrans.setIdentity();
+        for (int x = min[0]; x <= max[0]; ++x) {
+            for (int y = min[1]; y <= max[1]; ++y) {
+                for (int z = min[2]; z <= max[2]; ++z) {
+                    if (worldShape.getOccupancy(x, y, z) == VoxelOccupancy.EMPTY) {
+                        continue;
+                    }
+                    VoxelInfo childInfo = worldShape.getWorld().getCollisionShapeAt(x, y, z);
+                    if (!childInfo.isBlocking()) {
+                        continue;
+                    }
+                    pos.set(x, y, z);
+                    pos.add(childInfo.getCollisionOffset());
+                    childTrans.origin.set(pos);
+                    // replace collision shape so that callback can determine the triangle
+                    CollisionShape saveCollisionShape = collisionObject.getCollisionShape();
+                    collisionObject.internalSetTemporaryCollisionShape(childInfo.getCollisionShape());
+                    collisionObject.setUserPointer(childInfo.getUserData());
+                    objectQuerySingle(castShape, convexFromTrans, convexToTrans,
+                            collisionObject,
+                            childInfo.getCollisionShape(),
+                            childTrans,
+                            resultCallback, allowedPenetration);
+                    // restore
+                    collisionObject.internalSetTemporaryCollisionShape(saveCollisionShape);
+                }
             }
         }
     }
@@ -759,6 +1035,14 @@ public class CollisionWorld {
         }
     }
 
+    /**
+     * aabbTest reports every broadphase proxy whose AABB overlaps the given world space AABB to the callback.
+     * The broadphase AABBs are conservative, use the client object of the proxy for exact tests.
+     */
+    public void aabbTest(Vector3f aabbMin, Vector3f aabbMax, BroadphaseAabbCallback callback) {
+        broadphasePairCache.aabbTest(aabbMin, aabbMax, callback);
+    }
+
     public ObjectArrayList<CollisionObject> getCollisionObjectArray() {
         return collisionObjects;
     }
@@ -952,6 +1236,54 @@ public class CollisionWorld {
         }
     }
 
+    /**
+     * Wakes up the objects touching changed voxels of a voxel world object, and makes their collision algorithms forget
+     * the changed voxels.
+     */
+    protected class VoxelChangeHandler extends BroadphaseAabbCallback implements VoxelChangeListener {
+        public final CollisionObject voxelObject;
+        private final Vector3f aabbMin = new Vector3f();
+        private final Vector3f aabbMax = new Vector3f();
+        private int minX, minY, minZ, maxX, maxY, maxZ;
+
+        public VoxelChangeHandler(CollisionObject voxelObject) {
+            this.voxelObject = voxelObject;
+        }
+
+        public void voxelsChanged(VoxelWorldShape shape, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+
+            // voxels are centered on their position, also catch objects resting within the contact threshold
+            float margin = 0.5f + BulletGlobals.getContactBreakingThreshold();
+            aabbMin.set(minX - margin, minY - margin, minZ - margin);
+            aabbMax.set(maxX + margin, maxY + margin, maxZ + margin);
+            broadphasePairCache.aabbTest(aabbMin, aabbMax, this);
+        }
+
+        @Override
+        public boolean process(BroadphaseProxy proxy) {
+            CollisionObject collisionObject = (CollisionObject) proxy.clientObject;
+            if (collisionObject == voxelObject) {
+                return true;
+            }
+            collisionObject.activate();
+
+            BroadphaseProxy voxelProxy = voxelObject.getBroadphaseHandle();
+            if (voxelProxy != null) {
+                BroadphasePair pair = broadphasePairCache.getOverlappingPairCache().findPair(voxelProxy, proxy);
+                if (pair != null && pair.algorithm instanceof VoxelWorldCollisionAlgorithm) {
+                    ((VoxelWorldCollisionAlgorithm) pair.algorithm).invalidateVoxels(minX, minY, minZ, maxX, maxY, maxZ);
+                }
+            }
+            return true;
+        }
+    }
+
     private static class BridgeTriangleRaycastCallback extends TriangleRaycastCallback {
         public RayResultCallback resultCallback;
         public CollisionObject collisionObject;
@@ -25,14 +25,21 @@ package com.bulletphysics.collision.dispatch;
 
 import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
 import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import com.bulletphysics.collision.broadphase.Dbvt;
+import com.bulletphysics.collision.broadphase.DbvtAabbMm;
 import com.bulletphysics.collision.broadphase.DispatcherInfo;
 import com.bulletphysics.collision.narrowphase.PersistentManifold;
 import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.linearmath.AabbUtil2;
 import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.linearmath.VectorUtil;
+import com.bulletphysics.util.IntArrayList;
 import com.bulletphysics.util.ObjectArrayList;
 import com.bulletphysics.util.ObjectPool;
 
+import javax.vecmath.Vector3f;
+
 /**
  * CompoundCollisionAlgorithm supports collision between {@link CompoundShape}s and
  * other collision shapes.
@@ -41,13 +48,47 @@ import com.bulletphysics.util.ObjectPool;
  */
 public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 
+    /**
+     * Default number of frames a child algorithm is kept after its child stopped overlapping the other object.
+     */
+    public static final int DEFAULT_CHILD_RELEASE_FRAMES = 10;
+
+    // child algorithms are created on first overlap, entries of other children are null
     private final ObjectArrayList<CollisionAlgorithm> childCollisionAlgorithms = new ObjectArrayList<CollisionAlgorithm>();
     private boolean isSwapped;
+    private int childReleaseFrames;
+
+    private final ChildCollider childCollider = new ChildCollider();
+    // indices of children that currently have an algorithm
+    private final IntArrayList activeChildren = new IntArrayList();
+    // last frame each child overlapped the other object
+    private int[] childFrames = new int[0];
+    private int frame;
+    private final ObjectArrayList<PersistentManifold> manifoldArray = new ObjectArrayList<PersistentManifold>();
+
+    private final Transform orgTrans = new Transform();
+    private final Transform orgInterpolationTrans = new Transform();
+    private final Transform childTrans = new Transform();
+    private final Transform newChildWorldTrans = new Transform();
+    private final Transform otherInCompoundSpace = new Transform();
+    private final Vector3f aabbMin = new Vector3f();
+    private final Vector3f aabbMax = new Vector3f();
+    private final Vector3f childAabbMin = new Vector3f();
+    private final Vector3f childAabbMax = new Vector3f();
+    private final Vector3f tmpAabbMin = new Vector3f();
+    private final Vector3f tmpAabbMax = new Vector3f();
+    private final DbvtAabbMm bounds = new DbvtAabbMm();
+    private final ObjectArrayList<Dbvt.Node> stack = new ObjectArrayList<Dbvt.Node>(Dbvt.SIMPLE_STACKSIZE);
 
     public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
+        init(ci, body0, body1, isSwapped, DEFAULT_CHILD_RELEASE_FRAMES);
+    }
+
+    public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped, int childReleaseFrames) {
         super.init(ci);
 
         this.isSwapped = isSwapped;
+        this.childReleaseFrames = childReleaseFrames;
 
         CollisionObject colObj = isSwapped ? body1 : body0;
         CollisionObject otherObj = isSwapped ? body0 : body1;
@@ -65,24 +106,24 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
         int numChildren = compoundShape.getNumChildShapes();
         int i;
 
+        // the algorithms themselves are created once the child overlaps the other object
         //childCollisionAlgorithms.resize(numChildren);
         for (i = 0; i < numChildren; i++) {
-            CollisionShape tmpShape = colObj.getCollisionShape();
-            CollisionShape childShape = compoundShape.getChildShape(i);
-            colObj.internalSetTemporaryCollisionShape(childShape);
-            childCollisionAlgorithms.add(dispatcher.findAlgorithm(colObj, otherObj));
-            colObj.internalSetTemporaryCollisionShape(tmpShape);
+            childCollisionAlgorithms.add(null);
+        }
+        if (childFrames.length < numChildren) {
+            childFrames = new int[numChildren];
         }
     }
 
     @Override
     public void destroy() {
-        int numChildren = childCollisionAlgorithms.size();
-        for (int i = 0; i < numChildren; i++) {
+        for (int i = 0; i < activeChildren.size(); i++) {
             //childCollisionAlgorithms.get(i).destroy();
-            dispatcher.freeCollisionAlgorithm(childCollisionAlgorithms.getQuick(i));
+            dispatcher.freeCollisionAlgorithm(childCollisionAlgorithms.getQuick(activeChildren.get(i)));
         }
         childCollisionAlgorithms.clear();
+        activeChildren.clear();
     }
 
     @Override
@@ -98,43 +139,85 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
             matchChildren(colObj, otherObj);
         }
 
-        // We will use the OptimizedBVH, AABB tree to cull potential child-overlaps
-        // If both proxies are Compound, we will deal with that directly, by performing sequential/parallel tree traversals
-        // given Proxy0 and Proxy1, if both have a tree, Tree0 and Tree1, this means:
-        // determine overlapping nodes of Proxy1 using Proxy0 AABB against Tree1
-        // then use each overlapping node AABB against Tree0
-        // and vise versa.
-
-        Transform tmpTrans = new Transform();
-        Transform orgTrans = new Transform();
-        Transform childTrans = new Transform();
-        Transform orgInterpolationTrans = new Transform();
-        Transform newChildWorldTrans = new Transform();
+        // Use the AABB tree of the compound to cull potential child-overlaps:
+        // only children overlapping the AABB of the other object (in local space of the compound) are processed.
+        // Compound versus compound is handled by CompoundCompoundCollisionAlgorithm using tree versus tree traversal.
+        frame++;
+
+        otherInCompoundSpace.inverse(colObj.getWorldTransform(orgTrans));
+        otherInCompoundSpace.mul(otherObj.getWorldTransform(newChildWorldTrans));
+        otherObj.getCollisionShape().getAabb(otherInCompoundSpace, aabbMin, aabbMax);
+
+        childCollider.init(colObj, otherObj, dispatchInfo, resultOut);
+        Dbvt.collideTV(compoundShape.getDynamicAabbTree().root, DbvtAabbMm.FromMM(aabbMin, aabbMax, bounds), childCollider, stack);
+        childCollider.init(null, null, null, null);
+
+        // children that stopped overlapping must not keep reporting old contacts,
+        // their algorithms are released once they did not overlap for childReleaseFrames
+        for (int i = activeChildren.size() - 1; i >= 0; i--) {
+            int index = activeChildren.get(i);
+            if (childFrames[index] == frame) {
+                continue;
+            }
+            CollisionAlgorithm algorithm = childCollisionAlgorithms.getQuick(index);
+            if (frame - childFrames[index] > childReleaseFrames) {
+                dispatcher.freeCollisionAlgorithm(algorithm);
+                childCollisionAlgorithms.setQuick(index, null);
+                activeChildren.set(i, activeChildren.get(activeChildren.size() - 1));
+                activeChildren.remove(activeChildren.size() - 1);
+            } else {
+                clearChildManifolds(algorithm);
+            }
+        }
+    }
 
-        int numChildren = childCollisionAlgorithms.size();
-        int i;
-        for (i = 0; i < numChildren; i++) {
-            // temporarily exchange parent btCollisionShape with childShape, and recurse
-            CollisionShape childShape = compoundShape.getChildShape(i);
+    private CollisionAlgorithm getChildAlgorithm(int index, CollisionObject colObj, CollisionObject otherObj) {
+        CollisionAlgorithm algorithm = childCollisionAlgorithms.getQuick(index);
+        if (algorithm == null) {
+            // colObj already has the child shape set as its temporary collision shape
+            algorithm = dispatcher.findAlgorithm(colObj, otherObj);
+            childCollisionAlgorithms.setQuick(index, algorithm);
+            activeChildren.add(index);
+        }
+        return algorithm;
+    }
 
-            // backup
-            colObj.getWorldTransform(orgTrans);
-            colObj.getInterpolationWorldTransform(orgInterpolationTrans);
+    private void processChild(int index, CollisionObject colObj, CollisionObject otherObj, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        CompoundShape compoundShape = (CompoundShape) colObj.getCollisionShape();
 
-            compoundShape.getChildTransform(i, childTrans);
-            newChildWorldTrans.mul(orgTrans, childTrans);
-            colObj.setWorldTransform(newChildWorldTrans);
-            colObj.setInterpolationWorldTransform(newChildWorldTrans);
+        // temporarily exchange parent btCollisionShape with childShape, and recurse
+        CollisionShape childShape = compoundShape.getChildShape(index);
+
+        // backup
+        colObj.getWorldTransform(orgTrans);
+        colObj.getInterpolationWorldTransform(orgInterpolationTrans);
+
+        compoundShape.getChildTransform(index, childTrans);
+        newChildWorldTrans.mul(orgTrans, childTrans);
+        colObj.internalSetTemporaryWorldTransform(newChildWorldTrans);
+        colObj.setInterpolationWorldTransform(newChildWorldTrans);
+
+        // the contactpoint is still projected back using the original inverted worldtrans
+        CollisionShape tmpShape = colObj.getCollisionShape();
+        colObj.internalSetTemporaryCollisionShape(childShape);
+        childFrames[index] = frame;
+        getChildAlgorithm(index, colObj, otherObj).processCollision(colObj, otherObj, dispatchInfo, resultOut);
+        // revert back
+        colObj.internalSetTemporaryCollisionShape(tmpShape);
+        colObj.internalSetTemporaryWorldTransform(orgTrans);
+        colObj.setInterpolationWorldTransform(orgInterpolationTrans);
+    }
 
-            // the contactpoint is still projected back using the original inverted worldtrans
-            CollisionShape tmpShape = colObj.getCollisionShape();
-            colObj.internalSetTemporaryCollisionShape(childShape);
-            childCollisionAlgorithms.getQuick(i).processCollision(colObj, otherObj, dispatchInfo, resultOut);
-            // revert back
-            colObj.internalSetTemporaryCollisionShape(tmpShape);
-            colObj.setWorldTransform(orgTrans);
-            colObj.setInterpolationWorldTransform(orgInterpolationTrans);
+    private void clearChildManifolds(CollisionAlgorithm algorithm) {
+        manifoldArray.clear();
+        algorithm.getAllContactManifolds(manifoldArray);
+        for (int i = 0; i < manifoldArray.size(); i++) {
+            PersistentManifold manifold = manifoldArray.getQuick(i);
+            if (manifold.getNumContacts() > 0) {
+                dispatcher.clearManifold(manifold);
+            }
         }
+        manifoldArray.clear();
     }
 
     @Override
@@ -158,55 +241,101 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
         // then use each overlapping node AABB against Tree0
         // and vise versa.
 
-        Transform tmpTrans = new Transform();
-        Transform orgTrans = new Transform();
-        Transform childTrans = new Transform();
         float hitFraction = 1f;
 
+        colObj.getWorldTransform(orgTrans);
+        colObj.getInterpolationWorldTransform(orgInterpolationTrans);
+
+        // children are culled by AABBs swept between the world and interpolation transforms
+        CollisionShape otherShape = otherObj.getCollisionShape();
+        otherShape.getAabb(otherObj.getWorldTransform(newChildWorldTrans), aabbMin, aabbMax);
+        otherShape.getAabb(otherObj.getInterpolationWorldTransform(newChildWorldTrans), tmpAabbMin, tmpAabbMax);
+        VectorUtil.setMin(aabbMin, tmpAabbMin);
+        VectorUtil.setMax(aabbMax, tmpAabbMax);
+
         int numChildren = childCollisionAlgorithms.size();
         int i;
         for (i = 0; i < numChildren; i++) {
             // temporarily exchange parent btCollisionShape with childShape, and recurse
             CollisionShape childShape = compoundShape.getChildShape(i);
 
-            // backup
-            colObj.getWorldTransform(orgTrans);
-
             compoundShape.getChildTransform(i, childTrans);
+            newChildWorldTrans.mul(orgInterpolationTrans, childTrans);
+            childShape.getAabb(newChildWorldTrans, tmpAabbMin, tmpAabbMax);
             //btTransform	newChildWorldTrans = orgTrans*childTrans ;
-            tmpTrans.set(orgTrans);
-            tmpTrans.mul(childTrans);
-            colObj.setWorldTransform(tmpTrans);
+            newChildWorldTrans.set(orgTrans);
+            newChildWorldTrans.mul(childTrans);
+            childShape.getAabb(newChildWorldTrans, childAabbMin, childAabbMax);
+            VectorUtil.setMin(childAabbMin, tmpAabbMin);
+            VectorUtil.setMax(childAabbMax, tmpAabbMax);
+            if (!AabbUtil2.testAabbAgainstAabb2(childAabbMin, childAabbMax, aabbMin, aabbMax)) {
+                continue;
+            }
+
+            colObj.internalSetTemporaryWorldTransform(newChildWorldTrans);
 
             CollisionShape tmpShape = colObj.getCollisionShape();
             colObj.internalSetTemporaryCollisionShape(childShape);
-            float frac = childCollisionAlgorithms.getQuick(i).calculateTimeOfImpact(colObj, otherObj, dispatchInfo, resultOut);
+            // children without algorithm use a temporary one, so they don't keep a manifold
+            CollisionAlgorithm algorithm = childCollisionAlgorithms.getQuick(i);
+            boolean temporary = algorithm == null;
+            if (temporary) {
+                algorithm = dispatcher.findAlgorithm(colObj, otherObj);
+            }
+            float frac = algorithm.calculateTimeOfImpact(colObj, otherObj, dispatchInfo, resultOut);
+            if (temporary) {
+                dispatcher.freeCollisionAlgorithm(algorithm);
+            }
             if (frac < hitFraction) {
                 hitFraction = frac;
             }
             // revert back
             colObj.internalSetTemporaryCollisionShape(tmpShape);
-            colObj.setWorldTransform(orgTrans);
+            colObj.internalSetTemporaryWorldTransform(orgTrans);
         }
         return hitFraction;
     }
 
     @Override
     public void getAllContactManifolds(ObjectArrayList<PersistentManifold> manifoldArray) {
-        for (int i = 0; i < childCollisionAlgorithms.size(); i++) {
-            childCollisionAlgorithms.getQuick(i).getAllContactManifolds(manifoldArray);
+        for (int i = 0; i < activeChildren.size(); i++) {
+            childCollisionAlgorithms.getQuick(activeChildren.get(i)).getAllContactManifolds(manifoldArray);
         }
     }
 
     ////////////////////////////////////////////////////////////////////////////
 
+    private class ChildCollider extends Dbvt.ICollide {
+        private CollisionObject colObj;
+        private CollisionObject otherObj;
+        private DispatcherInfo dispatchInfo;
+        private ManifoldResult resultOut;
+
+        public void init(CollisionObject colObj, CollisionObject otherObj, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+            this.colObj = colObj;
+            this.otherObj = otherObj;
+            this.dispatchInfo = dispatchInfo;
+            this.resultOut = resultOut;
+        }
+
+        @Override
+        public void Process(Dbvt.Node leaf) {
+            processChild((Integer) leaf.data, colObj, otherObj, dispatchInfo, resultOut);
+        }
+    }
+
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<CompoundCollisionAlgorithm> pool = ObjectPool.get(CompoundCollisionAlgorithm.class);
+        private final ObjectPool<CompoundCollisionAlgorithm> pool = new ObjectPool<CompoundCollisionAlgorithm>(CompoundCollisionAlgorithm.class);
+
+        /**
+         * Number of frames a child algorithm is kept after its child stopped overlapping the other object.
+         */
+        public int childReleaseFrames = DEFAULT_CHILD_RELEASE_FRAMES;
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
             CompoundCollisionAlgorithm algo = pool.get();
-            algo.init(ci, body0, body1, false);
+            algo.init(ci, body0, body1, false, childReleaseFrames);
             return algo;
         }
 
@@ -219,12 +348,17 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
     ;
 
     public static class SwappedCreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<CompoundCollisionAlgorithm> pool = ObjectPool.get(CompoundCollisionAlgorithm.class);
+        private final ObjectPool<CompoundCollisionAlgorithm> pool = new ObjectPool<CompoundCollisionAlgorithm>(CompoundCollisionAlgorithm.class);
+
+        /**
+         * Number of frames a child algorithm is kept after its child stopped overlapping the other object.
+         */
+        public int childReleaseFrames = DEFAULT_CHILD_RELEASE_FRAMES;
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
             CompoundCollisionAlgorithm algo = pool.get();
-            algo.init(ci, body0, body1, true);
+            algo.init(ci, body0, body1, true, childReleaseFrames);
             return algo;
         }
 
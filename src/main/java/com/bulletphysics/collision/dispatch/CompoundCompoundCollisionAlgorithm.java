@@ -0,0 +1,368 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import com.bulletphysics.collision.broadphase.Dbvt;
+import com.bulletphysics.collision.broadphase.DbvtAabbMm;
+import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.linearmath.MatrixUtil;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import com.bulletphysics.util.ObjectPool;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+
+/**
+ * CompoundCompoundCollisionAlgorithm supports collision between two {@link CompoundShape}s.
+ * The child AABB trees of both shapes are traversed against each other and a child
+ * algorithm is kept for every overlapping pair of children. Algorithms of pairs that
+ * stopped overlapping are released after a configurable number of frames.
+ */
+public class CompoundCompoundCollisionAlgorithm extends CollisionAlgorithm {
+
+    // overlapping child pairs, chained per child of the first compound
+    private ChildPair[] pairsByChild0 = new ChildPair[0];
+    private final ObjectArrayList<ChildPair> pairs = new ObjectArrayList<ChildPair>();
+    private final ObjectArrayList<ChildPair> freePairs = new ObjectArrayList<ChildPair>();
+    private int numChildren0 = -1;
+    private int numChildren1 = -1;
+    private int frame;
+    private int childReleaseFrames;
+    private final ObjectArrayList<PersistentManifold> manifoldArray = new ObjectArrayList<PersistentManifold>();
+
+    private final ObjectArrayList<Dbvt.Node> stack0 = new ObjectArrayList<Dbvt.Node>(Dbvt.DOUBLE_STACKSIZE);
+    private final ObjectArrayList<Dbvt.Node> stack1 = new ObjectArrayList<Dbvt.Node>(Dbvt.DOUBLE_STACKSIZE);
+
+    // transform from local space of the second compound to local space of the first one
+    private final Transform xform = new Transform();
+    private final Matrix3f absBasis = new Matrix3f();
+    private final Vector3f center = new Vector3f();
+    private final Vector3f extent = new Vector3f();
+    private final Vector3f tmp = new Vector3f();
+
+    private final Transform orgTrans0 = new Transform();
+    private final Transform orgTrans1 = new Transform();
+    private final Transform orgInterpolationTrans0 = new Transform();
+    private final Transform orgInterpolationTrans1 = new Transform();
+    private final Transform childTrans = new Transform();
+    private final Transform newChildWorldTrans = new Transform();
+
+    public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+        init(ci, body0, body1, CompoundCollisionAlgorithm.DEFAULT_CHILD_RELEASE_FRAMES);
+    }
+
+    public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, int childReleaseFrames) {
+        super.init(ci);
+        this.childReleaseFrames = childReleaseFrames;
+        assert (body0.getCollisionShape().isCompound());
+        assert (body1.getCollisionShape().isCompound());
+    }
+
+    @Override
+    public void destroy() {
+        for (int i = 0; i < pairs.size(); i++) {
+            ChildPair pair = pairs.getQuick(i);
+            dispatcher.freeCollisionAlgorithm(pair.algorithm);
+            pair.algorithm = null;
+            pair.next = null;
+            freePairs.add(pair);
+        }
+        pairs.clear();
+        for (int i = 0; i < pairsByChild0.length; i++) {
+            pairsByChild0[i] = null;
+        }
+        numChildren0 = -1;
+        numChildren1 = -1;
+    }
+
+    @Override
+    public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        CompoundShape compoundShape0 = (CompoundShape) body0.getCollisionShape();
+        CompoundShape compoundShape1 = (CompoundShape) body1.getCollisionShape();
+
+        // child indices are only stable while the children stay the same
+        if (compoundShape0.getNumChildShapes() != numChildren0 || compoundShape1.getNumChildShapes() != numChildren1) {
+            destroy();
+            numChildren0 = compoundShape0.getNumChildShapes();
+            numChildren1 = compoundShape1.getNumChildShapes();
+            if (pairsByChild0.length < numChildren0) {
+                pairsByChild0 = new ChildPair[numChildren0];
+            }
+        }
+
+        frame++;
+
+        body0.getWorldTransform(orgTrans0);
+        body1.getWorldTransform(orgTrans1);
+        body0.getInterpolationWorldTransform(orgInterpolationTrans0);
+        body1.getInterpolationWorldTransform(orgInterpolationTrans1);
+
+        xform.inverse(orgTrans0);
+        xform.mul(orgTrans1);
+        absBasis.set(xform.basis);
+        MatrixUtil.absolute(absBasis);
+
+        Dbvt.Node root0 = compoundShape0.getDynamicAabbTree().root;
+        Dbvt.Node root1 = compoundShape1.getDynamicAabbTree().root;
+        if (root0 != null && root1 != null) {
+            stack0.add(root0);
+            stack1.add(root1);
+            do {
+                int last = stack0.size() - 1;
+                Dbvt.Node n0 = stack0.getQuick(last);
+                Dbvt.Node n1 = stack1.getQuick(last);
+                stack0.removeQuick(last);
+                stack1.removeQuick(last);
+
+                if (!intersects(n0.volume, n1.volume)) {
+                    continue;
+                }
+                if (n0.isinternal()) {
+                    if (n1.isinternal()) {
+                        push(n0.childs[0], n1.childs[0]);
+                        push(n0.childs[1], n1.childs[0]);
+                        push(n0.childs[0], n1.childs[1]);
+                        push(n0.childs[1], n1.childs[1]);
+                    } else {
+                        push(n0.childs[0], n1);
+                        push(n0.childs[1], n1);
+                    }
+                } else if (n1.isinternal()) {
+                    push(n0, n1.childs[0]);
+                    push(n0, n1.childs[1]);
+                } else {
+                    processChildPair((Integer) n0.data, (Integer) n1.data, body0, body1, dispatchInfo, resultOut);
+                }
+            }
+            while (stack0.size() > 0);
+        }
+
+        // pairs whose child AABBs no longer overlap must not keep reporting old contacts,
+        // they are released once they did not overlap for childReleaseFrames
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            ChildPair pair = pairs.getQuick(i);
+            if (pair.frame == frame) {
+                continue;
+            }
+            if (frame - pair.frame > childReleaseFrames) {
+                removePair(pair);
+                pairs.setQuick(i, pairs.getQuick(pairs.size() - 1));
+                pairs.removeQuick(pairs.size() - 1);
+            } else {
+                clearManifolds(pair.algorithm);
+            }
+        }
+    }
+
+    private void clearManifolds(CollisionAlgorithm algorithm) {
+        manifoldArray.clear();
+        algorithm.getAllContactManifolds(manifoldArray);
+        for (int i = 0; i < manifoldArray.size(); i++) {
+            PersistentManifold manifold = manifoldArray.getQuick(i);
+            if (manifold.getNumContacts() > 0) {
+                dispatcher.clearManifold(manifold);
+            }
+        }
+        manifoldArray.clear();
+    }
+
+    private void push(Dbvt.Node n0, Dbvt.Node n1) {
+        stack0.add(n0);
+        stack1.add(n1);
+    }
+
+    /**
+     * Tests a node of the first tree against a node of the second tree, the latter is
+     * transformed to the local space of the first compound and enclosed by an AABB.
+     */
+    private boolean intersects(DbvtAabbMm volume0, DbvtAabbMm volume1) {
+        volume1.Center(center);
+        xform.transform(center);
+        volume1.Extents(tmp);
+        absBasis.transform(tmp, extent);
+
+        Vector3f mi = volume0.Mins();
+        Vector3f mx = volume0.Maxs();
+        return (mi.x <= center.x + extent.x) && (mx.x >= center.x - extent.x) &&
+                (mi.y <= center.y + extent.y) && (mx.y >= center.y - extent.y) &&
+                (mi.z <= center.z + extent.z) && (mx.z >= center.z - extent.z);
+    }
+
+    private void processChildPair(int index0, int index1, CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        CompoundShape compoundShape0 = (CompoundShape) body0.getCollisionShape();
+        CompoundShape compoundShape1 = (CompoundShape) body1.getCollisionShape();
+        CollisionShape childShape0 = compoundShape0.getChildShape(index0);
+        CollisionShape childShape1 = compoundShape1.getChildShape(index1);
+
+        // temporarily exchange both parent shapes with the child shapes,
+        // the contactpoints are still projected back using the original inverted worldtrans
+        compoundShape0.getChildTransform(index0, childTrans);
+        newChildWorldTrans.mul(orgTrans0, childTrans);
+        body0.internalSetTemporaryWorldTransform(newChildWorldTrans);
+        body0.setInterpolationWorldTransform(newChildWorldTrans);
+        body0.internalSetTemporaryCollisionShape(childShape0);
+
+        compoundShape1.getChildTransform(index1, childTrans);
+        newChildWorldTrans.mul(orgTrans1, childTrans);
+        body1.internalSetTemporaryWorldTransform(newChildWorldTrans);
+        body1.setInterpolationWorldTransform(newChildWorldTrans);
+        body1.internalSetTemporaryCollisionShape(childShape1);
+
+        ChildPair pair = findPair(index0, index1);
+        if (pair == null) {
+            pair = addPair(index0, index1);
+            pair.algorithm = dispatcher.findAlgorithm(body0, body1);
+        }
+        pair.frame = frame;
+        pair.algorithm.processCollision(body0, body1, dispatchInfo, resultOut);
+
+        // revert back
+        body0.internalSetTemporaryCollisionShape(compoundShape0);
+        body0.internalSetTemporaryWorldTransform(orgTrans0);
+        body0.setInterpolationWorldTransform(orgInterpolationTrans0);
+        body1.internalSetTemporaryCollisionShape(compoundShape1);
+        body1.internalSetTemporaryWorldTransform(orgTrans1);
+        body1.setInterpolationWorldTransform(orgInterpolationTrans1);
+    }
+
+    private ChildPair findPair(int index0, int index1) {
+        ChildPair pair = pairsByChild0[index0];
+        while (pair != null && pair.index1 != index1) {
+            pair = pair.next;
+        }
+        return pair;
+    }
+
+    private ChildPair addPair(int index0, int index1) {
+        ChildPair pair = freePairs.isEmpty() ? new ChildPair() : freePairs.remove(freePairs.size() - 1);
+        pair.index0 = index0;
+        pair.index1 = index1;
+        pair.next = pairsByChild0[index0];
+        pairsByChild0[index0] = pair;
+        pairs.add(pair);
+        return pair;
+    }
+
+    private void removePair(ChildPair pair) {
+        ChildPair prev = null;
+        ChildPair p = pairsByChild0[pair.index0];
+        while (p != pair) {
+            prev = p;
+            p = p.next;
+        }
+        if (prev == null) {
+            pairsByChild0[pair.index0] = pair.next;
+        } else {
+            prev.next = pair.next;
+        }
+
+        dispatcher.freeCollisionAlgorithm(pair.algorithm);
+        pair.algorithm = null;
+        pair.next = null;
+        freePairs.add(pair);
+    }
+
+    @Override
+    public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        CompoundShape compoundShape0 = (CompoundShape) body0.getCollisionShape();
+        CompoundShape compoundShape1 = (CompoundShape) body1.getCollisionShape();
+
+        // only the child pairs found by the last processCollision are considered
+        float hitFraction = 1f;
+
+        body0.getWorldTransform(orgTrans0);
+        body1.getWorldTransform(orgTrans1);
+
+        for (int i = 0; i < pairs.size(); i++) {
+            ChildPair pair = pairs.getQuick(i);
+
+            compoundShape0.getChildTransform(pair.index0, childTrans);
+            newChildWorldTrans.mul(orgTrans0, childTrans);
+            body0.internalSetTemporaryWorldTransform(newChildWorldTrans);
+            body0.internalSetTemporaryCollisionShape(compoundShape0.getChildShape(pair.index0));
+
+            compoundShape1.getChildTransform(pair.index1, childTrans);
+            newChildWorldTrans.mul(orgTrans1, childTrans);
+            body1.internalSetTemporaryWorldTransform(newChildWorldTrans);
+            body1.internalSetTemporaryCollisionShape(compoundShape1.getChildShape(pair.index1));
+
+            float frac = pair.algorithm.calculateTimeOfImpact(body0, body1, dispatchInfo, resultOut);
+            if (frac < hitFraction) {
+                hitFraction = frac;
+            }
+
+            // revert back
+            body0.internalSetTemporaryCollisionShape(compoundShape0);
+            body0.internalSetTemporaryWorldTransform(orgTrans0);
+            body1.internalSetTemporaryCollisionShape(compoundShape1);
+            body1.internalSetTemporaryWorldTransform(orgTrans1);
+        }
+        return hitFraction;
+    }
+
+    @Override
+    public void getAllContactManifolds(ObjectArrayList<PersistentManifold> manifoldArray) {
+        for (int i = 0; i < pairs.size(); i++) {
+            pairs.getQuick(i).algorithm.getAllContactManifolds(manifoldArray);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    private static class ChildPair {
+        public int index0;
+        public int index1;
+        public int frame;
+        public CollisionAlgorithm algorithm;
+        public ChildPair next;
+    }
+
+    public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+        private final ObjectPool<CompoundCompoundCollisionAlgorithm> pool = new ObjectPool<CompoundCompoundCollisionAlgorithm>(CompoundCompoundCollisionAlgorithm.class);
+
+        /**
+         * Number of frames a child pair algorithm is kept after the children stopped overlapping.
+         */
+        public int childReleaseFrames = CompoundCollisionAlgorithm.DEFAULT_CHILD_RELEASE_FRAMES;
+
+        @Override
+        public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+            CompoundCompoundCollisionAlgorithm algo = pool.get();
+            algo.init(ci, body0, body1, childReleaseFrames);
+            return algo;
+        }
+
+        @Override
+        public void releaseCollisionAlgorithm(CollisionAlgorithm algo) {
+            pool.release((CompoundCompoundCollisionAlgorithm) algo);
+        }
+    }
+
+}
@@ -88,6 +88,8 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
                         btConvexTriangleCallback.getAabbMin(new Vector3f()),
                         btConvexTriangleCallback.getAabbMax(new Vector3f()));
 
+                btConvexTriangleCallback.processContacts();
+
                 resultOut.refreshContactPoints();
             }
         }
@@ -167,6 +169,10 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
         }
     }
 
+    /**
+     * Clears contact points and cached triangle separation, must be called when
+     * vertices of the triangle mesh are modified.
+     */
     public void clearCache() {
         btConvexTriangleCallback.clearCache();
     }
@@ -220,7 +226,7 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
     ////////////////////////////////////////////////////////////////////////////
 
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<ConvexConcaveCollisionAlgorithm> pool = ObjectPool.get(ConvexConcaveCollisionAlgorithm.class);
+        private final ObjectPool<ConvexConcaveCollisionAlgorithm> pool = new ObjectPool<ConvexConcaveCollisionAlgorithm>(ConvexConcaveCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
@@ -236,7 +242,7 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
     }
 
     public static class SwappedCreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<ConvexConcaveCollisionAlgorithm> pool = ObjectPool.get(ConvexConcaveCollisionAlgorithm.class);
+        private final ObjectPool<ConvexConcaveCollisionAlgorithm> pool = new ObjectPool<ConvexConcaveCollisionAlgorithm>(ConvexConcaveCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
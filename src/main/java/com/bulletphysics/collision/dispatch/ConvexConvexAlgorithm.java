@@ -36,6 +36,7 @@ import com.bulletphysics.collision.narrowphase.SimplexSolverInterface;
 import com.bulletphysics.collision.narrowphase.VoronoiSimplexSolver;
 import com.bulletphysics.collision.shapes.ConvexShape;
 import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.linearmath.ConvexSeparatingDistanceUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.util.ObjectArrayList;
 import com.bulletphysics.util.ObjectPool;
@@ -58,12 +59,22 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
     public PersistentManifold manifoldPtr;
     public boolean lowLevelOfDetail;
 
+    // separating axis and distance cached from the last GJK query
+    private final ConvexSeparatingDistanceUtil sepDistance = new ConvexSeparatingDistanceUtil();
+    private ConvexShape sepShape0;
+    private ConvexShape sepShape1;
+    private int sepShapeVersion0;
+    private int sepShapeVersion1;
+    private final Vector3f sepAxis = new Vector3f();
+
     public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver pdSolver) {
         super.init(ci);
         gjkPairDetector.init(null, null, simplexSolver, pdSolver);
         this.manifoldPtr = mf;
         this.ownManifold = false;
         this.lowLevelOfDetail = false;
+        this.sepShape0 = null;
+        this.sepShape1 = null;
     }
 
     @Override
@@ -80,6 +91,15 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
         this.lowLevelOfDetail = useLowLevel;
     }
 
+    /**
+     * Returns the distance found by the last GJK query and stores the separating
+     * axis in given vector. The distance is not positive for touching shapes.
+     */
+    public float getLastSeparatingDistance(Vector3f separatingAxisOut) {
+        gjkPairDetector.getCachedSeparatingAxis(separatingAxisOut);
+        return gjkPairDetector.getCachedSeparatingDistance();
+    }
+
     /**
      * Convex-Convex collision algorithm.
      */
@@ -112,6 +132,33 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
         ClosestPointInput input = pointInputsPool.get();
         input.init();
 
+        body0.getWorldTransform(input.transformA);
+        body1.getWorldTransform(input.transformB);
+
+        if (dispatchInfo.useConvexConservativeDistanceUtil) {
+            // the bound is only valid for the shapes it was computed for (temporary shapes
+            // may change, shapes may be modified in place)
+            if (min0 != sepShape0 || min1 != sepShape1 ||
+                    min0.getLocalBoundsVersion() != sepShapeVersion0 || min1.getLocalBoundsVersion() != sepShapeVersion1) {
+                sepDistance.init(min0.getAngularMotionDisc(), min1.getAngularMotionDisc());
+                sepShape0 = min0;
+                sepShape1 = min1;
+                sepShapeVersion0 = min0.getLocalBoundsVersion();
+                sepShapeVersion1 = min1.getLocalBoundsVersion();
+            } else {
+                sepDistance.updateSeparatingDistance(input.transformA, input.transformB);
+            }
+
+            if (sepDistance.getConservativeSeparatingDistance() > manifoldPtr.getContactBreakingThreshold()) {
+                // still too far apart for any contact point, skip GJK
+                pointInputsPool.release(input);
+                if (ownManifold) {
+                    resultOut.refreshContactPoints();
+                }
+                return;
+            }
+        }
+
         // JAVA NOTE: original: TODO: if (dispatchInfo.m_useContinuous)
         gjkPairDetector.setMinkowskiA(min0);
         gjkPairDetector.setMinkowskiB(min1);
@@ -121,11 +168,12 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 
         //	input.m_maximumDistanceSquared = btScalar(1e30);
 
-        body0.getWorldTransform(input.transformA);
-        body1.getWorldTransform(input.transformB);
-
         gjkPairDetector.getClosestPoints(input, resultOut, dispatchInfo.debugDraw);
 
+        if (dispatchInfo.useConvexConservativeDistanceUtil) {
+            sepDistance.initSeparatingDistance(gjkPairDetector.getCachedSeparatingAxis(sepAxis), gjkPairDetector.getCachedSeparatingDistance(), input.transformA, input.transformB);
+        }
+
         pointInputsPool.release(input);
         //	#endif
 
@@ -250,7 +298,7 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
     ////////////////////////////////////////////////////////////////////////////
 
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<ConvexConvexAlgorithm> pool = ObjectPool.get(ConvexConvexAlgorithm.class);
+        private final ObjectPool<ConvexConvexAlgorithm> pool = new ObjectPool<ConvexConvexAlgorithm>(ConvexConvexAlgorithm.class);
 
         public ConvexPenetrationDepthSolver pdSolver;
         public SimplexSolverInterface simplexSolver;
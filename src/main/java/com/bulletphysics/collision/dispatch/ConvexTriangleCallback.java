@@ -31,6 +31,7 @@ import com.bulletphysics.collision.narrowphase.PersistentManifold;
 import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.collision.shapes.TriangleCallback;
 import com.bulletphysics.collision.shapes.TriangleShape;
+import com.bulletphysics.linearmath.MatrixUtil;
 import com.bulletphysics.linearmath.Transform;
 
 import javax.vecmath.Vector3f;
@@ -60,6 +61,17 @@ class ConvexTriangleCallback extends TriangleCallback {
     public int triangleCount;
     public PersistentManifold manifoldPtr;
 
+    private final Transform triTrans = new Transform();
+    private final Transform convexInTriangleSpace = new Transform();
+    private final Transform identity = new Transform();
+    private final MeshContactBuffer contactBuffer = new MeshContactBuffer();
+    private final TriangleSeparationCache separationCache = new TriangleSeparationCache();
+    private final Vector3f sepAxis = new Vector3f();
+
+    private final Vector3f tmp1 = new Vector3f();
+    private final Vector3f tmp2 = new Vector3f();
+    private final Vector3f debugColor = new Vector3f(255, 255, 0);
+
     public ConvexTriangleCallback(Dispatcher dispatcher, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
         this.dispatcher = dispatcher;
         this.dispatchInfoPtr = null;
@@ -71,6 +83,7 @@ class ConvexTriangleCallback extends TriangleCallback {
         // create the manifold from the dispatcher 'manifold pool'
         //
         manifoldPtr = dispatcher.getNewManifold(convexBody, triBody);
+        identity.setIdentity();
 
         clearCache();
     }
@@ -86,25 +99,39 @@ class ConvexTriangleCallback extends TriangleCallback {
         this.resultOut = resultOut;
 
         // recalc aabbs
-        Transform convexInTriangleSpace = new Transform();
-
-        triBody.getWorldTransform(convexInTriangleSpace);
-        convexInTriangleSpace.inverse();
-        convexInTriangleSpace.mul(convexBody.getWorldTransform(new Transform()));
+        triBody.getWorldTransform(triTrans);
+        convexInTriangleSpace.inverse(triTrans);
+        convexInTriangleSpace.mul(convexBody.getWorldTransform(tmpTrans));
 
         CollisionShape convexShape = (CollisionShape) convexBody.getCollisionShape();
         //CollisionShape* triangleShape = static_cast<btCollisionShape*>(triBody->m_collisionShape);
         convexShape.getAabb(convexInTriangleSpace, aabbMin, aabbMax);
         float extraMargin = collisionMarginTriangle;
-        Vector3f extra = new Vector3f();
-        extra.set(extraMargin, extraMargin, extraMargin);
+        tmp1.set(extraMargin, extraMargin, extraMargin);
+
+        aabbMax.add(tmp1);
+        aabbMin.sub(tmp1);
+
+        if (dispatchInfo.useMeshContactReduction) {
+            contactBuffer.begin(triTrans);
+        }
+    }
 
-        aabbMax.add(extra);
-        aabbMin.sub(extra);
+    /**
+     * Finishes processing of triangles, adds gathered contacts to the result when
+     * contact reduction is used.
+     */
+    public void processContacts() {
+        if (dispatchInfoPtr.useMeshContactReduction) {
+            contactBuffer.setPersistentManifold(manifoldPtr);
+            contactBuffer.flush(resultOut);
+        }
+        separationCache.endFrame();
     }
 
     private CollisionAlgorithmConstructionInfo ci = new CollisionAlgorithmConstructionInfo();
     private TriangleShape tm = new TriangleShape();
+    private final Transform tmpTrans = new Transform();
 
     public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
         // just for debugging purposes
@@ -118,12 +145,8 @@ class ConvexTriangleCallback extends TriangleCallback {
 
         // debug drawing of the overlapping triangles
         if (dispatchInfoPtr != null && dispatchInfoPtr.debugDraw != null && dispatchInfoPtr.debugDraw.getDebugMode() > 0) {
-            Vector3f color = new Vector3f();
-            color.set(255, 255, 0);
-            Transform tr = ob.getWorldTransform(new Transform());
-
-            Vector3f tmp1 = new Vector3f();
-            Vector3f tmp2 = new Vector3f();
+            Vector3f color = debugColor;
+            Transform tr = triTrans;
 
             tmp1.set(triangle[0]);
             tr.transform(tmp1);
@@ -153,6 +176,21 @@ class ConvexTriangleCallback extends TriangleCallback {
         //btCollisionObject* colObj = static_cast<btCollisionObject*>(m_convexProxy->m_clientObject);
 
         if (convexBody.getCollisionShape().isConvex()) {
+            TriangleSeparationCache.Entry sepEntry = null;
+            long sepKey = 0;
+            boolean useSeparationCache = dispatchInfoPtr.useTriangleSeparationCache && dispatchInfoPtr.useConvexConservativeDistanceUtil;
+            if (useSeparationCache) {
+                sepKey = TriangleSeparationCache.getKey(partId, triangleIndex);
+                sepEntry = separationCache.get(sepKey);
+                if (sepEntry != null) {
+                    // the triangle is static in mesh space, track only the motion of convex
+                    sepEntry.sepDistance.updateSeparatingDistance(convexInTriangleSpace, identity);
+                    if (sepEntry.sepDistance.getConservativeSeparatingDistance() > manifoldPtr.getContactBreakingThreshold()) {
+                        return;
+                    }
+                }
+            }
+
             tm.init(triangle[0], triangle[1], triangle[2]);
             tm.setMargin(collisionMarginTriangle);
 
@@ -163,10 +201,30 @@ class ConvexTriangleCallback extends TriangleCallback {
             // this should use the btDispatcher, so the actual registered algorithm is used
             //		btConvexConvexAlgorithm cvxcvxalgo(m_manifoldPtr,ci,m_convexBody,m_triBody);
 
-            resultOut.setShapeIdentifiers(-1, -1, partId, triangleIndex);
-            //cvxcvxalgo.setShapeIdentifiers(-1,-1,partId,triangleIndex);
-            //cvxcvxalgo.processCollision(m_convexBody,m_triBody,*m_dispatchInfoPtr,m_resultOut);
-            colAlgo.processCollision(convexBody, triBody, dispatchInfoPtr, resultOut);
+            if (dispatchInfoPtr.useMeshContactReduction) {
+                contactBuffer.setPersistentManifold(manifoldPtr);
+                contactBuffer.setTriangle(triangle, partId, triangleIndex);
+                colAlgo.processCollision(convexBody, triBody, dispatchInfoPtr, contactBuffer);
+            } else {
+                resultOut.setShapeIdentifiers(-1, -1, partId, triangleIndex);
+                //cvxcvxalgo.setShapeIdentifiers(-1,-1,partId,triangleIndex);
+                //cvxcvxalgo.processCollision(m_convexBody,m_triBody,*m_dispatchInfoPtr,m_resultOut);
+                colAlgo.processCollision(convexBody, triBody, dispatchInfoPtr, resultOut);
+            }
+
+            if (useSeparationCache && colAlgo instanceof ConvexConvexAlgorithm) {
+                float distance = ((ConvexConvexAlgorithm) colAlgo).getLastSeparatingDistance(sepAxis);
+                if (distance > 0f) {
+                    if (sepEntry == null) {
+                        sepEntry = separationCache.add(sepKey);
+                        sepEntry.sepDistance.init(convexBody.getCollisionShape().getAngularMotionDisc(), 0f);
+                    }
+                    MatrixUtil.transposeTransform(sepAxis, sepAxis, triTrans.basis);
+                    sepEntry.sepDistance.initSeparatingDistance(sepAxis, distance, convexInTriangleSpace, identity);
+                } else if (sepEntry != null) {
+                    sepEntry.sepDistance.initSeparatingDistance(sepAxis, 0f, convexInTriangleSpace, identity);
+                }
+            }
             //colAlgo.destroy();
             ci.dispatcher1.freeCollisionAlgorithm(colAlgo);
             ob.internalSetTemporaryCollisionShape(tmpShape);
@@ -175,6 +233,7 @@ class ConvexTriangleCallback extends TriangleCallback {
 
     public void clearCache() {
         dispatcher.clearManifold(manifoldPtr);
+        separationCache.clear();
     }
 
     public Vector3f getAabbMin(Vector3f out) {
@@ -29,6 +29,8 @@ import com.bulletphysics.collision.narrowphase.GjkEpaPenetrationDepthSolver;
 import com.bulletphysics.collision.narrowphase.VoronoiSimplexSolver;
 import com.bulletphysics.extras.gimpact.GImpactCollisionAlgorithm;
 
+import static com.bulletphysics.collision.broadphase.BroadphaseNativeType.BOX_SHAPE_PROXYTYPE;
+import static com.bulletphysics.collision.broadphase.BroadphaseNativeType.CAPSULE_SHAPE_PROXYTYPE;
 import static com.bulletphysics.collision.broadphase.BroadphaseNativeType.SPHERE_SHAPE_PROXYTYPE;
 import static com.bulletphysics.collision.broadphase.BroadphaseNativeType.STATIC_PLANE_PROXYTYPE;
 
@@ -51,11 +53,15 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
     protected CollisionAlgorithmCreateFunc swappedConvexConcaveCreateFunc;
     protected CollisionAlgorithmCreateFunc compoundCreateFunc;
     protected CollisionAlgorithmCreateFunc swappedCompoundCreateFunc;
+    protected CollisionAlgorithmCreateFunc compoundCompoundCreateFunc;
     protected CollisionAlgorithmCreateFunc emptyCreateFunc;
     protected CollisionAlgorithmCreateFunc sphereSphereCF;
     protected CollisionAlgorithmCreateFunc sphereBoxCF;
     protected CollisionAlgorithmCreateFunc boxSphereCF;
     protected CollisionAlgorithmCreateFunc boxBoxCF;
+    protected CollisionAlgorithmCreateFunc capsuleCapsuleCF;
+    protected CollisionAlgorithmCreateFunc capsuleSphereCF;
+    protected CollisionAlgorithmCreateFunc sphereCapsuleCF;
     protected CollisionAlgorithmCreateFunc sphereTriangleCF;
     protected CollisionAlgorithmCreateFunc triangleSphereCF;
     protected CollisionAlgorithmCreateFunc planeConvexCF;
@@ -63,6 +69,11 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
     protected CollisionAlgorithmCreateFunc voxelCF;
     protected CollisionAlgorithmCreateFunc swappedVoxelCF;
 
+    private static final int MAX_BROADPHASE_COLLISION_TYPES = BroadphaseNativeType.MAX_BROADPHASE_COLLISION_TYPES.ordinal();
+
+    // resolved create functions, indexed by [proxyType0][proxyType1]
+    private CollisionAlgorithmCreateFunc[][] dispatchMatrix;
+
     public DefaultCollisionConfiguration() {
         simplexSolver = new VoronoiSimplexSolver();
 
@@ -83,21 +94,27 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
         swappedConvexConcaveCreateFunc = new ConvexConcaveCollisionAlgorithm.SwappedCreateFunc();
         compoundCreateFunc = new CompoundCollisionAlgorithm.CreateFunc();
         swappedCompoundCreateFunc = new CompoundCollisionAlgorithm.SwappedCreateFunc();
+        compoundCompoundCreateFunc = new CompoundCompoundCollisionAlgorithm.CreateFunc();
         emptyCreateFunc = new EmptyAlgorithm.CreateFunc();
 
         sphereSphereCF = new SphereSphereCollisionAlgorithm.CreateFunc();
+        sphereBoxCF = new SphereBoxCollisionAlgorithm.CreateFunc();
+        boxSphereCF = new SphereBoxCollisionAlgorithm.CreateFunc();
+        boxSphereCF.swapped = true;
         /*
-		m_sphereBoxCF = new(mem) btSphereBoxCollisionAlgorithm::CreateFunc;
-		m_boxSphereCF = new (mem)btSphereBoxCollisionAlgorithm::CreateFunc;
-		m_boxSphereCF->m_swapped = true;
 		m_sphereTriangleCF = new (mem)btSphereTriangleCollisionAlgorithm::CreateFunc;
 		m_triangleSphereCF = new (mem)btSphereTriangleCollisionAlgorithm::CreateFunc;
 		m_triangleSphereCF->m_swapped = true;
-
-		mem = btAlignedAlloc(sizeof(btBoxBoxCollisionAlgorithm::CreateFunc),16);
-		m_boxBoxCF = new(mem)btBoxBoxCollisionAlgorithm::CreateFunc;
 		*/
 
+        boxBoxCF = new BoxBoxCollisionAlgorithm.CreateFunc();
+
+        // closed form capsule algorithms
+        capsuleCapsuleCF = new CapsuleCapsuleCollisionAlgorithm.CreateFunc();
+        capsuleSphereCF = new CapsuleSphereCollisionAlgorithm.CreateFunc();
+        sphereCapsuleCF = new CapsuleSphereCollisionAlgorithm.CreateFunc();
+        sphereCapsuleCF.swapped = true;
+
         // convex versus plane
         convexPlaneCF = new ConvexPlaneCollisionAlgorithm.CreateFunc();
         planeConvexCF = new ConvexPlaneCollisionAlgorithm.CreateFunc();
@@ -149,23 +166,87 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
 		*/
     }
 
+    /**
+     * Sets the number of frames compound collision algorithms keep the algorithm of a child
+     * (or pair of children) after it stopped overlapping the other object. Lower values
+     * release pooled algorithms and manifolds sooner, higher values avoid recreating them
+     * for children that repeatedly touch and separate. Affects only newly created pairs.
+     */
+    public void setCompoundChildReleaseFrames(int frames) {
+        if (compoundCreateFunc instanceof CompoundCollisionAlgorithm.CreateFunc) {
+            ((CompoundCollisionAlgorithm.CreateFunc) compoundCreateFunc).childReleaseFrames = frames;
+        }
+        if (swappedCompoundCreateFunc instanceof CompoundCollisionAlgorithm.SwappedCreateFunc) {
+            ((CompoundCollisionAlgorithm.SwappedCreateFunc) swappedCompoundCreateFunc).childReleaseFrames = frames;
+        }
+        if (compoundCompoundCreateFunc instanceof CompoundCompoundCollisionAlgorithm.CreateFunc) {
+            ((CompoundCompoundCollisionAlgorithm.CreateFunc) compoundCompoundCreateFunc).childReleaseFrames = frames;
+        }
+    }
+
+    /**
+     * Overrides the create function used for the given pair of shape types. Only the
+     * given order is changed, register the swapped variant for the reverse order as well.
+     * Must be called before the configuration is passed to a {@link CollisionDispatcher},
+     * use {@link CollisionDispatcher#registerCollisionCreateFunc} afterwards.
+     */
+    public void setCollisionAlgorithmCreateFunc(BroadphaseNativeType proxyType0, BroadphaseNativeType proxyType1, CollisionAlgorithmCreateFunc createFunc) {
+        assert (createFunc != null);
+        getDispatchMatrix()[proxyType0.ordinal()][proxyType1.ordinal()] = createFunc;
+    }
+
     @Override
     public CollisionAlgorithmCreateFunc getCollisionAlgorithmCreateFunc(BroadphaseNativeType proxyType0, BroadphaseNativeType proxyType1) {
+        return getDispatchMatrix()[proxyType0.ordinal()][proxyType1.ordinal()];
+    }
+
+    private CollisionAlgorithmCreateFunc[][] getDispatchMatrix() {
+        // built lazily so that subclasses can replace the default create functions in their constructor
+        if (dispatchMatrix == null) {
+            dispatchMatrix = new CollisionAlgorithmCreateFunc[MAX_BROADPHASE_COLLISION_TYPES][MAX_BROADPHASE_COLLISION_TYPES];
+            for (int i = 0; i < MAX_BROADPHASE_COLLISION_TYPES; i++) {
+                for (int j = 0; j < MAX_BROADPHASE_COLLISION_TYPES; j++) {
+                    dispatchMatrix[i][j] = selectCollisionAlgorithmCreateFunc(BroadphaseNativeType.forValue(i), BroadphaseNativeType.forValue(j));
+                }
+            }
+        }
+        return dispatchMatrix;
+    }
+
+    /**
+     * Picks the default create function for the given pair of shape types. Evaluated once
+     * per pair when the dispatch matrix is built.
+     */
+    protected CollisionAlgorithmCreateFunc selectCollisionAlgorithmCreateFunc(BroadphaseNativeType proxyType0, BroadphaseNativeType proxyType1) {
         if ((proxyType0 == SPHERE_SHAPE_PROXYTYPE) && (proxyType1 == SPHERE_SHAPE_PROXYTYPE)) {
             return sphereSphereCF;
         }
 
-		/*
-		if ((proxyType0 == SPHERE_SHAPE_PROXYTYPE) && (proxyType1==BOX_SHAPE_PROXYTYPE))
-		{
-			return	m_sphereBoxCF;
-		}
+        if ((proxyType0 == SPHERE_SHAPE_PROXYTYPE) && (proxyType1 == BOX_SHAPE_PROXYTYPE)) {
+            return sphereBoxCF;
+        }
 
-		if ((proxyType0 == BOX_SHAPE_PROXYTYPE ) && (proxyType1==SPHERE_SHAPE_PROXYTYPE))
-		{
-			return	m_boxSphereCF;
-		}
+        if ((proxyType0 == BOX_SHAPE_PROXYTYPE) && (proxyType1 == SPHERE_SHAPE_PROXYTYPE)) {
+            return boxSphereCF;
+        }
+
+        if ((proxyType0 == BOX_SHAPE_PROXYTYPE) && (proxyType1 == BOX_SHAPE_PROXYTYPE)) {
+            return boxBoxCF;
+        }
+
+        if ((proxyType0 == CAPSULE_SHAPE_PROXYTYPE) && (proxyType1 == CAPSULE_SHAPE_PROXYTYPE)) {
+            return capsuleCapsuleCF;
+        }
 
+        if ((proxyType0 == CAPSULE_SHAPE_PROXYTYPE) && (proxyType1 == SPHERE_SHAPE_PROXYTYPE)) {
+            return capsuleSphereCF;
+        }
+
+        if ((proxyType0 == SPHERE_SHAPE_PROXYTYPE) && (proxyType1 == CAPSULE_SHAPE_PROXYTYPE)) {
+            return sphereCapsuleCF;
+        }
+
+		/*
 		if ((proxyType0 == SPHERE_SHAPE_PROXYTYPE ) && (proxyType1==TRIANGLE_SHAPE_PROXYTYPE))
 		{
 			return	m_sphereTriangleCF;
@@ -175,10 +256,6 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
 		{
 			return	m_triangleSphereCF;
 		}
-
-		if ((proxyType0 == BOX_SHAPE_PROXYTYPE) && (proxyType1 == BOX_SHAPE_PROXYTYPE)) {
-			return boxBoxCF;
-		}
 		*/
 
         if (proxyType0.isConvex() && (proxyType1 == STATIC_PLANE_PROXYTYPE)) {
@@ -201,6 +278,10 @@ public class DefaultCollisionConfiguration extends CollisionConfiguration {
             return swappedConvexConcaveCreateFunc;
         }
 
+        if (proxyType0.isCompound() && proxyType1.isCompound()) {
+            return compoundCompoundCreateFunc;
+        }
+
         if (proxyType0.isCompound()) {
             return compoundCreateFunc;
         } else {
@@ -0,0 +1,369 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.linearmath.MatrixUtil;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * MeshContactBuffer gathers contact points of a convex object against triangles
+ * of a concave mesh instead of adding them directly to the persistent manifold.<p>
+ *
+ * When all triangles are processed, contacts on edges and vertices shared with
+ * a triangle that is touched on its face (internal edges) are removed and the
+ * rest is reduced to at most {@link #MAX_CONTACTS} points spanning the largest
+ * area, which are then passed to the actual {@link ManifoldResult}. Used only when
+ * {@link com.bulletphysics.collision.broadphase.DispatcherInfo#useMeshContactReduction}
+ * is enabled.
+ */
+class MeshContactBuffer extends ManifoldResult {
+
+    public static final int MAX_CONTACTS = 4;
+
+    // contact normal closer than this to the triangle normal is considered a face contact
+    private static final float FACE_NORMAL_TOLERANCE = 1e-3f;
+    private static final float SAME_VERTEX_DISTANCE_SQR = 1e-10f;
+
+    private static final int FEATURE_FACE = 7;
+
+    private static class Contact {
+        public final Vector3f normalOnBInWorld = new Vector3f();
+        public final Vector3f pointInWorld = new Vector3f();
+        public float depth;
+        public int partId;
+        public int triangleIndex;
+        // triangle in mesh space
+        public final Vector3f[] triangle = new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f()};
+        // bit mask of triangle vertices forming the closest feature
+        public int feature;
+        public boolean removed;
+    }
+
+    private final ObjectArrayList<Contact> contacts = new ObjectArrayList<Contact>();
+    private int numContacts;
+
+    private final ObjectArrayList<Contact> sorted = new ObjectArrayList<Contact>();
+    private final ObjectArrayList<Vector3f> voidedVertices = new ObjectArrayList<Vector3f>();
+
+    private final Transform meshTrans = new Transform();
+    private final Vector3f[] triangle = new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f()};
+    private final Vector3f faceNormal = new Vector3f();
+    private int partId;
+    private int triangleIndex;
+
+    private final Vector3f tmp = new Vector3f();
+    private final Vector3f tmp1 = new Vector3f();
+    private final Vector3f tmp2 = new Vector3f();
+    private final Vector3f localPoint = new Vector3f();
+    private final Vector3f areaNormal = new Vector3f();
+    private final Vector3f crs = new Vector3f();
+
+    /**
+     * Starts gathering contacts, given transform is the world transform of the mesh.
+     */
+    public void begin(Transform meshTrans) {
+        this.meshTrans.set(meshTrans);
+        numContacts = 0;
+    }
+
+    /**
+     * Sets triangle (in mesh space) that the following contacts belong to.
+     */
+    public void setTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
+        this.triangle[0].set(triangle[0]);
+        this.triangle[1].set(triangle[1]);
+        this.triangle[2].set(triangle[2]);
+        this.partId = partId;
+        this.triangleIndex = triangleIndex;
+
+        tmp1.sub(triangle[1], triangle[0]);
+        tmp2.sub(triangle[2], triangle[0]);
+        faceNormal.cross(tmp1, tmp2);
+        float len = faceNormal.length();
+        if (len > 0f) {
+            faceNormal.scale(1f / len);
+        }
+    }
+
+    public int getNumContacts() {
+        return numContacts;
+    }
+
+    @Override
+    public void addContactPoint(Vector3f normalOnBInWorld, Vector3f pointInWorld, float depth) {
+        if (depth > getPersistentManifold().getContactBreakingThreshold()) {
+            return;
+        }
+
+        if (numContacts == contacts.size()) {
+            contacts.add(new Contact());
+        }
+        Contact c = contacts.getQuick(numContacts++);
+        c.normalOnBInWorld.set(normalOnBInWorld);
+        c.pointInWorld.set(pointInWorld);
+        c.depth = depth;
+        c.partId = partId;
+        c.triangleIndex = triangleIndex;
+        c.triangle[0].set(triangle[0]);
+        c.triangle[1].set(triangle[1]);
+        c.triangle[2].set(triangle[2]);
+        c.removed = false;
+
+        // the point is on the triangle (B), normal points from it
+        MatrixUtil.transposeTransform(tmp, normalOnBInWorld, meshTrans.basis);
+        if (Math.abs(tmp.dot(faceNormal)) >= 1f - FACE_NORMAL_TOLERANCE) {
+            c.feature = FEATURE_FACE;
+        } else {
+            meshTrans.invXform(pointInWorld, localPoint);
+            c.feature = closestFeature(localPoint, triangle[0], triangle[1], triangle[2]);
+        }
+    }
+
+    /**
+     * Removes internal edge contacts, reduces the rest and adds them to given result.
+     */
+    public void flush(ManifoldResult resultOut) {
+        if (numContacts == 0) {
+            return;
+        }
+
+        removeInternalEdgeContacts();
+
+        int count = 0;
+        for (int i = 0; i < numContacts; i++) {
+            if (!contacts.getQuick(i).removed) {
+                count++;
+            }
+        }
+
+        if (count > MAX_CONTACTS) {
+            reduceContacts();
+        }
+
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (!c.removed) {
+                resultOut.setShapeIdentifiers(-1, -1, c.partId, c.triangleIndex);
+                resultOut.addContactPoint(c.normalOnBInWorld, c.pointInWorld, c.depth);
+            }
+        }
+        numContacts = 0;
+    }
+
+    /**
+     * Contacts on faces are always kept and void vertices of their triangles. Other
+     * contacts are processed from the deepest one and are removed when all vertices
+     * of their feature are already voided, otherwise they void their triangle too.
+     */
+    private void removeInternalEdgeContacts() {
+        voidedVertices.clear();
+        sorted.clear();
+
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (c.feature == FEATURE_FACE) {
+                voidTriangle(c);
+            } else {
+                // insertion sort by depth, deepest first
+                int j = sorted.size();
+                sorted.add(c);
+                while (j > 0 && sorted.getQuick(j - 1).depth > c.depth) {
+                    sorted.setQuick(j, sorted.getQuick(j - 1));
+                    j--;
+                }
+                sorted.setQuick(j, c);
+            }
+        }
+
+        for (int i = 0; i < sorted.size(); i++) {
+            Contact c = sorted.getQuick(i);
+            boolean allVoided = true;
+            for (int v = 0; v < 3 && allVoided; v++) {
+                if ((c.feature & (1 << v)) != 0 && !isVoided(c.triangle[v])) {
+                    allVoided = false;
+                }
+            }
+            if (allVoided) {
+                c.removed = true;
+            } else {
+                voidTriangle(c);
+            }
+        }
+        sorted.clear();
+    }
+
+    private void voidTriangle(Contact c) {
+        for (int v = 0; v < 3; v++) {
+            if (!isVoided(c.triangle[v])) {
+                voidedVertices.add(c.triangle[v]);
+            }
+        }
+    }
+
+    private boolean isVoided(Vector3f vertex) {
+        for (int i = 0; i < voidedVertices.size(); i++) {
+            Vector3f v = voidedVertices.getQuick(i);
+            float dx = v.x - vertex.x, dy = v.y - vertex.y, dz = v.z - vertex.z;
+            if (dx * dx + dy * dy + dz * dz <= SAME_VERTEX_DISTANCE_SQR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the deepest contact and three others maximizing the contact area.
+     */
+    private void reduceContacts() {
+        Contact c0 = null;
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (!c.removed && (c0 == null || c.depth < c0.depth)) {
+                c0 = c;
+            }
+        }
+
+        // farthest from the first one
+        Contact c1 = null;
+        float best = -1f;
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (!c.removed && c != c0) {
+                tmp.sub(c.pointInWorld, c0.pointInWorld);
+                float d = tmp.lengthSquared();
+                if (d > best) {
+                    best = d;
+                    c1 = c;
+                }
+            }
+        }
+
+        // largest triangle with the first two
+        Contact c2 = null;
+        best = -1f;
+        tmp1.sub(c1.pointInWorld, c0.pointInWorld);
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (!c.removed && c != c0 && c != c1) {
+                tmp2.sub(c.pointInWorld, c0.pointInWorld);
+                tmp.cross(tmp1, tmp2);
+                float d = tmp.lengthSquared();
+                if (d > best) {
+                    best = d;
+                    c2 = c;
+                }
+            }
+        }
+
+        // the one farthest outside of the triangle, adding the most area
+        Vector3f normal = areaNormal;
+        tmp2.sub(c2.pointInWorld, c0.pointInWorld);
+        normal.cross(tmp1, tmp2);
+        Contact c3 = null;
+        best = Float.MAX_VALUE;
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            if (!c.removed && c != c0 && c != c1 && c != c2) {
+                float d = Math.min(Math.min(
+                        edgeArea(c0.pointInWorld, c1.pointInWorld, c.pointInWorld, normal),
+                        edgeArea(c1.pointInWorld, c2.pointInWorld, c.pointInWorld, normal)),
+                        edgeArea(c2.pointInWorld, c0.pointInWorld, c.pointInWorld, normal));
+                if (d < best) {
+                    best = d;
+                    c3 = c;
+                }
+            }
+        }
+
+        for (int i = 0; i < numContacts; i++) {
+            Contact c = contacts.getQuick(i);
+            c.removed = (c != c0 && c != c1 && c != c2 && c != c3);
+        }
+    }
+
+    /**
+     * Signed area (scaled by normal length) of triangle a,b,p, negative when p is
+     * on the outer side of edge a,b.
+     */
+    private float edgeArea(Vector3f a, Vector3f b, Vector3f p, Vector3f normal) {
+        tmp.sub(b, a);
+        tmp2.sub(p, a);
+        crs.cross(tmp, tmp2);
+        return crs.dot(normal);
+    }
+
+    /**
+     * Returns bit mask of triangle vertices forming the feature (vertex, edge or face)
+     * closest to given point, see Real-Time Collision Detection by Christer Ericson.
+     */
+    private int closestFeature(Vector3f p, Vector3f a, Vector3f b, Vector3f c) {
+        Vector3f ab = tmp1;
+        Vector3f ac = tmp2;
+        ab.sub(b, a);
+        ac.sub(c, a);
+
+        tmp.sub(p, a);
+        float d1 = ab.dot(tmp);
+        float d2 = ac.dot(tmp);
+        if (d1 <= 0f && d2 <= 0f) {
+            return 1;
+        }
+
+        tmp.sub(p, b);
+        float d3 = ab.dot(tmp);
+        float d4 = ac.dot(tmp);
+        if (d3 >= 0f && d4 <= d3) {
+            return 2;
+        }
+
+        float vc = d1 * d4 - d3 * d2;
+        if (vc <= 0f && d1 >= 0f && d3 <= 0f) {
+            return 1 | 2;
+        }
+
+        tmp.sub(p, c);
+        float d5 = ab.dot(tmp);
+        float d6 = ac.dot(tmp);
+        if (d6 >= 0f && d5 <= d6) {
+            return 4;
+        }
+
+        float vb = d5 * d2 - d1 * d6;
+        if (vb <= 0f && d2 >= 0f && d6 <= 0f) {
+            return 1 | 4;
+        }
+
+        float va = d3 * d6 - d5 * d4;
+        if (va <= 0f && (d4 - d3) >= 0f && (d5 - d6) >= 0f) {
+            return 2 | 4;
+        }
+
+        return FEATURE_FACE;
+    }
+
+}
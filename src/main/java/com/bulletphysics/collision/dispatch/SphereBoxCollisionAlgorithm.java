@@ -0,0 +1,192 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.BulletGlobals;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
+import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.linearmath.VectorUtil;
+import com.bulletphysics.util.ObjectArrayList;
+import com.bulletphysics.util.ObjectPool;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * SphereBoxCollisionAlgorithm provides sphere-box collision detection. Other features are frame-coherency (persistent
+ * data) and collision response.
+ */
+public class SphereBoxCollisionAlgorithm extends CollisionAlgorithm {
+
+    private boolean ownManifold;
+    private PersistentManifold manifoldPtr;
+    private boolean isSwapped;
+
+    public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+        super.init(ci);
+        this.ownManifold = false;
+        this.manifoldPtr = mf;
+        this.isSwapped = isSwapped;
+
+        CollisionObject sphereObj = isSwapped ? col1 : col0;
+        CollisionObject boxObj = isSwapped ? col0 : col1;
+
+        if (manifoldPtr == null && dispatcher.needsCollision(sphereObj, boxObj)) {
+            manifoldPtr = dispatcher.getNewManifold(sphereObj, boxObj);
+            ownManifold = true;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (ownManifold) {
+            if (manifoldPtr != null) {
+                dispatcher.releaseManifold(manifoldPtr);
+            }
+            manifoldPtr = null;
+        }
+    }
+
+    @Override
+    public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        if (manifoldPtr == null) {
+            return;
+        }
+
+        CollisionObject sphereObj = isSwapped ? body1 : body0;
+        CollisionObject boxObj = isSwapped ? body0 : body1;
+
+        SphereShape sphere = (SphereShape) sphereObj.getCollisionShape();
+        BoxShape box = (BoxShape) boxObj.getCollisionShape();
+
+        Transform boxTrans = boxObj.getWorldTransform(new Transform());
+        Vector3f sphereCenter = new Vector3f(sphereObj.getWorldTransform(new Transform()).origin);
+        float radius = sphere.getRadius();
+
+        Vector3f pOnBox = new Vector3f();
+        Vector3f normal = new Vector3f();
+        float dist = getSphereDistance(box, boxTrans, sphereCenter, radius, pOnBox, normal);
+
+        resultOut.setPersistentManifold(manifoldPtr);
+
+        if (dist < manifoldPtr.getContactBreakingThreshold()) {
+            // report a contact in the order of the manifold (sphere, box). internally this will be kept persistent,
+            // and contact reduction is done
+            resultOut.addContactPoint(normal, pOnBox, dist);
+        }
+
+        if (ownManifold) {
+            if (manifoldPtr.getNumContacts() != 0) {
+                resultOut.refreshContactPoints();
+            }
+        }
+    }
+
+    /**
+     * Calculates the closest point on the surface of the box to the sphere.
+     *
+     * @param pOnBox closest point on the box surface, in world space
+     * @param normal unit normal pointing from the box towards the sphere, in world space
+     * @return The distance between the surfaces, negative when penetrating.
+     */
+    private static float getSphereDistance(BoxShape box, Transform boxTrans, Vector3f sphereCenter, float radius, Vector3f pOnBox, Vector3f normal) {
+        Vector3f halfExtents = box.getHalfExtentsWithMargin(new Vector3f());
+
+        Vector3f local = new Vector3f();
+        boxTrans.invXform(sphereCenter, local);
+
+        // clamp the center to the box
+        pOnBox.set(local);
+        VectorUtil.setMin(pOnBox, halfExtents);
+        Vector3f tmp = new Vector3f();
+        tmp.negate(halfExtents);
+        VectorUtil.setMax(pOnBox, tmp);
+
+        float dist;
+        tmp.sub(local, pOnBox);
+        float lenSqr = tmp.lengthSquared();
+        if (lenSqr > BulletGlobals.SIMD_EPSILON * BulletGlobals.SIMD_EPSILON) {
+            // center outside of the box
+            float len = (float) Math.sqrt(lenSqr);
+            normal.scale(1f / len, tmp);
+            dist = len - radius;
+        } else {
+            // center inside of the box, push out through the closest face
+            int axis = 0;
+            float faceDist = halfExtents.x - Math.abs(local.x);
+            for (int i = 1; i < 3; i++) {
+                float d = VectorUtil.getCoord(halfExtents, i) - Math.abs(VectorUtil.getCoord(local, i));
+                if (d < faceDist) {
+                    faceDist = d;
+                    axis = i;
+                }
+            }
+            float sign = (VectorUtil.getCoord(local, axis) < 0f) ? -1f : 1f;
+            normal.set(0f, 0f, 0f);
+            VectorUtil.setCoord(normal, axis, sign);
+            VectorUtil.setCoord(pOnBox, axis, sign * VectorUtil.getCoord(halfExtents, axis));
+            dist = -faceDist - radius;
+        }
+
+        boxTrans.transform(pOnBox);
+        boxTrans.basis.transform(normal);
+        return dist;
+    }
+
+    @Override
+    public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+        // not yet
+        return 1f;
+    }
+
+    @Override
+    public void getAllContactManifolds(ObjectArrayList<PersistentManifold> manifoldArray) {
+        if (manifoldPtr != null && ownManifold) {
+            manifoldArray.add(manifoldPtr);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+        private final ObjectPool<SphereBoxCollisionAlgorithm> pool = new ObjectPool<SphereBoxCollisionAlgorithm>(SphereBoxCollisionAlgorithm.class);
+
+        @Override
+        public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+            SphereBoxCollisionAlgorithm algo = pool.get();
+            algo.init(null, ci, body0, body1, swapped);
+            return algo;
+        }
+
+        @Override
+        public void releaseCollisionAlgorithm(CollisionAlgorithm algo) {
+            pool.release((SphereBoxCollisionAlgorithm) algo);
+        }
+    }
+
+}
@@ -146,7 +146,7 @@ public class SphereSphereCollisionAlgorithm extends CollisionAlgorithm {
     ////////////////////////////////////////////////////////////////////////////
 
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<SphereSphereCollisionAlgorithm> pool = ObjectPool.get(SphereSphereCollisionAlgorithm.class);
+        private final ObjectPool<SphereSphereCollisionAlgorithm> pool = new ObjectPool<SphereSphereCollisionAlgorithm>(SphereSphereCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
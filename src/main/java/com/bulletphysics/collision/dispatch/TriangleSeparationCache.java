@@ -0,0 +1,155 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+
+package com.bulletphysics.collision.dispatch;
+
+import com.bulletphysics.linearmath.ConvexSeparatingDistanceUtil;
+import com.bulletphysics.util.ObjectArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Conservative separating distances of a convex object from individual triangles
+ * of a concave mesh, keyed by part id and triangle index. Entries of triangles that
+ * were not visited during a frame are dropped at the end of it.
+ */
+class TriangleSeparationCache {
+
+    public static class Entry {
+        long key;
+        int frame;
+        public final ConvexSeparatingDistanceUtil sepDistance = new ConvexSeparatingDistanceUtil();
+    }
+
+    private Entry[] table = new Entry[16];
+    private int size;
+    private int frame;
+
+    private final ObjectArrayList<Entry> live = new ObjectArrayList<Entry>();
+    private final ObjectArrayList<Entry> freeEntries = new ObjectArrayList<Entry>();
+
+    public static long getKey(int partId, int triangleIndex) {
+        return ((long) partId << 32) | (triangleIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns entry for given key and marks it as visited, or null when not present.
+     */
+    public Entry get(long key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != null; i = (i + 1) & mask) {
+            Entry e = table[i];
+            if (e.key == key) {
+                e.frame = frame;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds new entry for key that is not present.
+     */
+    public Entry add(long key) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2, false);
+        }
+
+        Entry e = freeEntries.size() == 0 ? new Entry() : freeEntries.remove(freeEntries.size() - 1);
+        e.key = key;
+        e.frame = frame;
+        insert(e);
+        size++;
+        return e;
+    }
+
+    /**
+     * Drops entries not visited since previous call.
+     */
+    public void endFrame() {
+        boolean stale = false;
+        for (int i = 0; i < table.length; i++) {
+            Entry e = table[i];
+            if (e != null && e.frame != frame) {
+                stale = true;
+                break;
+            }
+        }
+        if (stale) {
+            rehash(table.length, true);
+        }
+        frame++;
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                freeEntries.add(table[i]);
+                table[i] = null;
+            }
+        }
+        size = 0;
+    }
+
+    private void rehash(int capacity, boolean dropStale) {
+        live.clear();
+        for (int i = 0; i < table.length; i++) {
+            Entry e = table[i];
+            if (e != null) {
+                if (!dropStale || e.frame == frame) {
+                    live.add(e);
+                } else {
+                    freeEntries.add(e);
+                }
+            }
+        }
+
+        if (capacity != table.length) {
+            table = new Entry[capacity];
+        } else {
+            Arrays.fill(table, null);
+        }
+
+        size = live.size();
+        for (int i = 0; i < live.size(); i++) {
+            insert(live.getQuick(i));
+        }
+        live.clear();
+    }
+
+    private void insert(Entry e) {
+        int mask = table.length - 1;
+        int i = hash(e.key) & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = e;
+    }
+
+    private static int hash(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -28,7 +28,9 @@ import com.bulletphysics.collision.broadphase.CollisionAlgorithm;
 import com.bulletphysics.collision.broadphase.CollisionAlgorithmConstructionInfo;
 import com.bulletphysics.collision.broadphase.DispatcherInfo;
 import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.shapes.voxel.BakedVoxelChunk;
 import com.bulletphysics.collision.shapes.voxel.VoxelInfo;
+import com.bulletphysics.collision.shapes.voxel.VoxelOccupancy;
 import com.bulletphysics.collision.shapes.voxel.VoxelWorldShape;
 import com.bulletphysics.linearmath.IntUtil;
 import com.bulletphysics.linearmath.Transform;
@@ -50,6 +52,7 @@ import java.util.List;
 public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
 
     private List<BlockCollisionInfo> blockCollisionInfo = new ArrayList<BlockCollisionInfo>();
+    private List<BakedCollisionInfo> bakedCollisionInfo = new ArrayList<BakedCollisionInfo>();
     private boolean isSwapped;
     private Tuple3i lastMin = new Point3i(0, 0, 0);
     private Tuple3i lastMax = new Point3i(-1, -1, -1);
@@ -62,16 +65,44 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
 
     @Override
     public void destroy() {
+        clearBlockCollisionInfo();
+    }
+
+    private void clearBlockCollisionInfo() {
         for (BlockCollisionInfo info : blockCollisionInfo) {
             if (info.algorithm != null) {
                 dispatcher.freeCollisionAlgorithm(info.algorithm);
             }
         }
         blockCollisionInfo.clear();
+        for (BakedCollisionInfo info : bakedCollisionInfo) {
+            if (info.algorithm != null) {
+                dispatcher.freeCollisionAlgorithm(info.algorithm);
+            }
+        }
+        bakedCollisionInfo.clear();
         lastMin.set(0, 0, 0);
         lastMax.set(-1, -1, -1);
     }
 
+    /**
+     * Drops the cached collision state of the voxels in the given (inclusive) region, so that they are looked up and their
+     * contacts are generated anew.
+     */
+    public void invalidateVoxels(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (BlockCollisionInfo info : blockCollisionInfo) {
+            if (info.position.x >= minX && info.position.x <= maxX &&
+                    info.position.y >= minY && info.position.y <= maxY &&
+                    info.position.z >= minZ && info.position.z <= maxZ) {
+                if (info.algorithm != null) {
+                    dispatcher.freeCollisionAlgorithm(info.algorithm);
+                    info.algorithm = null;
+                }
+                info.blockShape = BroadphaseNativeType.INVALID_SHAPE_PROXYTYPE;
+            }
+        }
+    }
+
     private static class BlockCollisionInfo {
         final Tuple3i position;
         BroadphaseNativeType blockShape = BroadphaseNativeType.INVALID_SHAPE_PROXYTYPE;
@@ -82,6 +113,29 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
         }
     }
 
+    private static class BakedCollisionInfo {
+        final BakedVoxelChunk chunk;
+        CollisionAlgorithm algorithm;
+        boolean inRange;
+
+        public BakedCollisionInfo(BakedVoxelChunk chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    private void markBakedChunkInRange(BakedVoxelChunk chunk) {
+        for (int i = 0; i < bakedCollisionInfo.size(); i++) {
+            BakedCollisionInfo info = bakedCollisionInfo.get(i);
+            if (info.chunk == chunk) {
+                info.inRange = true;
+                return;
+            }
+        }
+        BakedCollisionInfo info = new BakedCollisionInfo(chunk);
+        info.inRange = true;
+        bakedCollisionInfo.add(info);
+    }
+
     @Override
     public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
         CollisionObject colObj = isSwapped ? body1 : body0;
@@ -103,6 +157,16 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
         Tuple3i regionMin = new Point3i(IntUtil.floorToInt(aabbMin.x + 0.5f), IntUtil.floorToInt(aabbMin.y + 0.5f), IntUtil.floorToInt(aabbMin.z + 0.5f));
         Tuple3i regionMax = new Point3i(IntUtil.floorToInt(aabbMax.x + 0.5f), IntUtil.floorToInt(aabbMax.y + 0.5f), IntUtil.floorToInt(aabbMax.z + 0.5f));
 
+        if (worldShape.isEmpty(regionMin.x, regionMin.y, regionMin.z, regionMax.x, regionMax.y, regionMax.z)) {
+            // nothing to collide with, start over once the region contains something again
+            clearBlockCollisionInfo();
+            return;
+        }
+
+        // Contacts with voxels inside solid terrain are only of use if the other object is buried, otherwise the
+        // surface voxels will keep it out.
+        boolean skipInterior = !worldShape.isInterior(IntUtil.floorToInt(otherObjPos.x + 0.5f), IntUtil.floorToInt(otherObjPos.y + 0.5f), IntUtil.floorToInt(otherObjPos.z + 0.5f));
+
         Transform orgTrans = new Transform();
         colObj.getWorldTransform(orgTrans);
 
@@ -136,8 +200,23 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
                 }
                 iterator.remove();
             } else {
-                VoxelInfo childInfo = worldShape.getWorld().getCollisionShapeAt(info.position.x, info.position.y, info.position.z);
-                if (childInfo.isBlocking()) {
+                BakedVoxelChunk bakedChunk = worldShape.getBakedChunk(info.position.x, info.position.y, info.position.z);
+                if (bakedChunk != null) {
+                    // handled by the mesh of the chunk
+                    if (info.algorithm != null) {
+                        dispatcher.freeCollisionAlgorithm(info.algorithm);
+                        info.algorithm = null;
+                        info.blockShape = BroadphaseNativeType.INVALID_SHAPE_PROXYTYPE;
+                    }
+                    markBakedChunkInRange(bakedChunk);
+                    continue;
+                }
+                VoxelInfo childInfo = null;
+                VoxelOccupancy occupancy = worldShape.getOccupancy(info.position.x, info.position.y, info.position.z);
+                if (occupancy == VoxelOccupancy.MIXED || (occupancy == VoxelOccupancy.SOLID && !(skipInterior && worldShape.isInterior(info.position.x, info.position.y, info.position.z)))) {
+                    childInfo = worldShape.getWorld().getCollisionShapeAt(info.position.x, info.position.y, info.position.z);
+                }
+                if (childInfo != null && childInfo.isBlocking()) {
                     if (info.algorithm != null && info.blockShape != childInfo.getCollisionShape().getShapeType()) {
                         dispatcher.freeCollisionAlgorithm(info.algorithm);
                         info.algorithm = null;
@@ -149,7 +228,7 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
                     }
                     childMat.set(rot, new Vector3f(info.position.x + childInfo.getCollisionOffset().x, info.position.y + childInfo.getCollisionOffset().y, info.position.z + childInfo.getCollisionOffset().z), 1.0f);
                     newChildWorldTrans.set(childMat);
-                    colObj.setWorldTransform(newChildWorldTrans);
+                    colObj.internalSetTemporaryWorldTransform(newChildWorldTrans);
                     colObj.setInterpolationWorldTransform(newChildWorldTrans);
                     colObj.setUserPointer(childInfo.getUserData());
                     colObj.setFriction(childInfo.getFriction());
@@ -165,11 +244,41 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
             }
         }
 
+        Iterator<BakedCollisionInfo> bakedIterator = bakedCollisionInfo.iterator();
+        while (bakedIterator.hasNext()) {
+            BakedCollisionInfo info = bakedIterator.next();
+            // chunks that left the region, or were updated and so are no longer baked
+            if (!info.inRange) {
+                if (info.algorithm != null) {
+                    dispatcher.freeCollisionAlgorithm(info.algorithm);
+                }
+                bakedIterator.remove();
+                continue;
+            }
+            info.inRange = false;
+            if (info.chunk.getCollisionShape() == null) {
+                continue;
+            }
+            colObj.internalSetTemporaryCollisionShape(info.chunk.getCollisionShape());
+            if (info.algorithm == null) {
+                info.algorithm = dispatcher.findAlgorithm(colObj, otherObj);
+            }
+            newChildWorldTrans.setIdentity();
+            info.chunk.getOrigin(newChildWorldTrans.origin);
+            colObj.internalSetTemporaryWorldTransform(newChildWorldTrans);
+            colObj.setInterpolationWorldTransform(newChildWorldTrans);
+            colObj.setUserPointer(info.chunk);
+            colObj.setFriction(info.chunk.getFriction());
+            colObj.setRestitution(info.chunk.getRestitution());
+
+            info.algorithm.processCollision(colObj, otherObj, dispatchInfo, resultOut);
+        }
+
         lastMin.set(regionMin);
         lastMax.set(regionMax);
 
         colObj.internalSetTemporaryCollisionShape(worldShape);
-        colObj.setWorldTransform(orgTrans);
+        colObj.internalSetTemporaryWorldTransform(orgTrans);
         colObj.setInterpolationWorldTransform(orgTrans);
     }
 
@@ -214,7 +323,7 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
             colObj.getWorldTransform(orgTrans);
 
             childTrans.set(new Matrix4f(rot, blockPos.toVector3f(), 1.0f));
-            colObj.setWorldTransform(childTrans);
+            colObj.internalSetTemporaryWorldTransform(childTrans);
 
             // the contactpoint is still projected back using the original inverted worldtrans
             CollisionShape tmpShape = colObj.getCollisionShape();
@@ -230,7 +339,7 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
 
             // revert back
             colObj.internalSetTemporaryCollisionShape(tmpShape);
-            colObj.setWorldTransform(orgTrans);
+            colObj.internalSetTemporaryWorldTransform(orgTrans);
         }
         PerformanceMonitor.endActivity();
         return hitFraction;        */
@@ -244,12 +353,17 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
                 info.algorithm.getAllContactManifolds(manifoldArray);
             }
         }
+        for (BakedCollisionInfo info : bakedCollisionInfo) {
+            if (info.algorithm != null) {
+                info.algorithm.getAllContactManifolds(manifoldArray);
+            }
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////
 
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<VoxelWorldCollisionAlgorithm> pool = ObjectPool.get(VoxelWorldCollisionAlgorithm.class);
+        private final ObjectPool<VoxelWorldCollisionAlgorithm> pool = new ObjectPool<VoxelWorldCollisionAlgorithm>(VoxelWorldCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
@@ -267,7 +381,7 @@ public class VoxelWorldCollisionAlgorithm extends CollisionAlgorithm {
     ;
 
     public static class SwappedCreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<VoxelWorldCollisionAlgorithm> pool = ObjectPool.get(VoxelWorldCollisionAlgorithm.class);
+        private final ObjectPool<VoxelWorldCollisionAlgorithm> pool = new ObjectPool<VoxelWorldCollisionAlgorithm>(VoxelWorldCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
@@ -38,6 +38,7 @@ import javax.vecmath.Vector3f;
 public class GjkEpaPenetrationDepthSolver extends ConvexPenetrationDepthSolver {
 
     private GjkEpaSolver gjkEpaSolver = new GjkEpaSolver();
+    private final GjkEpaSolver.Results results = new GjkEpaSolver.Results();
 
     public boolean calcPenDepth(SimplexSolverInterface simplexSolver,
                                 ConvexShape pConvexA, ConvexShape pConvexB,
@@ -48,7 +49,6 @@ public class GjkEpaPenetrationDepthSolver extends ConvexPenetrationDepthSolver {
 
         // JAVA NOTE: 2.70b1: update when GjkEpaSolver2 is ported
 
-        GjkEpaSolver.Results results = new GjkEpaSolver.Results();
         if (gjkEpaSolver.collide(pConvexA, transformA,
                 pConvexB, transformB,
                 radialmargin/*,stackAlloc*/, results)) {
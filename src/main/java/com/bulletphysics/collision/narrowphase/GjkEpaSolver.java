@@ -29,8 +29,6 @@ import com.bulletphysics.linearmath.MatrixUtil;
 import com.bulletphysics.linearmath.QuaternionUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.VectorUtil;
-import com.bulletphysics.util.ArrayPool;
-import com.bulletphysics.util.ObjectStackList;
 
 import javax.vecmath.Matrix3f;
 import javax.vecmath.Quat4f;
@@ -49,22 +47,71 @@ Nov.2006
  */
 public class GjkEpaSolver {
 
-    protected final ArrayPool<float[]> floatArrays = ArrayPool.get(float.class);
+    // Per-instance arenas of simplex vertices, hash entries and faces. They are
+    // reset at the start of each query and only grow, so a query doesn't allocate
+    // once the tables are large enough for the deepest expansion seen so far.
+    private Mkv[] mkvs = new Mkv[0];
+    private int numMkvs;
+    private He[] hes = new He[0];
+    private int numHes;
+    private Face[] faces = new Face[0];
+    private int numFaces;
+
+    {
+        ensureMkvs(EPA_maxiterations + 8);
+        ensureHes(GJK_maxiterations + 8);
+        ensureFaces(EPA_maxiterations);
+    }
+
+    protected void resetArenas() {
+        numMkvs = 0;
+        numHes = 0;
+        numFaces = 0;
+    }
+
+    protected Mkv allocMkv() {
+        if (numMkvs == mkvs.length) {
+            ensureMkvs(mkvs.length * 2);
+        }
+        return mkvs[numMkvs++];
+    }
+
+    protected He allocHe() {
+        if (numHes == hes.length) {
+            ensureHes(hes.length * 2);
+        }
+        return hes[numHes++];
+    }
+
+    protected Face allocFace() {
+        if (numFaces == faces.length) {
+            ensureFaces(faces.length * 2);
+        }
+        return faces[numFaces++];
+    }
 
-    protected final ObjectStackList<Mkv> stackMkv = new ObjectStackList<Mkv>(Mkv.class);
-    protected final ObjectStackList<He> stackHe = new ObjectStackList<He>(He.class);
-    protected final ObjectStackList<Face> stackFace = new ObjectStackList<Face>(Face.class);
+    private void ensureMkvs(int capacity) {
+        int old = mkvs.length;
+        mkvs = Arrays.copyOf(mkvs, capacity);
+        for (int i = old; i < capacity; i++) {
+            mkvs[i] = new Mkv();
+        }
+    }
 
-    protected void pushStack() {
-        stackMkv.push();
-        stackHe.push();
-        stackFace.push();
+    private void ensureHes(int capacity) {
+        int old = hes.length;
+        hes = Arrays.copyOf(hes, capacity);
+        for (int i = old; i < capacity; i++) {
+            hes[i] = new He();
+        }
     }
 
-    protected void popStack() {
-        stackMkv.pop();
-        stackHe.pop();
-        stackFace.pop();
+    private void ensureFaces(int capacity) {
+        int old = faces.length;
+        faces = Arrays.copyOf(faces, capacity);
+        for (int i = old; i < capacity; i++) {
+            faces[i] = new Face();
+        }
     }
 
     public enum ResultsStatus {
@@ -130,6 +177,29 @@ public class GjkEpaSolver {
         public float margin;
         public boolean failed;
 
+        private final Vector3f localDir = new Vector3f();
+        private final Vector3f supportA = new Vector3f();
+        private final Vector3f supportB = new Vector3f();
+        private final Vector3f negDir = new Vector3f();
+        private final Vector3f cabo = new Vector3f();
+        private final Vector3f cabc = new Vector3f();
+        private final Vector3f edge0 = new Vector3f();
+        private final Vector3f edge1 = new Vector3f();
+        private final Vector3f crs0 = new Vector3f();
+        private final Vector3f crs1 = new Vector3f();
+        private final Vector3f crs2 = new Vector3f();
+        private final Vector3f crs = new Vector3f();
+        private final Mkv swapTmp = new Mkv();
+        private final Vector3f tmp = new Vector3f();
+        private final Vector3f tmp1 = new Vector3f();
+        private final Vector3f tmp2 = new Vector3f();
+        private final Vector3f tmp3 = new Vector3f();
+        private final Vector3f tmp4 = new Vector3f();
+        private final Vector3f[] axes/*[3]*/ = new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f()};
+        private final Vector3f w = new Vector3f();
+        private final Quat4f tmpQuat = new Quat4f();
+        private final Matrix3f rot = new Matrix3f();
+
         {
             for (int i = 0; i < simplex.length; i++) simplex[i] = new Mkv();
         }
@@ -154,7 +224,7 @@ public class GjkEpaSolver {
                          Matrix3f wrot0, Vector3f pos0, ConvexShape shape0,
                          Matrix3f wrot1, Vector3f pos1, ConvexShape shape1,
                          float pmargin) {
-            pushStack();
+            resetArenas();
             wrotations[0].set(wrot0);
             positions[0].set(pos0);
             shapes[0] = shape0;
@@ -168,7 +238,8 @@ public class GjkEpaSolver {
         }
 
         public void destroy() {
-            popStack();
+            shapes[0] = null;
+            shapes[1] = null;
         }
 
         // vdh: very dummy hash
@@ -178,10 +249,9 @@ public class GjkEpaSolver {
         }
 
         public Vector3f LocalSupport(Vector3f d, /*unsigned*/ int i, Vector3f out) {
-            Vector3f tmp = new Vector3f();
-            MatrixUtil.transposeTransform(tmp, d, wrotations[i]);
+            MatrixUtil.transposeTransform(localDir, d, wrotations[i]);
 
-            shapes[i].localGetSupportingVertex(tmp, out);
+            shapes[i].localGetSupportingVertex(localDir, out);
             wrotations[i].transform(out);
             out.add(positions[i]);
 
@@ -191,14 +261,12 @@ public class GjkEpaSolver {
         public void Support(Vector3f d, Mkv v) {
             v.r.set(d);
 
-            Vector3f tmp1 = LocalSupport(d, 0, new Vector3f());
+            LocalSupport(d, 0, supportA);
 
-            Vector3f tmp = new Vector3f();
-            tmp.set(d);
-            tmp.negate();
-            Vector3f tmp2 = LocalSupport(tmp, 1, new Vector3f());
+            negDir.negate(d);
+            LocalSupport(negDir, 1, supportB);
 
-            v.w.sub(tmp1, tmp2);
+            v.w.sub(supportA, supportB);
             v.w.scaleAdd(margin, d, v.w);
         }
 
@@ -215,7 +283,7 @@ public class GjkEpaSolver {
             }
             //e = (He*)sa->allocate(sizeof(He));
             //e = new He();
-            e = stackHe.get();
+            e = allocHe();
             e.v.set(ray);
             e.n = table[h];
             table[h] = e;
@@ -225,7 +293,6 @@ public class GjkEpaSolver {
 
         public boolean SolveSimplex2(Vector3f ao, Vector3f ab) {
             if (ab.dot(ao) >= 0) {
-                Vector3f cabo = new Vector3f();
                 cabo.cross(ab, ao);
                 if (cabo.lengthSquared() > GJK_sqinsimplex_eps) {
                     ray.cross(cabo, ab);
@@ -241,26 +308,22 @@ public class GjkEpaSolver {
         }
 
         public boolean SolveSimplex3(Vector3f ao, Vector3f ab, Vector3f ac) {
-            Vector3f tmp = new Vector3f();
-            tmp.cross(ab, ac);
-            return (SolveSimplex3a(ao, ab, ac, tmp));
+            cabc.cross(ab, ac);
+            return (SolveSimplex3a(ao, ab, ac, cabc));
         }
 
         public boolean SolveSimplex3a(Vector3f ao, Vector3f ab, Vector3f ac, Vector3f cabc) {
             // TODO: optimize
 
-            Vector3f tmp = new Vector3f();
-            tmp.cross(cabc, ab);
-
-            Vector3f tmp2 = new Vector3f();
-            tmp2.cross(cabc, ac);
+            edge0.cross(cabc, ab);
+            edge1.cross(cabc, ac);
 
-            if (tmp.dot(ao) < -GJK_insimplex_eps) {
+            if (edge0.dot(ao) < -GJK_insimplex_eps) {
                 order = 1;
                 simplex[0].set(simplex[1]);
                 simplex[1].set(simplex[2]);
                 return SolveSimplex2(ao, ab);
-            } else if (tmp2.dot(ao) > +GJK_insimplex_eps) {
+            } else if (edge1.dot(ao) > +GJK_insimplex_eps) {
                 order = 1;
                 simplex[1].set(simplex[2]);
                 return SolveSimplex2(ao, ac);
@@ -272,7 +335,6 @@ public class GjkEpaSolver {
                     } else {
                         ray.negate(cabc);
 
-                        Mkv swapTmp = new Mkv();
                         swapTmp.set(simplex[0]);
                         simplex[0].set(simplex[1]);
                         simplex[1].set(swapTmp);
@@ -287,31 +349,24 @@ public class GjkEpaSolver {
         public boolean SolveSimplex4(Vector3f ao, Vector3f ab, Vector3f ac, Vector3f ad) {
             // TODO: optimize
 
-            Vector3f crs = new Vector3f();
-
-            Vector3f tmp = new Vector3f();
-            tmp.cross(ab, ac);
-
-            Vector3f tmp2 = new Vector3f();
-            tmp2.cross(ac, ad);
+            crs0.cross(ab, ac);
+            crs1.cross(ac, ad);
+            crs2.cross(ad, ab);
 
-            Vector3f tmp3 = new Vector3f();
-            tmp3.cross(ad, ab);
-
-            if (tmp.dot(ao) > GJK_insimplex_eps) {
-                crs.set(tmp);
+            if (crs0.dot(ao) > GJK_insimplex_eps) {
+                crs.set(crs0);
                 order = 2;
                 simplex[0].set(simplex[1]);
                 simplex[1].set(simplex[2]);
                 simplex[2].set(simplex[3]);
                 return SolveSimplex3a(ao, ab, ac, crs);
-            } else if (tmp2.dot(ao) > GJK_insimplex_eps) {
-                crs.set(tmp2);
+            } else if (crs1.dot(ao) > GJK_insimplex_eps) {
+                crs.set(crs1);
                 order = 2;
                 simplex[2].set(simplex[3]);
                 return SolveSimplex3a(ao, ac, ad, crs);
-            } else if (tmp3.dot(ao) > GJK_insimplex_eps) {
-                crs.set(tmp3);
+            } else if (crs2.dot(ao) > GJK_insimplex_eps) {
+                crs.set(crs2);
                 order = 2;
                 simplex[1].set(simplex[0]);
                 simplex[0].set(simplex[2]);
@@ -323,17 +378,11 @@ public class GjkEpaSolver {
         }
 
         public boolean SearchOrigin() {
-            Vector3f tmp = new Vector3f();
             tmp.set(1f, 0f, 0f);
             return SearchOrigin(tmp);
         }
 
         public boolean SearchOrigin(Vector3f initray) {
-            Vector3f tmp1 = new Vector3f();
-            Vector3f tmp2 = new Vector3f();
-            Vector3f tmp3 = new Vector3f();
-            Vector3f tmp4 = new Vector3f();
-
             iterations = 0;
             order = -1;
             failed = false;
@@ -384,20 +433,16 @@ public class GjkEpaSolver {
         }
 
         public boolean EncloseOrigin() {
-            Vector3f tmp = new Vector3f();
-            Vector3f tmp1 = new Vector3f();
-            Vector3f tmp2 = new Vector3f();
-
             switch (order) {
                 // Point
                 case 0:
                     break;
                 // Line
                 case 1: {
-                    Vector3f ab = new Vector3f();
+                    Vector3f ab = tmp1;
                     ab.sub(simplex[1].w, simplex[0].w);
 
-                    Vector3f[] b = new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f()};
+                    Vector3f[] b = axes;
                     b[0].set(1f, 0f, 0f);
                     b[1].set(0f, 1f, 0f);
                     b[2].set(0f, 0f, 1f);
@@ -406,17 +451,17 @@ public class GjkEpaSolver {
                     b[1].cross(ab, b[1]);
                     b[2].cross(ab, b[2]);
 
-                    float m[] = new float[]{b[0].lengthSquared(), b[1].lengthSquared(), b[2].lengthSquared()};
+                    float m0 = b[0].lengthSquared();
+                    float m1 = b[1].lengthSquared();
+                    float m2 = b[2].lengthSquared();
 
-                    Quat4f tmpQuat = new Quat4f();
                     tmp.normalize(ab);
                     QuaternionUtil.setRotation(tmpQuat, tmp, cst2Pi / 3f);
 
-                    Matrix3f r = new Matrix3f();
+                    Matrix3f r = rot;
                     MatrixUtil.setRotation(r, tmpQuat);
 
-                    Vector3f w = new Vector3f();
-                    w.set(b[m[0] > m[1] ? m[0] > m[2] ? 0 : 2 : m[1] > m[2] ? 1 : 2]);
+                    w.set(b[m0 > m1 ? m0 > m2 ? 0 : 2 : m1 > m2 ? 1 : 2]);
 
                     tmp.normalize(w);
                     Support(tmp, simplex[4]);
@@ -434,7 +479,7 @@ public class GjkEpaSolver {
                 case 2: {
                     tmp1.sub(simplex[1].w, simplex[0].w);
                     tmp2.sub(simplex[2].w, simplex[0].w);
-                    Vector3f n = new Vector3f();
+                    Vector3f n = tmp3;
                     n.cross(tmp1, tmp2);
                     n.normalize();
 
@@ -492,6 +537,18 @@ public class GjkEpaSolver {
         public float depth;
         public boolean failed;
 
+        private final Mkv[] basemkv = new Mkv[5];
+        private final Face[] basefaces = new Face[6];
+        private final Face[] cf = new Face[1];
+        private final Face[] ff = new Face[1];
+        private final Vector3f o = new Vector3f();
+        private final Vector3f nrm = new Vector3f();
+        private final Vector3f coords = new Vector3f();
+        private final Vector3f tmp = new Vector3f();
+        private final Vector3f tmp1 = new Vector3f();
+        private final Vector3f tmp2 = new Vector3f();
+        private final Vector3f tmp3 = new Vector3f();
+
         {
             for (int i = 0; i < features.length; i++) {
                 for (int j = 0; j < features[i].length; j++) {
@@ -506,37 +563,28 @@ public class GjkEpaSolver {
         }
 
         public Vector3f GetCoordinates(Face face, Vector3f out) {
-            Vector3f tmp = new Vector3f();
-            Vector3f tmp1 = new Vector3f();
-            Vector3f tmp2 = new Vector3f();
-
-            Vector3f o = new Vector3f();
             o.scale(-face.d, face.n);
 
-            float[] a = floatArrays.getFixed(3);
-
             tmp1.sub(face.v[0].w, o);
             tmp2.sub(face.v[1].w, o);
             tmp.cross(tmp1, tmp2);
-            a[0] = tmp.length();
+            float a0 = tmp.length();
 
             tmp1.sub(face.v[1].w, o);
             tmp2.sub(face.v[2].w, o);
             tmp.cross(tmp1, tmp2);
-            a[1] = tmp.length();
+            float a1 = tmp.length();
 
             tmp1.sub(face.v[2].w, o);
             tmp2.sub(face.v[0].w, o);
             tmp.cross(tmp1, tmp2);
-            a[2] = tmp.length();
+            float a2 = tmp.length();
 
-            float sm = a[0] + a[1] + a[2];
+            float sm = a0 + a1 + a2;
 
-            out.set(a[1], a[2], a[0]);
+            out.set(a1, a2, a0);
             out.scale(1f / (sm > 0f ? sm : 1f));
 
-            floatArrays.release(a);
-
             return out;
         }
 
@@ -557,11 +605,6 @@ public class GjkEpaSolver {
         }
 
         public boolean Set(Face f, Mkv a, Mkv b, Mkv c) {
-            Vector3f tmp1 = new Vector3f();
-            Vector3f tmp2 = new Vector3f();
-            Vector3f tmp3 = new Vector3f();
-
-            Vector3f nrm = new Vector3f();
             tmp1.sub(b.w, a.w);
             tmp2.sub(c.w, a.w);
             nrm.cross(tmp1, tmp2);
@@ -587,7 +630,7 @@ public class GjkEpaSolver {
 
         public Face NewFace(Mkv a, Mkv b, Mkv c) {
             //Face pf = new Face();
-            Face pf = stackFace.get();
+            Face pf = allocFace();
             if (Set(pf, a, b, c)) {
                 if (root != null) {
                     root.prev = pf;
@@ -629,7 +672,7 @@ public class GjkEpaSolver {
 
         public Mkv Support(Vector3f w) {
             //Mkv v = new Mkv();
-            Mkv v = stackMkv.get();
+            Mkv v = allocMkv();
             gjk.Support(w, v);
             return v;
         }
@@ -664,144 +707,131 @@ public class GjkEpaSolver {
         }
 
         public float EvaluatePD(float accuracy) {
-            pushStack();
-            try {
-                Vector3f tmp = new Vector3f();
-
-                //btBlock* sablock = sa->beginBlock();
-                Face bestface = null;
-                int markid = 1;
-                depth = -cstInf;
-                normal.set(0f, 0f, 0f);
-                root = null;
-                nfaces = 0;
-                iterations = 0;
-                failed = false;
-                /* Prepare hull		*/
-                if (gjk.EncloseOrigin()) {
-                    //const U* pfidx = 0;
-                    int[][] pfidx_ptr = null;
-                    int pfidx_index = 0;
-
-                    int nfidx = 0;
-                    //const U* peidx = 0;
-                    int[][] peidx_ptr = null;
-                    int peidx_index = 0;
-
-                    int neidx = 0;
-                    Mkv[] basemkv = new Mkv[5];
-                    Face[] basefaces = new Face[6];
-                    switch (gjk.order) {
-                        // Tetrahedron
-                        case 3: {
-                            //pfidx=(const U*)fidx;
-                            pfidx_ptr = tetrahedron_fidx;
-                            pfidx_index = 0;
-
-                            nfidx = 4;
-
-                            //peidx=(const U*)eidx;
-                            peidx_ptr = tetrahedron_eidx;
-                            peidx_index = 0;
-
-                            neidx = 6;
-                        }
-                        break;
-                        // Hexahedron
-                        case 4: {
-                            //pfidx=(const U*)fidx;
-                            pfidx_ptr = hexahedron_fidx;
-                            pfidx_index = 0;
+            //btBlock* sablock = sa->beginBlock();
+            Face bestface = null;
+            int markid = 1;
+            depth = -cstInf;
+            normal.set(0f, 0f, 0f);
+            root = null;
+            nfaces = 0;
+            iterations = 0;
+            failed = false;
+            /* Prepare hull		*/
+            if (gjk.EncloseOrigin()) {
+                //const U* pfidx = 0;
+                int[][] pfidx_ptr = null;
+                int pfidx_index = 0;
+
+                int nfidx = 0;
+                //const U* peidx = 0;
+                int[][] peidx_ptr = null;
+                int peidx_index = 0;
+
+                int neidx = 0;
+                switch (gjk.order) {
+                    // Tetrahedron
+                    case 3: {
+                        //pfidx=(const U*)fidx;
+                        pfidx_ptr = tetrahedron_fidx;
+                        pfidx_index = 0;
+
+                        nfidx = 4;
+
+                        //peidx=(const U*)eidx;
+                        peidx_ptr = tetrahedron_eidx;
+                        peidx_index = 0;
+
+                        neidx = 6;
+                    }
+                    break;
+                    // Hexahedron
+                    case 4: {
+                        //pfidx=(const U*)fidx;
+                        pfidx_ptr = hexahedron_fidx;
+                        pfidx_index = 0;
 
-                            nfidx = 6;
+                        nfidx = 6;
 
-                            //peidx=(const U*)eidx;
-                            peidx_ptr = hexahedron_eidx;
-                            peidx_index = 0;
+                        //peidx=(const U*)eidx;
+                        peidx_ptr = hexahedron_eidx;
+                        peidx_index = 0;
 
-                            neidx = 9;
-                        }
-                        break;
+                        neidx = 9;
                     }
-                    int i;
+                    break;
+                }
+                int i;
 
-                    for (i = 0; i <= gjk.order; ++i) {
-                        basemkv[i] = new Mkv();
-                        basemkv[i].set(gjk.simplex[i]);
-                    }
-                    for (i = 0; i < nfidx; ++i, pfidx_index++) {
-                        basefaces[i] = NewFace(basemkv[pfidx_ptr[pfidx_index][0]], basemkv[pfidx_ptr[pfidx_index][1]], basemkv[pfidx_ptr[pfidx_index][2]]);
-                    }
-                    for (i = 0; i < neidx; ++i, peidx_index++) {
-                        Link(basefaces[peidx_ptr[peidx_index][0]], peidx_ptr[peidx_index][1], basefaces[peidx_ptr[peidx_index][2]], peidx_ptr[peidx_index][3]);
-                    }
+                for (i = 0; i <= gjk.order; ++i) {
+                    basemkv[i] = allocMkv();
+                    basemkv[i].set(gjk.simplex[i]);
                 }
-                if (0 == nfaces) {
-                    //sa->endBlock(sablock);
-                    return (depth);
+                for (i = 0; i < nfidx; ++i, pfidx_index++) {
+                    basefaces[i] = NewFace(basemkv[pfidx_ptr[pfidx_index][0]], basemkv[pfidx_ptr[pfidx_index][1]], basemkv[pfidx_ptr[pfidx_index][2]]);
                 }
-                /* Expand hull		*/
-                for (; iterations < EPA_maxiterations; ++iterations) {
-                    Face bf = FindBest();
-                    if (bf != null) {
-                        tmp.negate(bf.n);
-                        Mkv w = Support(tmp);
-                        float d = bf.n.dot(w.w) + bf.d;
-                        bestface = bf;
-                        if (d < -accuracy) {
-                            Face[] cf = new Face[]{null};
-                            Face[] ff = new Face[]{null};
-                            int nf = 0;
-                            Detach(bf);
-                            bf.mark = ++markid;
-                            for (int i = 0; i < 3; ++i) {
-                                nf += BuildHorizon(markid, w, bf.f[i], bf.e[i], cf, ff);
-                            }
-                            if (nf <= 2) {
-                                break;
-                            }
-                            Link(cf[0], 1, ff[0], 2);
-                        } else {
+                for (i = 0; i < neidx; ++i, peidx_index++) {
+                    Link(basefaces[peidx_ptr[peidx_index][0]], peidx_ptr[peidx_index][1], basefaces[peidx_ptr[peidx_index][2]], peidx_ptr[peidx_index][3]);
+                }
+            }
+            if (0 == nfaces) {
+                //sa->endBlock(sablock);
+                return (depth);
+            }
+            /* Expand hull		*/
+            for (; iterations < EPA_maxiterations; ++iterations) {
+                Face bf = FindBest();
+                if (bf != null) {
+                    tmp.negate(bf.n);
+                    Mkv w = Support(tmp);
+                    float d = bf.n.dot(w.w) + bf.d;
+                    bestface = bf;
+                    if (d < -accuracy) {
+                        cf[0] = null;
+                        ff[0] = null;
+                        int nf = 0;
+                        Detach(bf);
+                        bf.mark = ++markid;
+                        for (int i = 0; i < 3; ++i) {
+                            nf += BuildHorizon(markid, w, bf.f[i], bf.e[i], cf, ff);
+                        }
+                        if (nf <= 2) {
                             break;
                         }
+                        Link(cf[0], 1, ff[0], 2);
                     } else {
                         break;
                     }
+                } else {
+                    break;
                 }
+            }
 				/* Extract contact	*/
-                if (bestface != null) {
-                    Vector3f b = GetCoordinates(bestface, new Vector3f());
-                    normal.set(bestface.n);
-                    depth = Math.max(0, bestface.d);
-                    for (int i = 0; i < 2; ++i) {
-                        float s = i != 0 ? -1f : 1f;
-                        for (int j = 0; j < 3; ++j) {
-                            tmp.scale(s, bestface.v[j].r);
-                            gjk.LocalSupport(tmp, i, features[i][j]);
-                        }
+            if (bestface != null) {
+                Vector3f b = GetCoordinates(bestface, coords);
+                normal.set(bestface.n);
+                depth = Math.max(0, bestface.d);
+                for (int i = 0; i < 2; ++i) {
+                    float s = i != 0 ? -1f : 1f;
+                    for (int j = 0; j < 3; ++j) {
+                        tmp.scale(s, bestface.v[j].r);
+                        gjk.LocalSupport(tmp, i, features[i][j]);
                     }
+                }
 
-                    Vector3f tmp1 = new Vector3f();
-                    Vector3f tmp2 = new Vector3f();
-                    Vector3f tmp3 = new Vector3f();
-
-                    tmp1.scale(b.x, features[0][0]);
-                    tmp2.scale(b.y, features[0][1]);
-                    tmp3.scale(b.z, features[0][2]);
-                    VectorUtil.add(nearest[0], tmp1, tmp2, tmp3);
+                tmp1.scale(b.x, features[0][0]);
+                tmp2.scale(b.y, features[0][1]);
+                tmp3.scale(b.z, features[0][2]);
+                VectorUtil.add(nearest[0], tmp1, tmp2, tmp3);
 
-                    tmp1.scale(b.x, features[1][0]);
-                    tmp2.scale(b.y, features[1][1]);
-                    tmp3.scale(b.z, features[1][2]);
-                    VectorUtil.add(nearest[1], tmp1, tmp2, tmp3);
-                } else {
-                    failed = true;
-                }
-                //sa->endBlock(sablock);
-                return (depth);
-            } finally {
-                popStack();
+                tmp1.scale(b.x, features[1][0]);
+                tmp2.scale(b.y, features[1][1]);
+                tmp3.scale(b.z, features[1][2]);
+                VectorUtil.add(nearest[1], tmp1, tmp2, tmp3);
+            } else {
+                failed = true;
             }
+            //sa->endBlock(sablock);
+            return (depth);
         }
 
     }
@@ -809,6 +839,7 @@ public class GjkEpaSolver {
     ////////////////////////////////////////////////////////////////////////////
 
     private GJK gjk = new GJK();
+    private EPA epa = new EPA(gjk);
 
     public boolean collide(ConvexShape shape0, Transform wtrs0,
                            ConvexShape shape1, Transform wtrs1,
@@ -834,7 +865,6 @@ public class GjkEpaSolver {
             results.gjk_iterations = gjk.iterations + 1;
             if (collide) {
 				/* Then EPA for penetration depth	*/
-                EPA epa = new EPA(gjk);
                 float pd = epa.EvaluatePD();
                 results.epa_iterations = epa.iterations + 1;
                 if (pd > 0) {
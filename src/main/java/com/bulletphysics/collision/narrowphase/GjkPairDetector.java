@@ -25,6 +25,7 @@ package com.bulletphysics.collision.narrowphase;
 
 import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.BulletStats;
+import com.bulletphysics.collision.shapes.ConvexHullShape;
 import com.bulletphysics.collision.shapes.ConvexShape;
 import com.bulletphysics.linearmath.IDebugDraw;
 import com.bulletphysics.linearmath.MatrixUtil;
@@ -45,11 +46,15 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
     private static final float REL_ERROR2 = 1.0e-6f;
 
     private final Vector3f cachedSeparatingAxis = new Vector3f();
+    private float cachedSeparatingDistance;
     private ConvexPenetrationDepthSolver penetrationDepthSolver;
     private SimplexSolverInterface simplexSolver;
     private ConvexShape minkowskiA;
     private ConvexShape minkowskiB;
     private boolean ignoreMargin;
+    // previous supporting vertices of convex hulls, used as warm start for the search
+    private int supportHintA = -1;
+    private int supportHintB = -1;
 
     // some debugging to fix degeneracy problems
     public int lastUsedMethod;
@@ -59,6 +64,7 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
 
     public void init(ConvexShape objectA, ConvexShape objectB, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver penetrationDepthSolver) {
         this.cachedSeparatingAxis.set(0f, 0f, 1f);
+        this.cachedSeparatingDistance = 0f;
         this.ignoreMargin = false;
         this.lastUsedMethod = -1;
         this.catchDegeneracies = 1;
@@ -67,6 +73,8 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
         this.simplexSolver = simplexSolver;
         this.minkowskiA = objectA;
         this.minkowskiB = objectB;
+        this.supportHintA = -1;
+        this.supportHintB = -1;
     }
 
     public void getClosestPoints(ClosestPointInput input, Result output, IDebugDraw debugDraw, boolean swapResults) {
@@ -98,6 +106,7 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
         curIter = 0;
         int gGjkMaxIter = 1000; // this is to catch invalid input, perhaps check for #NaN?
         cachedSeparatingAxis.set(0f, 1f, 0f);
+        cachedSeparatingDistance = 0f;
 
         boolean isValid = false;
         boolean checkSimplex = false;
@@ -135,8 +144,16 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
                 seperatingAxisInB.set(cachedSeparatingAxis);
                 MatrixUtil.transposeTransform(seperatingAxisInB, seperatingAxisInB, input.transformB.basis);
 
-                minkowskiA.localGetSupportingVertexWithoutMargin(seperatingAxisInA, pInA);
-                minkowskiB.localGetSupportingVertexWithoutMargin(seperatingAxisInB, qInB);
+                if (minkowskiA instanceof ConvexHullShape) {
+                    supportHintA = ((ConvexHullShape) minkowskiA).localGetSupportingVertexWithoutMargin(seperatingAxisInA, pInA, supportHintA);
+                } else {
+                    minkowskiA.localGetSupportingVertexWithoutMargin(seperatingAxisInA, pInA);
+                }
+                if (minkowskiB instanceof ConvexHullShape) {
+                    supportHintB = ((ConvexHullShape) minkowskiB).localGetSupportingVertexWithoutMargin(seperatingAxisInB, qInB, supportHintB);
+                } else {
+                    minkowskiB.localGetSupportingVertexWithoutMargin(seperatingAxisInB, qInB);
+                }
 
                 pWorld.set(pInA);
                 localTransA.transform(pWorld);
@@ -150,6 +167,8 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
 
                 // potential exit, they don't overlap
                 if ((delta > 0f) && (delta * delta > squaredDistance * input.maximumDistanceSquared)) {
+                    // the separating axis gives a lower bound of the distance
+                    cachedSeparatingDistance = delta / (float) Math.sqrt(squaredDistance) - margin;
                     checkPenetration = false;
                     break;
                 }
@@ -308,6 +327,8 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
         }
 
         if (isValid) {
+            cachedSeparatingDistance = distance;
+
             //#ifdef __SPU__
             //		//spu_printf("distance\n");
             //#endif //__CELLOS_LV2__
@@ -333,6 +354,22 @@ public class GjkPairDetector extends DiscreteCollisionDetectorInterface {
         cachedSeparatingAxis.set(seperatingAxis);
     }
 
+    /**
+     * Returns separating axis of the last query, pointing from B to A (not normalized).
+     */
+    public Vector3f getCachedSeparatingAxis(Vector3f out) {
+        out.set(cachedSeparatingAxis);
+        return out;
+    }
+
+    /**
+     * Returns distance between the objects (including margins) along the separating axis
+     * found by the last query, zero or negative when they were touching or penetrating.
+     */
+    public float getCachedSeparatingDistance() {
+        return cachedSeparatingDistance;
+    }
+
     public void setPenetrationDepthSolver(ConvexPenetrationDepthSolver penetrationDepthSolver) {
         this.penetrationDepthSolver = penetrationDepthSolver;
     }
@@ -67,6 +67,27 @@ public class BoxShape extends PolyhedralConvexShape {
         return BroadphaseNativeType.BOX_SHAPE_PROXYTYPE;
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        Vector3f halfExtents = getHalfExtentsWithoutMargin(new Vector3f());
+        boxSupport(halfExtents.x, halfExtents.y, halfExtents.z, vectors, supportVerticesOut, numVectors);
+    }
+
+    @Override
+    public void batchedUnitVectorGetSupportingVertex(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        Vector3f halfExtents = getHalfExtentsWithoutMargin(new Vector3f());
+        float margin = getMargin();
+        boxSupport(halfExtents.x + margin, halfExtents.y + margin, halfExtents.z + margin, vectors, supportVerticesOut, numVectors);
+    }
+
+    private static void boxSupport(float hx, float hy, float hz, float[] vectors, float[] supportVerticesOut, int numVectors) {
+        for (int j = 0; j < numVectors * 3; j += 3) {
+            supportVerticesOut[j] = vectors[j] >= 0f ? hx : -hx;
+            supportVerticesOut[j + 1] = vectors[j + 1] >= 0f ? hy : -hy;
+            supportVerticesOut[j + 2] = vectors[j + 2] >= 0f ? hz : -hz;
+        }
+    }
+
     @Override
     public Vector3f localGetSupportingVertex(Vector3f vec, Vector3f out) {
         Vector3f halfExtents = getHalfExtentsWithoutMargin(out);
@@ -137,7 +158,7 @@ public class BoxShape extends PolyhedralConvexShape {
 
     @Override
     public void getAabb(Transform t, Vector3f aabbMin, Vector3f aabbMax) {
-        AabbUtil2.transformAabb(getHalfExtentsWithoutMargin(new Vector3f()), getMargin(), t, aabbMin, aabbMax);
+        AabbUtil2.transformAabb(implicitShapeDimensions, getMargin(), t, aabbMin, aabbMax);
     }
 
     @Override
@@ -182,6 +182,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 
         VectorUtil.setMin(localAabbMin, aabbMin);
         VectorUtil.setMax(localAabbMax, aabbMax);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -25,11 +25,9 @@ package com.bulletphysics.collision.shapes;
 
 import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
-import com.bulletphysics.linearmath.MatrixUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.VectorUtil;
 
-import javax.vecmath.Matrix3f;
 import javax.vecmath.Vector3f;
 
 /**
@@ -159,9 +157,11 @@ public class CapsuleShape extends ConvexInternalShape {
 
     @Override
     public void getAabb(Transform t, Vector3f aabbMin, Vector3f aabbMax) {
-        Vector3f tmp = new Vector3f();
+        getWorldAabb(t, aabbMin, aabbMax);
+    }
 
-        Vector3f halfExtents = new Vector3f();
+    @Override
+    protected void calculateLocalBounds(Vector3f center, Vector3f halfExtents) {
         halfExtents.set(getRadius(), getRadius(), getRadius());
         VectorUtil.setCoord(halfExtents, upAxis, getRadius() + getHalfHeight());
 
@@ -169,22 +169,7 @@ public class CapsuleShape extends ConvexInternalShape {
         halfExtents.y += getMargin();
         halfExtents.z += getMargin();
 
-        Matrix3f abs_b = new Matrix3f();
-        abs_b.set(t.basis);
-        MatrixUtil.absolute(abs_b);
-
-        Vector3f center = t.origin;
-        Vector3f extent = new Vector3f();
-
-        abs_b.getRow(0, tmp);
-        extent.x = tmp.dot(halfExtents);
-        abs_b.getRow(1, tmp);
-        extent.y = tmp.dot(halfExtents);
-        abs_b.getRow(2, tmp);
-        extent.z = tmp.dot(halfExtents);
-
-        aabbMin.sub(center, extent);
-        aabbMax.add(center, extent);
+        center.set(0f, 0f, 0f);
     }
 
     @Override
@@ -25,6 +25,7 @@ package com.bulletphysics.collision.shapes;
 
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
 import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.linearmath.AabbUtil2;
 import com.bulletphysics.linearmath.Transform;
 
 import javax.vecmath.Vector3f;
@@ -41,9 +42,100 @@ public abstract class CollisionShape {
 
     protected Object userPointer;
 
+    // cached local bounds, see getLocalBounds:
+    private final Vector3f localBoundsCenter = new Vector3f();
+    private final Vector3f localBoundsHalfExtents = new Vector3f();
+    private float localBoundingRadius;
+    private volatile boolean localBoundsValid = false;
+    private int localBoundsVersion;
+
     ///getAabb returns the axis aligned bounding box in the coordinate frame of the given transform t.
     public abstract void getAabb(Transform t, Vector3f aabbMin, Vector3f aabbMax);
 
+    /**
+     * Returns the bounds of the shape in its local frame as center and half extents
+     * (including the margin). The bounds are calculated on first use and cached
+     * until {@link #invalidateLocalBounds} is called.<p>
+     * <p/>
+     * The built-in shapes invalidate the bounds in setLocalScaling, setMargin and
+     * in methods that modify their geometry. Shapes wrapping other shapes are not
+     * notified when the wrapped shape changes.
+     */
+    public void getLocalBounds(Vector3f center, Vector3f halfExtents) {
+        validateLocalBounds();
+        center.set(localBoundsCenter);
+        halfExtents.set(localBoundsHalfExtents);
+    }
+
+    /**
+     * Returns radius of the sphere centered at the local origin that encloses the
+     * local bounds. The value is cached, see {@link #getLocalBounds}.
+     */
+    public float getLocalBoundingRadius() {
+        validateLocalBounds();
+        return localBoundingRadius;
+    }
+
+    /**
+     * Invalidates cached local bounds, must be called when the geometry of the shape
+     * is modified in place.
+     */
+    public void invalidateLocalBounds() {
+        localBoundsVersion++;
+        localBoundsValid = false;
+    }
+
+    /**
+     * Returns number that changes each time the local bounds are invalidated. Allows
+     * users of data computed from the shape to detect that it was modified in place.
+     */
+    public int getLocalBoundsVersion() {
+        return localBoundsVersion;
+    }
+
+    /**
+     * Calculates bounds of the shape in its local frame (including the margin).
+     * Default implementation uses {@link #getAabb} with identity transform, shapes that
+     * compute their AABB by {@link #getWorldAabb} must override it.
+     */
+    protected void calculateLocalBounds(Vector3f center, Vector3f halfExtents) {
+        Transform ident = new Transform();
+        ident.setIdentity();
+        Vector3f aabbMin = new Vector3f(), aabbMax = new Vector3f();
+        getAabb(ident, aabbMin, aabbMax);
+
+        halfExtents.sub(aabbMax, aabbMin);
+        halfExtents.scale(0.5f);
+
+        center.add(aabbMin, aabbMax);
+        center.scale(0.5f);
+    }
+
+    /**
+     * Calculates world AABB from the cached local bounds by the absolute basis, without
+     * allocating any temporaries.
+     */
+    protected final void getWorldAabb(Transform t, Vector3f aabbMin, Vector3f aabbMax) {
+        validateLocalBounds();
+        AabbUtil2.transformCenterExtents(localBoundsCenter, localBoundsHalfExtents, t, aabbMin, aabbMax);
+    }
+
+    private void validateLocalBounds() {
+        if (localBoundsValid) {
+            return;
+        }
+
+        // concurrent callers may calculate it at the same time, only final values
+        // are stored and the volatile write publishes them:
+        Vector3f center = new Vector3f(), halfExtents = new Vector3f();
+        calculateLocalBounds(center, halfExtents);
+
+        localBoundsCenter.set(center);
+        localBoundsHalfExtents.set(halfExtents);
+        localBoundingRadius = halfExtents.length() + center.length();
+        localBoundsValid = true;
+    }
+
     public void getBoundingSphere(Vector3f center, float[] radius) {
         Vector3f tmp = new Vector3f();
 
@@ -62,11 +154,7 @@ public abstract class CollisionShape {
 
     ///getAngularMotionDisc returns the maximus radius needed for Conservative Advancement to handle time-of-impact with rotations.
     public float getAngularMotionDisc() {
-        Vector3f center = new Vector3f();
-        float[] disc = new float[1]; // TODO: stack
-        getBoundingSphere(center, disc);
-        disc[0] += center.length();
-        return disc[0];
+        return getLocalBoundingRadius();
     }
 
     ///calculateTemporalAabb calculates the enclosing aabb for the moving object over interval [0..timeStep)
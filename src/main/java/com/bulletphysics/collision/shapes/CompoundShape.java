@@ -24,6 +24,8 @@
 package com.bulletphysics.collision.shapes;
 
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.broadphase.Dbvt;
+import com.bulletphysics.collision.broadphase.DbvtAabbMm;
 import com.bulletphysics.linearmath.MatrixUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.VectorUtil;
@@ -47,6 +49,7 @@ public class CompoundShape extends CollisionShape {
     private final Vector3f localAabbMax = new Vector3f(-1e30f, -1e30f, -1e30f);
 
     private OptimizedBvh aabbTree = null;
+    private final Dbvt dynamicAabbTree = new Dbvt();
 
     private float collisionMargin = 0f;
     protected final Vector3f localScaling = new Vector3f(1f, 1f, 1f);
@@ -60,12 +63,13 @@ public class CompoundShape extends CollisionShape {
         child.childShapeType = shape.getShapeType();
         child.childMargin = shape.getMargin();
 
-        children.add(child);
-
         // extend the local aabbMin/aabbMax
         Vector3f _localAabbMin = new Vector3f(), _localAabbMax = new Vector3f();
         shape.getAabb(localTransform, _localAabbMin, _localAabbMax);
 
+        child.node = dynamicAabbTree.insert(DbvtAabbMm.FromMM(_localAabbMin, _localAabbMax, new DbvtAabbMm()), children.size());
+        children.add(child);
+
         // JAVA NOTE: rewritten
 //		for (int i=0;i<3;i++)
 //		{
@@ -80,6 +84,7 @@ public class CompoundShape extends CollisionShape {
 //		}
         VectorUtil.setMin(this.localAabbMin, _localAabbMin);
         VectorUtil.setMax(this.localAabbMax, _localAabbMax);
+        invalidateLocalBounds();
     }
 
     /**
@@ -127,39 +132,23 @@ public class CompoundShape extends CollisionShape {
      */
     @Override
     public void getAabb(Transform trans, Vector3f aabbMin, Vector3f aabbMax) {
-        Vector3f localHalfExtents = new Vector3f();
-        localHalfExtents.sub(localAabbMax, localAabbMin);
-        localHalfExtents.scale(0.5f);
-        localHalfExtents.x += getMargin();
-        localHalfExtents.y += getMargin();
-        localHalfExtents.z += getMargin();
-
-        Vector3f localCenter = new Vector3f();
-        localCenter.add(localAabbMax, localAabbMin);
-        localCenter.scale(0.5f);
-
-        Matrix3f abs_b = new Matrix3f(trans.basis);
-        MatrixUtil.absolute(abs_b);
-
-        Vector3f center = new Vector3f(localCenter);
-        trans.transform(center);
-
-        Vector3f tmp = new Vector3f();
-
-        Vector3f extent = new Vector3f();
-        abs_b.getRow(0, tmp);
-        extent.x = tmp.dot(localHalfExtents);
-        abs_b.getRow(1, tmp);
-        extent.y = tmp.dot(localHalfExtents);
-        abs_b.getRow(2, tmp);
-        extent.z = tmp.dot(localHalfExtents);
-
-        aabbMin.sub(center, extent);
-        aabbMax.add(center, extent);
+        getWorldAabb(trans, aabbMin, aabbMax);
+    }
+
+    @Override
+    protected void calculateLocalBounds(Vector3f center, Vector3f halfExtents) {
+        halfExtents.sub(localAabbMax, localAabbMin);
+        halfExtents.scale(0.5f);
+        halfExtents.x += getMargin();
+        halfExtents.y += getMargin();
+        halfExtents.z += getMargin();
+
+        center.add(localAabbMax, localAabbMin);
+        center.scale(0.5f);
     }
 
     /**
-     * Re-calculate the local Aabb. Is called at the end of removeChildShapes.
+     * Re-calculate the local Aabb and rebuild the child AABB tree. Is called at the end of removeChildShapes.
      * Use this yourself if you modify the children or their transforms.
      */
     public void recalculateLocalAabb() {
@@ -167,13 +156,18 @@ public class CompoundShape extends CollisionShape {
         // Brute force, it iterates over all the shapes left.
         localAabbMin.set(1e30f, 1e30f, 1e30f);
         localAabbMax.set(-1e30f, -1e30f, -1e30f);
+        invalidateLocalBounds();
 
         Vector3f tmpLocalAabbMin = new Vector3f();
         Vector3f tmpLocalAabbMax = new Vector3f();
 
+        // child indices may have shifted, so the tree is rebuilt rather than updated
+        dynamicAabbTree.clear();
+
         // extend the local aabbMin/aabbMax
         for (int j = 0; j < children.size(); j++) {
             children.getQuick(j).childShape.getAabb(children.getQuick(j).transform, tmpLocalAabbMin, tmpLocalAabbMax);
+            children.getQuick(j).node = dynamicAabbTree.insert(DbvtAabbMm.FromMM(tmpLocalAabbMin, tmpLocalAabbMax, new DbvtAabbMm()), j);
 
             for (int i = 0; i < 3; i++) {
                 if (VectorUtil.getCoord(localAabbMin, i) > VectorUtil.getCoord(tmpLocalAabbMin, i)) {
@@ -189,6 +183,7 @@ public class CompoundShape extends CollisionShape {
     @Override
     public void setLocalScaling(Vector3f scaling) {
         localScaling.set(scaling);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -226,6 +221,7 @@ public class CompoundShape extends CollisionShape {
     @Override
     public void setMargin(float margin) {
         collisionMargin = margin;
+        invalidateLocalBounds();
     }
 
     @Override
@@ -238,13 +234,23 @@ public class CompoundShape extends CollisionShape {
         return "Compound";
     }
 
-    // this is optional, but should make collision queries faster, by culling non-overlapping nodes
-    // void	createAabbTreeFromChildren();
-
+    /**
+     * @deprecated never built, use {@link #getDynamicAabbTree} instead
+     */
+    @Deprecated
     public OptimizedBvh getAabbTree() {
         return aabbTree;
     }
 
+    /**
+     * Returns AABB tree of the children in local space of this shape. Each leaf's data is
+     * the index of the child (as {@link Integer}). The tree is kept in sync by add/remove
+     * methods and {@link #recalculateLocalAabb}.
+     */
+    public Dbvt getDynamicAabbTree() {
+        return dynamicAabbTree;
+    }
+
     /**
      * Computes the exact moment of inertia and the transform from the coordinate
      * system defined by the principal axes of the moment of inertia and the center
@@ -24,6 +24,7 @@
 package com.bulletphysics.collision.shapes;
 
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.broadphase.Dbvt;
 import com.bulletphysics.linearmath.Transform;
 
 /**
@@ -37,6 +38,7 @@ public class CompoundShapeChild {
     public CollisionShape childShape;
     public BroadphaseNativeType childShapeType;
     public float childMargin;
+    public Dbvt.Node node;
 
     @Override
     public boolean equals(Object obj) {
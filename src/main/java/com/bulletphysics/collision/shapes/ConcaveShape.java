@@ -42,6 +42,7 @@ public abstract class ConcaveShape extends CollisionShape {
 
     public void setMargin(float margin) {
         this.collisionMargin = margin;
+        invalidateLocalBounds();
     }
 
 }
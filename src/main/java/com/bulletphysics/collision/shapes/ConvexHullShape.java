@@ -26,21 +26,48 @@ package com.bulletphysics.collision.shapes;
 import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
 import com.bulletphysics.linearmath.VectorUtil;
+import com.bulletphysics.linearmath.convexhull.HullDesc;
+import com.bulletphysics.linearmath.convexhull.HullFlags;
+import com.bulletphysics.linearmath.convexhull.HullLibrary;
+import com.bulletphysics.linearmath.convexhull.HullResult;
+import com.bulletphysics.util.IntArrayList;
 import com.bulletphysics.util.ObjectArrayList;
 
 import javax.vecmath.Vector3f;
+import java.util.Arrays;
 
 /**
  * ConvexHullShape implements an implicit convex hull of an array of vertices.
  * Bullet provides a general and fast collision detector for convex shapes based
- * on GJK and EPA using localGetSupportingVertex.
+ * on GJK and EPA using localGetSupportingVertex.<p>
+ *
+ * Hulls with at least {@link #SUPPORT_GRAPH_MIN_POINTS} points lazily build an
+ * adjacency graph of the hull vertices (using {@link HullLibrary}) and find the
+ * supporting vertex by hill climbing on it instead of scanning all points. Points
+ * closer than 0.1% of the hull extent to the surface of the hull may be omitted
+ * from the graph, which bounds the error of such supporting vertex.
  *
  * @author jezek2
  */
 public class ConvexHullShape extends PolyhedralConvexShape {
 
+    /**
+     * Minimum number of points for using the support graph, smaller hulls are
+     * scanned linearly.
+     */
+    public static final int SUPPORT_GRAPH_MIN_POINTS = 64;
+
     private final ObjectArrayList<Vector3f> points = new ObjectArrayList<Vector3f>();
 
+    // points multiplied by localScaling, packed as x,y,z
+    private float[] scaledPoints = new float[0];
+
+    private boolean useSupportGraph = true;
+    // the graph is built lazily, possibly by parallel collision tasks, see getSupportGraph
+    private volatile boolean supportGraphDirty = true;
+    // null when not used
+    private volatile SupportGraph supportGraph;
+
     /**
      * TODO: This constructor optionally takes in a pointer to points. Each point is assumed to be 3 consecutive float (x,y,z), the striding defines the number of bytes between each point, in memory.
      * It is easier to not pass any points in the constructor, and just add one point at a time, using addPoint.
@@ -54,20 +81,168 @@ public class ConvexHullShape extends PolyhedralConvexShape {
             this.points.add(new Vector3f(points.getQuick(i)));
         }
 
+        updateScaledPoints();
         recalcLocalAabb();
     }
 
     @Override
     public void setLocalScaling(Vector3f scaling) {
         localScaling.set(scaling);
+        updateScaledPoints();
         recalcLocalAabb();
     }
 
     public void addPoint(Vector3f point) {
         points.add(new Vector3f(point));
+        supportGraphDirty = true;
+        updateScaledPoints();
         recalcLocalAabb();
     }
 
+    /**
+     * Enables or disables the support graph for large hulls (enabled by default).
+     */
+    public void setUseSupportGraph(boolean useSupportGraph) {
+        this.useSupportGraph = useSupportGraph;
+        supportGraphDirty = true;
+    }
+
+    public boolean getUseSupportGraph() {
+        return useSupportGraph;
+    }
+
+    /**
+     * Returns true when supporting vertices are searched using the support graph.
+     */
+    public boolean hasSupportGraph() {
+        return getSupportGraph() != null;
+    }
+
+    private SupportGraph getSupportGraph() {
+        if (supportGraphDirty) {
+            // built once, concurrent callers wait for the complete graph
+            synchronized (this) {
+                if (supportGraphDirty) {
+                    supportGraph = buildSupportGraph();
+                    supportGraphDirty = false;
+                }
+            }
+        }
+        return supportGraph;
+    }
+
+    private void updateScaledPoints() {
+        int num = points.size();
+        if (scaledPoints.length != num * 3) {
+            scaledPoints = new float[num * 3];
+        }
+        float sx = localScaling.x, sy = localScaling.y, sz = localScaling.z;
+        for (int i = 0; i < num; i++) {
+            Vector3f pt = points.getQuick(i);
+            scaledPoints[i * 3] = pt.x * sx;
+            scaledPoints[i * 3 + 1] = pt.y * sy;
+            scaledPoints[i * 3 + 2] = pt.z * sz;
+        }
+    }
+
+    /**
+     * Builds adjacency of hull vertices. The graph is independent of local scaling,
+     * as linear transformation doesn't change the topology of convex hull.
+     */
+    private SupportGraph buildSupportGraph() {
+        int num = points.size();
+        if (!useSupportGraph || num < SUPPORT_GRAPH_MIN_POINTS) {
+            return null;
+        }
+
+        HullDesc hd = new HullDesc();
+        hd.flags = HullFlags.TRIANGLES;
+        hd.vcount = num;
+        hd.vertices = points;
+        hd.maxVertices = Math.max(hd.maxVertices, num);
+
+        HullLibrary hl = new HullLibrary();
+        HullResult hr = new HullResult();
+        if (!hl.createConvexHull(hd, hr) || hr.numIndices < 3) {
+            // degenerate (eg. planar) hull, keep using linear scan
+            return null;
+        }
+
+        // output vertices are copies of input points, map them back by nearest distance
+        int[] map = new int[hr.numOutputVertices];
+        for (int i = 0; i < hr.numOutputVertices; i++) {
+            Vector3f v = hr.outputVertices.getQuick(i);
+            float bestDist = Float.MAX_VALUE;
+            for (int j = 0; j < num; j++) {
+                Vector3f pt = points.getQuick(j);
+                float ex = v.x - pt.x, ey = v.y - pt.y, ez = v.z - pt.z;
+                float dist = ex * ex + ey * ey + ez * ez;
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    map[i] = j;
+                }
+            }
+        }
+
+        // collect undirected edges of triangles as sorted keys
+        long[] edges = new long[hr.numIndices * 2];
+        int numEdges = 0;
+        for (int i = 0; i + 2 < hr.numIndices; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                int a = map[hr.indices.get(i + j)];
+                int b = map[hr.indices.get(i + (j + 1) % 3)];
+                if (a != b) {
+                    edges[numEdges++] = ((long) a << 32) | b;
+                    edges[numEdges++] = ((long) b << 32) | a;
+                }
+            }
+        }
+        Arrays.sort(edges, 0, numEdges);
+
+        int[] offsets = new int[num + 1];
+        IntArrayList neighbors = new IntArrayList();
+        long prev = -1;
+        for (int i = 0; i < numEdges; i++) {
+            if (edges[i] == prev) {
+                continue;
+            }
+            prev = edges[i];
+            offsets[(int) (prev >>> 32) + 1]++;
+            neighbors.add((int) prev);
+        }
+        for (int i = 0; i < num; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        if (neighbors.size() == 0) {
+            return null;
+        }
+
+        SupportGraph graph = new SupportGraph();
+        graph.offsets = offsets;
+        graph.neighbors = new int[neighbors.size()];
+        for (int i = 0; i < graph.neighbors.length; i++) {
+            graph.neighbors[i] = neighbors.get(i);
+        }
+
+        for (int axis = 0; axis < 6; axis++) {
+            float best = -Float.MAX_VALUE;
+            for (int i = 0; i < hr.numOutputVertices; i++) {
+                Vector3f v = points.getQuick(map[i]);
+                float coord = VectorUtil.getCoord(v, axis % 3);
+                if (axis >= 3) {
+                    coord = -coord;
+                }
+                if (coord > best) {
+                    best = coord;
+                    graph.start[axis] = map[i];
+                }
+            }
+        }
+
+        hl.releaseResult(hr);
+        return graph;
+    }
+
     public ObjectArrayList<Vector3f> getPoints() {
         return points;
     }
@@ -78,31 +253,92 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 
     @Override
     public Vector3f localGetSupportingVertexWithoutMargin(Vector3f vec0, Vector3f out) {
-        Vector3f supVec = out;
-        supVec.set(0f, 0f, 0f);
-        float newDot, maxDot = -1e30f;
-
-        Vector3f vec = new Vector3f(vec0);
-        float lenSqr = vec.lengthSquared();
-        if (lenSqr < 0.0001f) {
-            vec.set(1f, 0f, 0f);
-        } else {
-            float rlen = 1f / (float) Math.sqrt(lenSqr);
-            vec.scale(rlen);
-        }
+        localGetSupportingVertexWithoutMargin(vec0, out, -1);
+        return out;
+    }
 
+    /**
+     * Variant of {@link #localGetSupportingVertexWithoutMargin(Vector3f, Vector3f)}
+     * that starts the search at given point index, typically the result of previous
+     * query for the same pair of objects. Negative or invalid index is ignored.
+     *
+     * @return index of supporting point, or -1 when the hull is empty
+     */
+    public int localGetSupportingVertexWithoutMargin(Vector3f vec0, Vector3f out, int startIndex) {
+        float dx = vec0.x, dy = vec0.y, dz = vec0.z;
+        // scaling by positive factor doesn't change the result, no need to normalize
+        if (dx * dx + dy * dy + dz * dz < 0.0001f) {
+            dx = 1f;
+            dy = 0f;
+            dz = 0f;
+        }
 
-        Vector3f vtx = new Vector3f();
-        for (int i = 0; i < points.size(); i++) {
-            VectorUtil.mul(vtx, points.getQuick(i), localScaling);
+        SupportGraph graph = getSupportGraph();
+        int index = graph != null ? hillClimb(graph, dx, dy, dz, startIndex) : linearScan(dx, dy, dz);
+        if (index < 0) {
+            out.set(0f, 0f, 0f);
+        } else {
+            float[] pts = scaledPoints;
+            out.set(pts[index * 3], pts[index * 3 + 1], pts[index * 3 + 2]);
+        }
+        return index;
+    }
 
-            newDot = vec.dot(vtx);
+    private int linearScan(float dx, float dy, float dz) {
+        float[] pts = scaledPoints;
+        int num = pts.length / 3;
+        int best = -1;
+        float maxDot = -1e30f;
+        for (int i = 0, j = 0; i < num; i++, j += 3) {
+            float newDot = dx * pts[j] + dy * pts[j + 1] + dz * pts[j + 2];
             if (newDot > maxDot) {
                 maxDot = newDot;
-                supVec.set(vtx);
+                best = i;
             }
         }
-        return out;
+        return best;
+    }
+
+    private int hillClimb(SupportGraph graph, float dx, float dy, float dz, int startIndex) {
+        float[] pts = scaledPoints;
+        int[] offsets = graph.offsets;
+        int[] neighbors = graph.neighbors;
+
+        int cur;
+        float curDot;
+        if (startIndex >= 0 && startIndex < pts.length / 3 && offsets[startIndex] != offsets[startIndex + 1]) {
+            cur = startIndex;
+            curDot = dx * pts[cur * 3] + dy * pts[cur * 3 + 1] + dz * pts[cur * 3 + 2];
+        } else {
+            cur = -1;
+            curDot = -Float.MAX_VALUE;
+            for (int i = 0; i < 6; i++) {
+                int v = graph.start[i];
+                float d = dx * pts[v * 3] + dy * pts[v * 3 + 1] + dz * pts[v * 3 + 2];
+                if (d > curDot) {
+                    curDot = d;
+                    cur = v;
+                }
+            }
+        }
+
+        // steepest ascent, a vertex without better neighbour is supporting vertex
+        // of convex hull, the strict comparison guarantees termination
+        for (; ; ) {
+            int best = cur;
+            for (int i = offsets[cur], end = offsets[cur + 1]; i < end; i++) {
+                int v = neighbors[i];
+                float d = dx * pts[v * 3] + dy * pts[v * 3 + 1] + dz * pts[v * 3 + 2];
+                if (d > curDot) {
+                    curDot = d;
+                    best = v;
+                }
+            }
+            if (best == cur) {
+                return cur;
+            }
+            cur = best;
+        }
     }
 
     @Override
@@ -121,8 +357,9 @@ public class ConvexHullShape extends PolyhedralConvexShape {
             }
         }
         Vector3f vtx = new Vector3f();
+        float[] pts = scaledPoints;
         for (int i = 0; i < points.size(); i++) {
-            VectorUtil.mul(vtx, points.getQuick(i), localScaling);
+            vtx.set(pts[i * 3], pts[i * 3 + 1], pts[i * 3 + 2]);
 
             for (int j = 0; j < numVectors; j++) {
                 Vector3f vec = vectors[j];
@@ -139,17 +376,40 @@ public class ConvexHullShape extends PolyhedralConvexShape {
         }
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        float[] pts = scaledPoints;
+        SupportGraph graph = supportGraph;
+        if (graph == null || supportGraphDirty) {
+            // don't build the graph here, this is also used for AABB when adding points
+            batchedSupport(pts, pts.length / 3, vectors, supportVerticesOut, numVectors);
+            return;
+        }
+
+        for (int j = 0; j < numVectors * 3; j += 3) {
+            int index = hillClimb(graph, vectors[j], vectors[j + 1], vectors[j + 2], -1) * 3;
+            supportVerticesOut[j] = pts[index];
+            supportVerticesOut[j + 1] = pts[index + 1];
+            supportVerticesOut[j + 2] = pts[index + 2];
+        }
+    }
+
     @Override
     public Vector3f localGetSupportingVertex(Vector3f vec, Vector3f out) {
         Vector3f supVertex = localGetSupportingVertexWithoutMargin(vec, out);
 
-        if (getMargin() != 0f) {
-            Vector3f vecnorm = new Vector3f(vec);
-            if (vecnorm.lengthSquared() < (BulletGlobals.FLT_EPSILON * BulletGlobals.FLT_EPSILON)) {
-                vecnorm.set(-1f, -1f, -1f);
+        float margin = getMargin();
+        if (margin != 0f) {
+            float nx = vec.x, ny = vec.y, nz = vec.z;
+            float lenSqr = nx * nx + ny * ny + nz * nz;
+            if (lenSqr < (BulletGlobals.FLT_EPSILON * BulletGlobals.FLT_EPSILON)) {
+                nx = ny = nz = -1f;
+                lenSqr = 3f;
             }
-            vecnorm.normalize();
-            supVertex.scaleAdd(getMargin(), vecnorm, supVertex);
+            float norm = (float) (1.0 / Math.sqrt(lenSqr));
+            supVertex.x += margin * (nx * norm);
+            supVertex.y += margin * (ny * norm);
+            supVertex.z += margin * (nz * norm);
         }
         return out;
     }
@@ -207,4 +467,17 @@ public class ConvexHullShape extends PolyhedralConvexShape {
         return "Convex";
     }
 
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adjacency of hull vertices in compressed form, neighbours of point i are
+     * neighbors[offsets[i]..offsets[i+1]). Not modified after it is built.
+     */
+    private static class SupportGraph {
+        public int[] offsets;
+        public int[] neighbors;
+        // hull vertices extreme along the +-X, +-Y, +-Z axes, used as starting points
+        public final int[] start = new int[6];
+    }
+
 }
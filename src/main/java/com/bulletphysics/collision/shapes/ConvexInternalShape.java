@@ -95,6 +95,7 @@ public abstract class ConvexInternalShape extends ConvexShape {
 
     public void setLocalScaling(Vector3f scaling) {
         localScaling.absolute(scaling);
+        invalidateLocalBounds();
     }
 
     public Vector3f getLocalScaling(Vector3f out) {
@@ -108,6 +109,7 @@ public abstract class ConvexInternalShape extends ConvexShape {
 
     public void setMargin(float margin) {
         this.collisionMargin = margin;
+        invalidateLocalBounds();
     }
 
     @Override
@@ -47,6 +47,39 @@ public abstract class ConvexShape extends CollisionShape {
     public abstract void batchedUnitVectorGetSupportingVertexWithoutMargin(Vector3f[] vectors, Vector3f[] supportVerticesOut, int numVectors);
     //#endif
 
+    /**
+     * Packed variant of {@link #batchedUnitVectorGetSupportingVertexWithoutMargin(Vector3f[], Vector3f[], int)},
+     * directions and supporting vertices are stored as consecutive x,y,z triples.
+     */
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        Vector3f vec = new Vector3f();
+        Vector3f sup = new Vector3f();
+        for (int i = 0, j = 0; i < numVectors; i++, j += 3) {
+            vec.set(vectors[j], vectors[j + 1], vectors[j + 2]);
+            localGetSupportingVertexWithoutMargin(vec, sup);
+            supportVerticesOut[j] = sup.x;
+            supportVerticesOut[j + 1] = sup.y;
+            supportVerticesOut[j + 2] = sup.z;
+        }
+    }
+
+    /**
+     * Same as {@link #batchedUnitVectorGetSupportingVertexWithoutMargin(float[], float[], int)}
+     * but includes the margin, ie. equivalent of calling {@link #localGetSupportingVertex}
+     * for each direction.
+     */
+    public void batchedUnitVectorGetSupportingVertex(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        Vector3f vec = new Vector3f();
+        Vector3f sup = new Vector3f();
+        for (int i = 0, j = 0; i < numVectors; i++, j += 3) {
+            vec.set(vectors[j], vectors[j + 1], vectors[j + 2]);
+            localGetSupportingVertex(vec, sup);
+            supportVerticesOut[j] = sup.x;
+            supportVerticesOut[j + 1] = sup.y;
+            supportVerticesOut[j + 2] = sup.z;
+        }
+    }
+
     public abstract void getAabbSlow(Transform t, Vector3f aabbMin, Vector3f aabbMax);
 
     public abstract void setLocalScaling(Vector3f scaling);
@@ -104,6 +104,26 @@ public class CylinderShape extends BoxShape {
         }
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        // JAVA NOTE: overridden to not use the box implementation, works for all axes
+        Vector3f vec = new Vector3f();
+        Vector3f sup = new Vector3f();
+        for (int j = 0; j < numVectors * 3; j += 3) {
+            vec.set(vectors[j], vectors[j + 1], vectors[j + 2]);
+            localGetSupportingVertexWithoutMargin(vec, sup);
+            supportVerticesOut[j] = sup.x;
+            supportVerticesOut[j + 1] = sup.y;
+            supportVerticesOut[j + 2] = sup.z;
+        }
+    }
+
+    @Override
+    public void batchedUnitVectorGetSupportingVertex(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        batchedUnitVectorGetSupportingVertexWithoutMargin(vectors, supportVerticesOut, numVectors);
+        addMargin(vectors, supportVerticesOut, numVectors, getMargin());
+    }
+
     @Override
     public Vector3f localGetSupportingVertex(Vector3f vec, Vector3f out) {
         Vector3f supVertex = out;
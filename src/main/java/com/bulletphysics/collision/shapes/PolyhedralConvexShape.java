@@ -23,6 +23,7 @@
 
 package com.bulletphysics.collision.shapes;
 
+import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.linearmath.AabbUtil2;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.VectorUtil;
@@ -36,22 +37,13 @@ import javax.vecmath.Vector3f;
  */
 public abstract class PolyhedralConvexShape extends ConvexInternalShape {
 
-    private static Vector3f[] _directions = new Vector3f[]{
-            new Vector3f(1f, 0f, 0f),
-            new Vector3f(0f, 1f, 0f),
-            new Vector3f(0f, 0f, 1f),
-            new Vector3f(-1f, 0f, 0f),
-            new Vector3f(0f, -1f, 0f),
-            new Vector3f(0f, 0f, -1f)
-    };
-
-    private static Vector3f[] _supporting = new Vector3f[]{
-            new Vector3f(0f, 0f, 0f),
-            new Vector3f(0f, 0f, 0f),
-            new Vector3f(0f, 0f, 0f),
-            new Vector3f(0f, 0f, 0f),
-            new Vector3f(0f, 0f, 0f),
-            new Vector3f(0f, 0f, 0f)
+    private static final float[] _directions = new float[]{
+            1f, 0f, 0f,
+            0f, 1f, 0f,
+            0f, 0f, 1f,
+            -1f, 0f, 0f,
+            0f, -1f, 0f,
+            0f, 0f, -1f
     };
 
     protected final Vector3f localAabbMin = new Vector3f(1f, 1f, 1f);
@@ -127,6 +119,71 @@ public abstract class PolyhedralConvexShape extends ConvexInternalShape {
         }
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        int numVertices = getNumVertices();
+        float[] verts = new float[numVertices * 3];
+        Vector3f vtx = new Vector3f();
+        for (int i = 0; i < numVertices; i++) {
+            getVertex(i, vtx);
+            verts[i * 3] = vtx.x;
+            verts[i * 3 + 1] = vtx.y;
+            verts[i * 3 + 2] = vtx.z;
+        }
+        batchedSupport(verts, numVertices, vectors, supportVerticesOut, numVectors);
+    }
+
+    @Override
+    public void batchedUnitVectorGetSupportingVertex(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        batchedUnitVectorGetSupportingVertexWithoutMargin(vectors, supportVerticesOut, numVectors);
+        addMargin(vectors, supportVerticesOut, numVectors, getMargin());
+    }
+
+    /**
+     * Finds supporting vertices of packed point cloud for packed directions.
+     */
+    protected static void batchedSupport(float[] verts, int numVertices, float[] vectors, float[] supportVerticesOut, int numVectors) {
+        for (int j = 0; j < numVectors * 3; j += 3) {
+            float dx = vectors[j], dy = vectors[j + 1], dz = vectors[j + 2];
+            float maxDot = -1e30f;
+            int best = -1;
+            for (int i = 0, k = 0; i < numVertices; i++, k += 3) {
+                float newDot = dx * verts[k] + dy * verts[k + 1] + dz * verts[k + 2];
+                if (newDot > maxDot) {
+                    maxDot = newDot;
+                    best = k;
+                }
+            }
+            if (best >= 0) {
+                supportVerticesOut[j] = verts[best];
+                supportVerticesOut[j + 1] = verts[best + 1];
+                supportVerticesOut[j + 2] = verts[best + 2];
+            }
+        }
+    }
+
+    /**
+     * Moves packed supporting vertices by margin along the (normalized) directions,
+     * the same way as {@link ConvexInternalShape#localGetSupportingVertex} does.
+     */
+    protected static void addMargin(float[] vectors, float[] supportVerticesOut, int numVectors, float margin) {
+        if (margin == 0f) {
+            return;
+        }
+        for (int j = 0; j < numVectors * 3; j += 3) {
+            float nx = vectors[j], ny = vectors[j + 1], nz = vectors[j + 2];
+            float lenSqr = nx * nx + ny * ny + nz * nz;
+            if (lenSqr < (BulletGlobals.FLT_EPSILON * BulletGlobals.FLT_EPSILON)) {
+                nx = ny = nz = -1f;
+                lenSqr = 3f;
+            }
+            float norm = (float) (1.0 / Math.sqrt(lenSqr));
+            supportVerticesOut[j] += margin * (nx * norm);
+            supportVerticesOut[j + 1] += margin * (ny * norm);
+            supportVerticesOut[j + 2] += margin * (nz * norm);
+        }
+    }
+
     @Override
     public void calculateLocalInertia(float mass, Vector3f inertia) {
         // not yet, return box inertia
@@ -172,14 +229,16 @@ public abstract class PolyhedralConvexShape extends ConvexInternalShape {
 
     public void recalcLocalAabb() {
         isLocalAabbValid = true;
+        invalidateLocalBounds();
 
         //#if 1
 
-        batchedUnitVectorGetSupportingVertexWithoutMargin(_directions, _supporting, 6);
+        float[] supporting = new float[6 * 3];
+        batchedUnitVectorGetSupportingVertexWithoutMargin(_directions, supporting, 6);
 
         for (int i = 0; i < 3; i++) {
-            VectorUtil.setCoord(localAabbMax, i, VectorUtil.getCoord(_supporting[i], i) + collisionMargin);
-            VectorUtil.setCoord(localAabbMin, i, VectorUtil.getCoord(_supporting[i + 3], i) - collisionMargin);
+            VectorUtil.setCoord(localAabbMax, i, supporting[i * 3 + i] + collisionMargin);
+            VectorUtil.setCoord(localAabbMin, i, supporting[(i + 3) * 3 + i] - collisionMargin);
         }
 
         //#else
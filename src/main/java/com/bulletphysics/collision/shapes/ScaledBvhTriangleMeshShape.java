@@ -133,6 +133,7 @@ public class ScaledBvhTriangleMeshShape extends ConcaveShape {
     @Override
     public void setLocalScaling(Vector3f scaling) {
         localScaling.set(scaling);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -77,11 +77,22 @@ public class ShapeHull {
             }
         }
 
+        float[] directions = new float[numSampleDirections * 3];
+        for (int i = 0; i < numSampleDirections; i++) {
+            Vector3f dir = unitSpherePoints.getQuick(i);
+            directions[i * 3] = dir.x;
+            directions[i * 3 + 1] = dir.y;
+            directions[i * 3 + 2] = dir.z;
+        }
+
+        float[] supporting = new float[numSampleDirections * 3];
+        shape.batchedUnitVectorGetSupportingVertex(directions, supporting, numSampleDirections);
+
         ObjectArrayList<Vector3f> supportPoints = new ObjectArrayList<Vector3f>();
         MiscUtil.resize(supportPoints, NUM_UNITSPHERE_POINTS + ConvexShape.MAX_PREFERRED_PENETRATION_DIRECTIONS * 2, Vector3f.class);
 
         for (int i = 0; i < numSampleDirections; i++) {
-            shape.localGetSupportingVertex(unitSpherePoints.getQuick(i), supportPoints.getQuick(i));
+            supportPoints.getQuick(i).set(supporting[i * 3], supporting[i * 3 + 1], supporting[i * 3 + 2]);
         }
 
         HullDesc hd = new HullDesc();
@@ -27,6 +27,7 @@ import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
 import com.bulletphysics.linearmath.Transform;
 
 import javax.vecmath.Vector3f;
+import java.util.Arrays;
 
 /**
  * SphereShape implements an implicit sphere, centered around a local origin with radius.
@@ -53,13 +54,17 @@ public class SphereShape extends ConvexInternalShape {
         }
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        Arrays.fill(supportVerticesOut, 0, numVectors * 3, 0f);
+    }
+
     @Override
     public void getAabb(Transform t, Vector3f aabbMin, Vector3f aabbMax) {
         Vector3f center = t.origin;
-        Vector3f extent = new Vector3f();
-        extent.set(getMargin(), getMargin(), getMargin());
-        aabbMin.sub(center, extent);
-        aabbMax.add(center, extent);
+        float extent = getMargin();
+        aabbMin.set(center.x - extent, center.y - extent, center.z - extent);
+        aabbMax.set(center.x + extent, center.y + extent, center.z + extent);
     }
 
     @Override
@@ -82,6 +87,11 @@ public class SphereShape extends ConvexInternalShape {
         return implicitShapeDimensions.x * localScaling.x;
     }
 
+    public void setUnscaledRadius(float radius) {
+        implicitShapeDimensions.x = radius;
+        super.setMargin(radius);
+    }
+
     @Override
     public void setMargin(float margin) {
         super.setMargin(margin);
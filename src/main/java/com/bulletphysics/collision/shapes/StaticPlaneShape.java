@@ -135,6 +135,7 @@ public class StaticPlaneShape extends ConcaveShape {
     @Override
     public void setLocalScaling(Vector3f scaling) {
         localScaling.set(scaling);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -91,6 +91,7 @@ public abstract class TriangleMeshShape extends ConcaveShape {
             localGetSupportingVertex(vec, tmp);
             VectorUtil.setCoord(localAabbMin, i, VectorUtil.getCoord(tmp, i) - collisionMargin);
         }
+        invalidateLocalBounds();
     }
 
     @Override
@@ -53,6 +53,7 @@ public class TriangleShape extends PolyhedralConvexShape {
         vertices1[0].set(p0);
         vertices1[1].set(p1);
         vertices1[2].set(p2);
+        invalidateLocalBounds();
     }
 
     @Override
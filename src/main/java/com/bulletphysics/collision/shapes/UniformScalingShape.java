@@ -75,6 +75,25 @@ public class UniformScalingShape extends ConvexShape {
         }
     }
 
+    @Override
+    public void batchedUnitVectorGetSupportingVertexWithoutMargin(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        childConvexShape.batchedUnitVectorGetSupportingVertexWithoutMargin(vectors, supportVerticesOut, numVectors);
+        scale(supportVerticesOut, numVectors);
+    }
+
+    @Override
+    public void batchedUnitVectorGetSupportingVertex(float[] vectors, float[] supportVerticesOut, int numVectors) {
+        childConvexShape.batchedUnitVectorGetSupportingVertex(vectors, supportVerticesOut, numVectors);
+        scale(supportVerticesOut, numVectors);
+    }
+
+    private void scale(float[] supportVerticesOut, int numVectors) {
+        float s = uniformScalingFactor;
+        for (int j = 0; j < numVectors * 3; j++) {
+            supportVerticesOut[j] *= s;
+        }
+    }
+
     @Override
     public void getAabbSlow(Transform t, Vector3f aabbMin, Vector3f aabbMax) {
         childConvexShape.getAabbSlow(t, aabbMin, aabbMax);
@@ -93,6 +112,7 @@ public class UniformScalingShape extends ConvexShape {
     @Override
     public void setLocalScaling(Vector3f scaling) {
         childConvexShape.setLocalScaling(scaling);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -104,6 +124,7 @@ public class UniformScalingShape extends ConvexShape {
     @Override
     public void setMargin(float margin) {
         childConvexShape.setMargin(margin);
+        invalidateLocalBounds();
     }
 
     @Override
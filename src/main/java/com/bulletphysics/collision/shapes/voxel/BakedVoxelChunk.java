@@ -0,0 +1,91 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+import com.bulletphysics.collision.shapes.BvhTriangleMeshShape;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * The blocking voxels of a chunk of a {@link ChunkedVoxelWorldShape}, baked into a single static triangle mesh of
+ * greedy-merged faces. While a chunk is baked, its voxels are not looked up by the collision algorithm, and contacts
+ * with the chunk use it as the user pointer of the voxel world object instead of the user data of a voxel.
+ *
+ * @see ChunkedVoxelWorldShape#enableBaking
+ */
+public class BakedVoxelChunk {
+
+    private final int chunkX;
+    private final int chunkY;
+    private final int chunkZ;
+    private final Vector3f origin = new Vector3f();
+    private final BvhTriangleMeshShape collisionShape;
+    private final float friction;
+    private final float restitution;
+
+    public BakedVoxelChunk(int chunkX, int chunkY, int chunkZ, Vector3f origin, BvhTriangleMeshShape collisionShape, float friction, float restitution) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.chunkZ = chunkZ;
+        this.origin.set(origin);
+        this.collisionShape = collisionShape;
+        this.friction = friction;
+        this.restitution = restitution;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkY() {
+        return chunkY;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    /**
+     * @return The world position of the mesh origin, which is the center of the first voxel of the chunk.
+     */
+    public Vector3f getOrigin(Vector3f out) {
+        out.set(origin);
+        return out;
+    }
+
+    /**
+     * @return The mesh, or null if the chunk has no exposed faces.
+     */
+    public BvhTriangleMeshShape getCollisionShape() {
+        return collisionShape;
+    }
+
+    public float getFriction() {
+        return friction;
+    }
+
+    public float getRestitution() {
+        return restitution;
+    }
+}
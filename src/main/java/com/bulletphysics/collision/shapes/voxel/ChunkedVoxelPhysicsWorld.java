@@ -0,0 +1,50 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+/**
+ * A voxel world that is organised in chunks and can report a summary of the content of each chunk, allowing empty and
+ * solid areas to be handled without looking up each voxel.
+ * <p/>
+ * Chunk sizes must be powers of two of at least 4. Chunk (cx, cy, cz) contains the voxels from
+ * (cx * sizeX, cy * sizeY, cz * sizeZ) up to but excluding ((cx + 1) * sizeX, (cy + 1) * sizeY, (cz + 1) * sizeZ).
+ */
+public interface ChunkedVoxelPhysicsWorld extends VoxelPhysicsWorld {
+
+    int getChunkSizeX();
+
+    int getChunkSizeY();
+
+    int getChunkSizeZ();
+
+    /**
+     * Adds a listener that should be informed of the occupancy of every currently loaded chunk, and of every change
+     * after that.
+     *
+     * @param listener
+     */
+    void addChunkListener(VoxelChunkListener listener);
+
+    void removeChunkListener(VoxelChunkListener listener);
+}
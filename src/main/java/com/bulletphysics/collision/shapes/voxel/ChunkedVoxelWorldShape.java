@@ -0,0 +1,416 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Voxel world shape that keeps a summary of the occupancy of each chunk of a {@link ChunkedVoxelPhysicsWorld}, so that
+ * the collision algorithm, raycasts and sweeps can skip empty areas without looking up each voxel, and treat the
+ * interior of solid areas cheaply.
+ * <p/>
+ * The shape registers itself as a {@link VoxelChunkListener} of the world on construction; use {@link #detach()} to
+ * unregister it once it is no longer used. Like the rest of the world, the listener methods must only be called from the
+ * thread running the simulation, outside of the collision detection and the parallel tasks of the step. Queries
+ * (occupancy, baked chunks) don't modify the chunk table and may be made concurrently by the parallel tasks.
+ * <p/>
+ * Optionally, chunks that have not changed for a while can be baked into static triangle meshes, see
+ * {@link #enableBaking}.
+ */
+public class ChunkedVoxelWorldShape extends VoxelWorldShape implements VoxelChunkListener {
+
+    private final int shiftX;
+    private final int shiftY;
+    private final int shiftZ;
+
+    // open addressing table of chunk summaries keyed by their chunk position, avoids boxing the keys
+    private ChunkSummary[] chunks = new ChunkSummary[64];
+    private int numChunks;
+    // last chunk looked up, lookups mostly come in runs within the same chunk; shared by concurrent queries,
+    // the volatile write publishes the summary (a stale entry only costs a table lookup)
+    private volatile ChunkSummary lastChunk;
+
+    // baking of settled chunks, see enableBaking
+    private Executor bakeExecutor;
+    private int bakeSettleSteps;
+    private int maxBakesPerStep;
+    private int bakeStep;
+    private final Queue<ChunkSummary> pendingBakes = new ArrayDeque<ChunkSummary>();
+    private final Queue<VoxelChunkBaker> completedBakes = new ConcurrentLinkedQueue<VoxelChunkBaker>();
+
+    public ChunkedVoxelWorldShape(ChunkedVoxelPhysicsWorld world) {
+        super(world);
+        shiftX = chunkSizeToShift(world.getChunkSizeX());
+        shiftY = chunkSizeToShift(world.getChunkSizeY());
+        shiftZ = chunkSizeToShift(world.getChunkSizeZ());
+        world.addChunkListener(this);
+    }
+
+    private static int chunkSizeToShift(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two of at least 4, but was " + size);
+        }
+        return Integer.numberOfTrailingZeros(size);
+    }
+
+    /**
+     * Stops receiving chunk updates from the world.
+     */
+    public void detach() {
+        ((ChunkedVoxelPhysicsWorld) getWorld()).removeChunkListener(this);
+        disableBaking();
+        clearChunks();
+        lastChunk = null;
+    }
+
+    /**
+     * Calculates the bit of the coarse occupancy mask that covers a voxel, see {@link VoxelChunkListener#chunkUpdated}.
+     *
+     * @param localX     x position of the voxel within its chunk
+     * @param localY     y position of the voxel within its chunk
+     * @param localZ     z position of the voxel within its chunk
+     * @param chunkSizeX
+     * @param chunkSizeY
+     * @param chunkSizeZ
+     * @return The mask bit for the sub-region containing the voxel
+     */
+    public static long getOccupancyBit(int localX, int localY, int localZ, int chunkSizeX, int chunkSizeY, int chunkSizeZ) {
+        return 1L << ((localX * 4 / chunkSizeX) + 4 * (localY * 4 / chunkSizeY) + 16 * (localZ * 4 / chunkSizeZ));
+    }
+
+    @Override
+    public void chunkUpdated(int chunkX, int chunkY, int chunkZ, VoxelOccupancy occupancy, long occupancyMask) {
+        if (occupancy == VoxelOccupancy.EMPTY) {
+            occupancyMask = 0L;
+        } else if (occupancy == VoxelOccupancy.SOLID) {
+            occupancyMask = -1L;
+        } else if (occupancyMask == 0L) {
+            occupancy = VoxelOccupancy.EMPTY;
+        }
+        ChunkSummary chunk = new ChunkSummary(chunkX, chunkY, chunkZ, occupancy, occupancyMask, bakeStep);
+        putChunk(chunk);
+        lastChunk = null;
+        if (bakeExecutor != null && occupancy != VoxelOccupancy.EMPTY) {
+            pendingBakes.add(chunk);
+        }
+        unbakeNeighbours(chunkX, chunkY, chunkZ);
+    }
+
+    @Override
+    public void chunkRemoved(int chunkX, int chunkY, int chunkZ) {
+        removeChunk(chunkX, chunkY, chunkZ);
+        lastChunk = null;
+        unbakeNeighbours(chunkX, chunkY, chunkZ);
+    }
+
+    /**
+     * Enables baking of chunks into static triangle meshes. Once a chunk has not been updated for the given number of
+     * steps, its voxels are copied and meshed by the executor, so the work happens off the simulation thread if the
+     * executor runs it elsewhere. The finished mesh replaces the per voxel collision of the chunk in a later call to
+     * {@link #updateBaking()}, unless the chunk has changed in the meantime. Updating a baked chunk drops its mesh again.
+     * <p/>
+     * Only chunks whose blocking voxels are all unit cubes (a {@link com.bulletphysics.collision.shapes.BoxShape} with
+     * half extents of 0.5 and no offset) of the same friction and restitution are baked, other chunks keep using per
+     * voxel collision. Objects buried inside a baked chunk only collide with its surface.
+     *
+     * @param executor        Runs the meshing of chunks
+     * @param settleSteps     Number of steps a chunk must remain unchanged before it is baked
+     * @param maxBakesPerStep Maximum number of chunks to copy and submit per step
+     */
+    public void enableBaking(Executor executor, int settleSteps, int maxBakesPerStep) {
+        this.bakeExecutor = executor;
+        this.bakeSettleSteps = settleSteps;
+        this.maxBakesPerStep = maxBakesPerStep;
+        pendingBakes.clear();
+        for (ChunkSummary chunk : chunks) {
+            if (chunk != null && chunk.occupancy != VoxelOccupancy.EMPTY && chunk.baked == null) {
+                chunk.updateStep = bakeStep;
+                pendingBakes.add(chunk);
+            }
+        }
+    }
+
+    /**
+     * Disables baking, and returns all baked chunks to per voxel collision.
+     */
+    public void disableBaking() {
+        bakeExecutor = null;
+        pendingBakes.clear();
+        completedBakes.clear();
+        for (ChunkSummary chunk : chunks) {
+            if (chunk != null) {
+                chunk.baked = null;
+            }
+        }
+    }
+
+    /**
+     * Swaps in finished chunk meshes and starts baking chunks that have settled. Must be called once per simulation step
+     * from the thread running the simulation when baking is enabled, for example from an internal tick callback.
+     */
+    public void updateBaking() {
+        VoxelChunkBaker baker;
+        while ((baker = completedBakes.poll()) != null) {
+            ChunkSummary chunk = (ChunkSummary) baker.token;
+            // the summary is replaced on every update, so this only accepts meshes of unchanged chunks
+            if (bakeExecutor != null && findChunk(chunk.x, chunk.y, chunk.z) == chunk) {
+                chunk.baked = baker.getResult();
+            }
+        }
+        if (bakeExecutor == null) {
+            return;
+        }
+
+        bakeStep++;
+        int started = 0;
+        while (started < maxBakesPerStep && !pendingBakes.isEmpty()) {
+            ChunkSummary chunk = pendingBakes.peek();
+            if (bakeStep - chunk.updateStep < bakeSettleSteps) {
+                // chunks are queued in update order, so none of the following have settled either
+                break;
+            }
+            pendingBakes.poll();
+            if (findChunk(chunk.x, chunk.y, chunk.z) != chunk) {
+                continue;
+            }
+            baker = VoxelChunkBaker.snapshot(getWorld(), chunk.x, chunk.y, chunk.z, 1 << shiftX, 1 << shiftY, 1 << shiftZ, chunk, completedBakes);
+            if (baker != null) {
+                bakeExecutor.execute(baker);
+                started++;
+            }
+        }
+    }
+
+    /**
+     * Faces on the boundary of a chunk depend on the voxels of its neighbours, so their meshes are dropped and rebaked
+     * once the chunk has settled.
+     */
+    private void unbakeNeighbours(int chunkX, int chunkY, int chunkZ) {
+        unbake(chunkX - 1, chunkY, chunkZ);
+        unbake(chunkX + 1, chunkY, chunkZ);
+        unbake(chunkX, chunkY - 1, chunkZ);
+        unbake(chunkX, chunkY + 1, chunkZ);
+        unbake(chunkX, chunkY, chunkZ - 1);
+        unbake(chunkX, chunkY, chunkZ + 1);
+    }
+
+    private void unbake(int chunkX, int chunkY, int chunkZ) {
+        ChunkSummary chunk = findChunk(chunkX, chunkY, chunkZ);
+        if (chunk == null || bakeExecutor == null || chunk.occupancy == VoxelOccupancy.EMPTY) {
+            return;
+        }
+        // replace the summary, so pending bakes of this chunk are discarded as well
+        ChunkSummary newChunk = new ChunkSummary(chunkX, chunkY, chunkZ, chunk.occupancy, chunk.occupancyMask, bakeStep);
+        putChunk(newChunk);
+        lastChunk = null;
+        pendingBakes.add(newChunk);
+    }
+
+    @Override
+    public BakedVoxelChunk getBakedChunk(int x, int y, int z) {
+        ChunkSummary chunk = getChunk(x >> shiftX, y >> shiftY, z >> shiftZ);
+        return (chunk != null) ? chunk.baked : null;
+    }
+
+    @Override
+    public VoxelOccupancy getOccupancy(int x, int y, int z) {
+        ChunkSummary chunk = getChunk(x >> shiftX, y >> shiftY, z >> shiftZ);
+        if (chunk == null) {
+            return VoxelOccupancy.MIXED;
+        }
+        if (chunk.occupancy != VoxelOccupancy.MIXED) {
+            return chunk.occupancy;
+        }
+        int subX = (x & ((1 << shiftX) - 1)) >> (shiftX - 2);
+        int subY = (y & ((1 << shiftY) - 1)) >> (shiftY - 2);
+        int subZ = (z & ((1 << shiftZ) - 1)) >> (shiftZ - 2);
+        return ((chunk.occupancyMask & (1L << (subX + 4 * subY + 16 * subZ))) == 0) ? VoxelOccupancy.EMPTY : VoxelOccupancy.MIXED;
+    }
+
+    @Override
+    public boolean isEmpty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int chunkX = minX >> shiftX; chunkX <= maxX >> shiftX; chunkX++) {
+            for (int chunkY = minY >> shiftY; chunkY <= maxY >> shiftY; chunkY++) {
+                for (int chunkZ = minZ >> shiftZ; chunkZ <= maxZ >> shiftZ; chunkZ++) {
+                    ChunkSummary chunk = getChunk(chunkX, chunkY, chunkZ);
+                    if (chunk == null || chunk.occupancy == VoxelOccupancy.SOLID) {
+                        return false;
+                    }
+                    if (chunk.occupancy == VoxelOccupancy.EMPTY) {
+                        continue;
+                    }
+                    // test the sub-regions of this chunk that overlap the region
+                    int subMinX = subRegion(Math.max(minX, chunkX << shiftX), shiftX);
+                    int subMaxX = subRegion(Math.min(maxX, ((chunkX + 1) << shiftX) - 1), shiftX);
+                    int subMinY = subRegion(Math.max(minY, chunkY << shiftY), shiftY);
+                    int subMaxY = subRegion(Math.min(maxY, ((chunkY + 1) << shiftY) - 1), shiftY);
+                    int subMinZ = subRegion(Math.max(minZ, chunkZ << shiftZ), shiftZ);
+                    int subMaxZ = subRegion(Math.min(maxZ, ((chunkZ + 1) << shiftZ) - 1), shiftZ);
+                    for (int subX = subMinX; subX <= subMaxX; subX++) {
+                        for (int subY = subMinY; subY <= subMaxY; subY++) {
+                            for (int subZ = subMinZ; subZ <= subMaxZ; subZ++) {
+                                if ((chunk.occupancyMask & (1L << (subX + 4 * subY + 16 * subZ))) != 0) {
+                                    return false;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int subRegion(int pos, int shift) {
+        return (pos & ((1 << shift) - 1)) >> (shift - 2);
+    }
+
+    private ChunkSummary getChunk(int chunkX, int chunkY, int chunkZ) {
+        ChunkSummary chunk = lastChunk;
+        if (chunk != null && chunk.x == chunkX && chunk.y == chunkY && chunk.z == chunkZ) {
+            return chunk;
+        }
+        chunk = findChunk(chunkX, chunkY, chunkZ);
+        if (chunk != null) {
+            lastChunk = chunk;
+        }
+        return chunk;
+    }
+
+    private static int chunkSlot(int chunkX, int chunkY, int chunkZ, int mask) {
+        long key = ((long) (chunkX & 0x1FFFFF) << 42) | ((long) (chunkY & 0x1FFFFF) << 21) | (long) (chunkZ & 0x1FFFFF);
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private ChunkSummary findChunk(int chunkX, int chunkY, int chunkZ) {
+        int mask = chunks.length - 1;
+        for (int i = chunkSlot(chunkX, chunkY, chunkZ, mask); ; i = (i + 1) & mask) {
+            ChunkSummary chunk = chunks[i];
+            if (chunk == null || (chunk.x == chunkX && chunk.y == chunkY && chunk.z == chunkZ)) {
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Stores the summary, replacing the previous summary of the same chunk.
+     */
+    private void putChunk(ChunkSummary chunk) {
+        int mask = chunks.length - 1;
+        for (int i = chunkSlot(chunk.x, chunk.y, chunk.z, mask); ; i = (i + 1) & mask) {
+            ChunkSummary old = chunks[i];
+            if (old == null) {
+                chunks[i] = chunk;
+                numChunks++;
+                // keep the table at most half full
+                if (numChunks * 2 > chunks.length) {
+                    resizeChunks(chunks.length << 1);
+                }
+                return;
+            }
+            if (old.x == chunk.x && old.y == chunk.y && old.z == chunk.z) {
+                chunks[i] = chunk;
+                return;
+            }
+        }
+    }
+
+    private void removeChunk(int chunkX, int chunkY, int chunkZ) {
+        int mask = chunks.length - 1;
+        int i = chunkSlot(chunkX, chunkY, chunkZ, mask);
+        while (true) {
+            ChunkSummary chunk = chunks[i];
+            if (chunk == null) {
+                return;
+            }
+            if (chunk.x == chunkX && chunk.y == chunkY && chunk.z == chunkZ) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        chunks[i] = null;
+        numChunks--;
+
+        // shift back following entries of the probe run, so lookups don't stop at the hole
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            ChunkSummary chunk = chunks[j];
+            if (chunk == null) {
+                return;
+            }
+            int k = chunkSlot(chunk.x, chunk.y, chunk.z, mask);
+            boolean reachable = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+            if (!reachable) {
+                chunks[i] = chunk;
+                chunks[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resizeChunks(int size) {
+        ChunkSummary[] oldChunks = chunks;
+        chunks = new ChunkSummary[size];
+        int mask = size - 1;
+        for (ChunkSummary chunk : oldChunks) {
+            if (chunk != null) {
+                int i = chunkSlot(chunk.x, chunk.y, chunk.z, mask);
+                while (chunks[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                chunks[i] = chunk;
+            }
+        }
+    }
+
+    private void clearChunks() {
+        chunks = new ChunkSummary[64];
+        numChunks = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    private static final class ChunkSummary {
+        final int x;
+        final int y;
+        final int z;
+        final VoxelOccupancy occupancy;
+        final long occupancyMask;
+        int updateStep;
+        BakedVoxelChunk baked;
+
+        ChunkSummary(int x, int y, int z, VoxelOccupancy occupancy, long occupancyMask, int updateStep) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.occupancy = occupancy;
+            this.occupancyMask = occupancyMask;
+            this.updateStep = updateStep;
+        }
+    }
+}
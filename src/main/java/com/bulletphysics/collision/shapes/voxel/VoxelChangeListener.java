@@ -0,0 +1,45 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+/**
+ * Is informed when voxels of a {@link VoxelWorldShape} change.
+ *
+ * @see VoxelWorldShape#voxelsChanged
+ */
+public interface VoxelChangeListener {
+
+    /**
+     * Called when one or more voxels in the given (inclusive) region have changed.
+     *
+     * @param shape
+     * @param minX
+     * @param minY
+     * @param minZ
+     * @param maxX
+     * @param maxY
+     * @param maxZ
+     */
+    void voxelsChanged(VoxelWorldShape shape, int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+}
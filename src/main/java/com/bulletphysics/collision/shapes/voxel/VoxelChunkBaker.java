@@ -0,0 +1,257 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.BvhTriangleMeshShape;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.TriangleIndexVertexArray;
+
+import javax.vecmath.Vector3f;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+
+/**
+ * Bakes a chunk into a {@link BakedVoxelChunk}. The voxels are copied on the simulation thread by {@link #snapshot},
+ * meshing and building the bvh happen in {@link #run}, which may be called from any thread. The finished baker is added
+ * to the given queue, to be swapped in by the simulation thread.
+ */
+class VoxelChunkBaker implements Runnable {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static final byte EMPTY = 0;
+    private static final byte CUBE = 1;
+    private static final byte OTHER = 2;
+
+    // identifies the chunk state the snapshot was taken from
+    final Object token;
+
+    private final int chunkX;
+    private final int chunkY;
+    private final int chunkZ;
+    private final int[] size;
+    private final Vector3f origin = new Vector3f();
+    // voxels of the chunk plus a border of one voxel, indexed by index(x, y, z)
+    private final byte[] cells;
+    private final float friction;
+    private final float restitution;
+    private final Queue<VoxelChunkBaker> completed;
+
+    private BakedVoxelChunk result;
+
+    private float[] vertices = new float[3 * 64];
+    private int numVertices;
+
+    private VoxelChunkBaker(Object token, int chunkX, int chunkY, int chunkZ, int[] size, byte[] cells, float friction, float restitution, Queue<VoxelChunkBaker> completed) {
+        this.token = token;
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.chunkZ = chunkZ;
+        this.size = size;
+        this.cells = cells;
+        this.friction = friction;
+        this.restitution = restitution;
+        this.completed = completed;
+        origin.set(chunkX * size[0], chunkY * size[1], chunkZ * size[2]);
+    }
+
+    /**
+     * Copies the content of a chunk and its neighbouring voxels.
+     *
+     * @return The baker, or null if the chunk cannot be baked. Only chunks whose blocking voxels are all unit cubes with
+     *         the same friction and restitution can be baked.
+     */
+    static VoxelChunkBaker snapshot(VoxelPhysicsWorld world, int chunkX, int chunkY, int chunkZ, int sizeX, int sizeY, int sizeZ, Object token, Queue<VoxelChunkBaker> completed) {
+        int[] size = new int[]{sizeX, sizeY, sizeZ};
+        byte[] cells = new byte[(sizeX + 2) * (sizeY + 2) * (sizeZ + 2)];
+        int minX = chunkX * sizeX;
+        int minY = chunkY * sizeY;
+        int minZ = chunkZ * sizeZ;
+        boolean hasCubes = false;
+        float friction = 0f;
+        float restitution = 0f;
+        Vector3f tmp = new Vector3f();
+
+        for (int z = -1; z <= sizeZ; z++) {
+            for (int y = -1; y <= sizeY; y++) {
+                for (int x = -1; x <= sizeX; x++) {
+                    VoxelInfo info = world.getCollisionShapeAt(minX + x, minY + y, minZ + z);
+                    byte cell = EMPTY;
+                    if (info != null && info.isBlocking()) {
+                        cell = isUnitCube(info, tmp) ? CUBE : OTHER;
+                    }
+                    boolean inside = x >= 0 && x < sizeX && y >= 0 && y < sizeY && z >= 0 && z < sizeZ;
+                    if (inside && cell == OTHER) {
+                        return null;
+                    }
+                    if (inside && cell == CUBE) {
+                        if (!hasCubes) {
+                            friction = info.getFriction();
+                            restitution = info.getRestitution();
+                            hasCubes = true;
+                        } else if (info.getFriction() != friction || info.getRestitution() != restitution) {
+                            return null;
+                        }
+                    }
+                    cells[((z + 1) * (sizeY + 2) + (y + 1)) * (sizeX + 2) + (x + 1)] = cell;
+                }
+            }
+        }
+        return new VoxelChunkBaker(token, chunkX, chunkY, chunkZ, size, cells, friction, restitution, completed);
+    }
+
+    private static boolean isUnitCube(VoxelInfo info, Vector3f tmp) {
+        CollisionShape shape = info.getCollisionShape();
+        if (!(shape instanceof BoxShape)) {
+            return false;
+        }
+        ((BoxShape) shape).getHalfExtentsWithMargin(tmp);
+        if (Math.abs(tmp.x - 0.5f) > EPSILON || Math.abs(tmp.y - 0.5f) > EPSILON || Math.abs(tmp.z - 0.5f) > EPSILON) {
+            return false;
+        }
+        Vector3f offset = info.getCollisionOffset();
+        return Math.abs(offset.x) <= EPSILON && Math.abs(offset.y) <= EPSILON && Math.abs(offset.z) <= EPSILON;
+    }
+
+    BakedVoxelChunk getResult() {
+        return result;
+    }
+
+    public void run() {
+        int[] pos = new int[3];
+        int[] neighbour = new int[3];
+
+        // greedy meshing of the exposed faces, separately for each of the six face directions
+        for (int axis = 0; axis < 3; axis++) {
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            boolean[] mask = new boolean[size[u] * size[v]];
+
+            for (int dir = -1; dir <= 1; dir += 2) {
+                for (int slice = 0; slice < size[axis]; slice++) {
+                    pos[axis] = slice;
+                    neighbour[axis] = slice + dir;
+                    for (int k = 0; k < size[v]; k++) {
+                        for (int j = 0; j < size[u]; j++) {
+                            pos[u] = neighbour[u] = j;
+                            pos[v] = neighbour[v] = k;
+                            // only faces between cubes are hidden, other shapes may not cover the whole face
+                            mask[j + k * size[u]] = getCell(pos) == CUBE && getCell(neighbour) != CUBE;
+                        }
+                    }
+
+                    for (int k = 0; k < size[v]; k++) {
+                        for (int j = 0; j < size[u]; ) {
+                            if (!mask[j + k * size[u]]) {
+                                j++;
+                                continue;
+                            }
+                            int width = 1;
+                            while (j + width < size[u] && mask[j + width + k * size[u]]) {
+                                width++;
+                            }
+                            int height = 1;
+                            grow:
+                            while (k + height < size[v]) {
+                                for (int n = 0; n < width; n++) {
+                                    if (!mask[j + n + (k + height) * size[u]]) {
+                                        break grow;
+                                    }
+                                }
+                                height++;
+                            }
+                            for (int m = 0; m < height; m++) {
+                                for (int n = 0; n < width; n++) {
+                                    mask[j + n + (k + m) * size[u]] = false;
+                                }
+                            }
+                            addQuad(axis, dir, slice + dir * 0.5f, j - 0.5f, k - 0.5f, j + width - 0.5f, k + height - 0.5f);
+                            j += width;
+                        }
+                    }
+                }
+            }
+        }
+
+        BvhTriangleMeshShape shape = null;
+        if (numVertices > 0) {
+            int numTriangles = numVertices / 2;
+            ByteBuffer vertexBuffer = ByteBuffer.allocate(numVertices * 3 * 4).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < numVertices * 3; i++) {
+                vertexBuffer.putFloat(vertices[i]);
+            }
+            vertexBuffer.flip();
+            ByteBuffer indexBuffer = ByteBuffer.allocate(numTriangles * 3 * 4).order(ByteOrder.nativeOrder());
+            for (int quad = 0; quad < numVertices; quad += 4) {
+                indexBuffer.putInt(quad).putInt(quad + 1).putInt(quad + 2);
+                indexBuffer.putInt(quad).putInt(quad + 2).putInt(quad + 3);
+            }
+            indexBuffer.flip();
+
+            TriangleIndexVertexArray mesh = new TriangleIndexVertexArray(numTriangles, indexBuffer, 3 * 4, numVertices, vertexBuffer, 3 * 4);
+            shape = new BvhTriangleMeshShape(mesh, true);
+        }
+        vertices = null;
+
+        result = new BakedVoxelChunk(chunkX, chunkY, chunkZ, origin, shape, friction, restitution);
+        completed.add(this);
+    }
+
+    private byte getCell(int[] pos) {
+        return cells[((pos[2] + 1) * (size[1] + 2) + (pos[1] + 1)) * (size[0] + 2) + (pos[0] + 1)];
+    }
+
+    /**
+     * Adds a quad in the plane at the given position along the axis, wound counter-clockwise when seen from the direction
+     * the face points to.
+     */
+    private void addQuad(int axis, int dir, float plane, float minU, float minV, float maxU, float maxV) {
+        if (dir > 0) {
+            addVertex(axis, plane, minU, minV);
+            addVertex(axis, plane, maxU, minV);
+            addVertex(axis, plane, maxU, maxV);
+            addVertex(axis, plane, minU, maxV);
+        } else {
+            addVertex(axis, plane, minU, minV);
+            addVertex(axis, plane, minU, maxV);
+            addVertex(axis, plane, maxU, maxV);
+            addVertex(axis, plane, maxU, minV);
+        }
+    }
+
+    private void addVertex(int axis, float plane, float posU, float posV) {
+        if (vertices.length < (numVertices + 1) * 3) {
+            float[] newVertices = new float[vertices.length * 2];
+            System.arraycopy(vertices, 0, newVertices, 0, vertices.length);
+            vertices = newVertices;
+        }
+        int i = numVertices * 3;
+        vertices[i + axis] = plane;
+        vertices[i + (axis + 1) % 3] = posU;
+        vertices[i + (axis + 2) % 3] = posV;
+        numVertices++;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Voxel world extension (c) 2012 Steven Brooker <immortius@gmail.com>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.collision.shapes.voxel;
+
+/**
+ * Receives per-chunk occupancy summaries from a {@link ChunkedVoxelPhysicsWorld}.
+ */
+public interface VoxelChunkListener {
+
+    /**
+     * Called whenever a chunk is loaded, or one of its voxels has changed.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param occupancy     The occupancy of the chunk as a whole
+     * @param occupancyMask Coarse occupancy of the chunk, split into 4x4x4 sub-regions. Bit
+     *                      {@code subX + 4 * subY + 16 * subZ} is set if any voxel of that sub-region can be collided with.
+     *                      See {@link ChunkedVoxelWorldShape#getOccupancyBit}.
+     */
+    void chunkUpdated(int chunkX, int chunkY, int chunkZ, VoxelOccupancy occupancy, long occupancyMask);
+
+    /**
+     * Called when a chunk is unloaded. Nothing is known about its content until it is updated again.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     */
+    void chunkRemoved(int chunkX, int chunkY, int chunkZ);
+}
@@ -28,6 +28,8 @@ import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.linearmath.Transform;
 
 import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Immortius
@@ -35,6 +37,7 @@ import javax.vecmath.Vector3f;
 public class VoxelWorldShape extends CollisionShape {
     public static final int AABB_SIZE = Integer.MAX_VALUE;
     private VoxelPhysicsWorld world;
+    private final List<VoxelChangeListener> changeListeners = new ArrayList<VoxelChangeListener>();
 
     private float collisionMargin = 0f;
     protected final Vector3f localScaling = new Vector3f(1f, 1f, 1f);
@@ -55,6 +58,7 @@ public class VoxelWorldShape extends CollisionShape {
     @Override
     public void setLocalScaling(Vector3f scaling) {
         localScaling.set(scaling);
+        invalidateLocalBounds();
     }
 
     @Override
@@ -76,6 +80,7 @@ public class VoxelWorldShape extends CollisionShape {
     @Override
     public void setMargin(float margin) {
         collisionMargin = margin;
+        invalidateLocalBounds();
     }
 
     @Override
@@ -91,4 +96,79 @@ public class VoxelWorldShape extends CollisionShape {
     public VoxelPhysicsWorld getWorld() {
         return world;
     }
+
+    public void addChangeListener(VoxelChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(VoxelChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Notifies the shape that a voxel has changed, so that objects resting on or touching it are woken up and their
+     * contacts with it are regenerated. Must be called from the thread running the simulation.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void voxelChanged(int x, int y, int z) {
+        voxelsChanged(x, y, z, x, y, z);
+    }
+
+    /**
+     * Notifies the shape that voxels in the given (inclusive) region have changed.
+     *
+     * @see #voxelChanged(int, int, int)
+     */
+    public void voxelsChanged(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int i = 0; i < changeListeners.size(); i++) {
+            changeListeners.get(i).voxelsChanged(this, minX, minY, minZ, maxX, maxY, maxZ);
+        }
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param z
+     * @return What is known about the area containing the given voxel. MIXED if the voxel has to be looked up.
+     */
+    public VoxelOccupancy getOccupancy(int x, int y, int z) {
+        return VoxelOccupancy.MIXED;
+    }
+
+    /**
+     * @return Whether the given (inclusive) region is known to contain no voxel that can be collided with. This is only a
+     *         quick check, false does not mean that there is such a voxel in the region.
+     */
+    public boolean isEmpty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        return false;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param z
+     * @return The baked chunk containing the given voxel, or null if the voxel is handled on its own.
+     */
+    public BakedVoxelChunk getBakedChunk(int x, int y, int z) {
+        return null;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param z
+     * @return Whether the voxel and all voxels sharing a face with it are known to be blocking.
+     */
+    public boolean isInterior(int x, int y, int z) {
+        return getOccupancy(x, y, z) == VoxelOccupancy.SOLID
+                && getOccupancy(x - 1, y, z) == VoxelOccupancy.SOLID
+                && getOccupancy(x + 1, y, z) == VoxelOccupancy.SOLID
+                && getOccupancy(x, y - 1, z) == VoxelOccupancy.SOLID
+                && getOccupancy(x, y + 1, z) == VoxelOccupancy.SOLID
+                && getOccupancy(x, y, z - 1) == VoxelOccupancy.SOLID
+                && getOccupancy(x, y, z + 1) == VoxelOccupancy.SOLID;
+    }
 }
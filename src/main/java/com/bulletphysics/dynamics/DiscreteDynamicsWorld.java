@@ -25,12 +25,14 @@ package com.bulletphysics.dynamics;
 
 import com.bulletphysics.BulletGlobals;
 import com.bulletphysics.BulletStats;
+import com.bulletphysics.collision.broadphase.BroadphaseAabbCallback;
 import com.bulletphysics.collision.broadphase.BroadphaseInterface;
 import com.bulletphysics.collision.broadphase.BroadphasePair;
 import com.bulletphysics.collision.broadphase.BroadphaseProxy;
 import com.bulletphysics.collision.broadphase.CollisionFilterGroups;
 import com.bulletphysics.collision.broadphase.Dispatcher;
 import com.bulletphysics.collision.broadphase.DispatcherInfo;
+import com.bulletphysics.collision.broadphase.HashedOverlappingPairCache;
 import com.bulletphysics.collision.broadphase.OverlappingPairCache;
 import com.bulletphysics.collision.dispatch.CollisionConfiguration;
 import com.bulletphysics.collision.dispatch.CollisionObject;
@@ -39,6 +41,7 @@ import com.bulletphysics.collision.dispatch.SimulationIslandManager;
 import com.bulletphysics.collision.narrowphase.ManifoldPoint;
 import com.bulletphysics.collision.narrowphase.PersistentManifold;
 import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.ConvexShape;
 import com.bulletphysics.collision.shapes.SphereShape;
 import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
 import com.bulletphysics.dynamics.constraintsolver.ContactSolverInfo;
@@ -49,14 +52,22 @@ import com.bulletphysics.linearmath.AabbUtil2;
 import com.bulletphysics.linearmath.CProfileManager;
 import com.bulletphysics.linearmath.DebugDrawModes;
 import com.bulletphysics.linearmath.IDebugDraw;
-import com.bulletphysics.linearmath.MiscUtil;
 import com.bulletphysics.linearmath.ScalarUtil;
 import com.bulletphysics.linearmath.Transform;
 import com.bulletphysics.linearmath.TransformUtil;
+import com.bulletphysics.linearmath.VectorUtil;
 import com.bulletphysics.util.ObjectArrayList;
 
+import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
-import java.util.Comparator;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * DiscreteDynamicsWorld provides discrete rigid body simulation.
@@ -83,6 +94,81 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
     protected int profileTimings = 0;
 
+    public static final int TRANSFORM_EXPORT_STRIDE = 7;
+
+    // fixed stepping policy, see setMaxCatchUpSubSteps and setStepTimeBudget
+    protected boolean synchronizeEachSubStep = true;
+    protected int maxCatchUpSubSteps = 0;
+    protected float stepTimeBudget = 0f;
+    protected int pendingSubSteps;
+    protected int lastNumSubSteps;
+    protected float lastDroppedTime;
+    protected float totalDroppedTime;
+    protected float averageSubStepTime;
+
+    private final AwakenInAreaCallback awakenInAreaCallback = new AwakenInAreaCallback();
+
+    // bulk transform export, see setTransformExportBuffers
+    protected FloatBuffer exportTransforms;
+    protected IntBuffer exportIds;
+    protected int numExportedTransforms;
+    protected int numOverflowedTransforms;
+    protected int exportCursor;
+    private final Transform exportTransform = new Transform();
+    private final Quat4f exportRotation = new Quat4f();
+    private final Transform exportTmpTrans = new Transform();
+    private final Vector3f exportLinVel = new Vector3f();
+    private final Vector3f exportAngVel = new Vector3f();
+
+    // dynamic bodies that are active, see updateActiveBodies
+    protected final ObjectArrayList<RigidBody> activeBodies = new ObjectArrayList<RigidBody>();
+    // bodies whose activation state or flags changed since the last update
+    private final ObjectArrayList<RigidBody> activationChanges = new ObjectArrayList<RigidBody>();
+    // bodies that left the active bodies and still need their transform synchronized once
+    private final ObjectArrayList<RigidBody> deactivatedBodies = new ObjectArrayList<RigidBody>();
+    // set when an activated body has sleeping pairs, see wakeUpSleepingPairs
+    private boolean pairWakeUpPending;
+    // collision objects that are not rigid bodies, their activation is not tracked
+    private final ObjectArrayList<CollisionObject> otherObjects = new ObjectArrayList<CollisionObject>();
+
+    // bodies whose transform changed in the last stepSimulation call, see getChangedBodies
+    protected final ObjectArrayList<RigidBody> changedBodies = new ObjectArrayList<RigidBody>();
+    private int changedBodiesStamp;
+    // inactive bodies that had forces applied, cleared with the active bodies
+    private final ObjectArrayList<RigidBody> forceChanges = new ObjectArrayList<RigidBody>();
+    // inactive bodies whose transform changed, active bodies are checked directly
+    private final ObjectArrayList<RigidBody> transformChanges = new ObjectArrayList<RigidBody>();
+    // bodies changed since the last motion state synchronization
+    private final ObjectArrayList<RigidBody> dirtyBodies = new ObjectArrayList<RigidBody>();
+    private float synchronizedLocalTime = Float.NaN;
+
+    // optional structure of arrays state for integration, see setUseBodyStateStore
+    protected RigidBodyStateStore bodyStateStore;
+
+    // parallel per-body phases, see setNumTasks
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final int MIN_CCD_CHUNK_SIZE = 4;
+    private static final int CHUNKS_PER_TASK = 4;
+    protected ForkJoinPool taskPool;
+    protected int numTasks = 1;
+    private final ObjectArrayList<ChunkTask> chunkTasks = new ObjectArrayList<ChunkTask>();
+    private final List<ChunkTask> chunkTaskList = new ArrayList<ChunkTask>();
+    // set while activation changes are collected by the parallel tasks
+    private boolean deferActivationChanges;
+    private float[] aabbs = new float[0];
+
+    private final PredictUnconstraintMotionLoop predictUnconstraintMotionLoop = new PredictUnconstraintMotionLoop();
+    private final IntegrateTransformsLoop integrateTransformsLoop = new IntegrateTransformsLoop();
+    private final UpdateActivationStateLoop updateActivationStateLoop = new UpdateActivationStateLoop();
+    private final CalculateAabbsLoop calculateAabbsLoop = new CalculateAabbsLoop();
+    private final ResolveCcdSweepsLoop resolveCcdSweepsLoop = new ResolveCcdSweepsLoop();
+
+    // batched CCD motion clamping, see setUseBatchedCcd
+    protected boolean useBatchedCcd;
+    protected final ObjectArrayList<RigidBody> ccdBodies = new ObjectArrayList<RigidBody>();
+    private final ObjectArrayList<CcdSweep> ccdSweeps = new ObjectArrayList<CcdSweep>();
+    private final CcdCandidateCallback ccdCandidateCallback = new CcdCandidateCallback();
+
     public DiscreteDynamicsWorld(Dispatcher dispatcher, BroadphaseInterface pairCache, ConstraintSolver constraintSolver, CollisionConfiguration collisionConfiguration) {
         super(dispatcher, pairCache, collisionConfiguration);
         this.constraintSolver = constraintSolver;
@@ -101,6 +187,12 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         ownsIslandManager = true;
     }
 
+    @Override
+    public void destroy() {
+        super.destroy();
+        setNumTasks(1);
+    }
+
     protected void saveKinematicState(float timeStep) {
         for (int i = 0; i < collisionObjects.size(); i++) {
             CollisionObject colObj = collisionObjects.getQuick(i);
@@ -118,17 +210,8 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
     }
 
     public void awakenRigidBodiesInArea(Vector3f min, Vector3f max) {
-        for (int i = 0; i < collisionObjects.size(); i++) {
-            CollisionObject collisionObject = collisionObjects.getQuick(i);
-            if (!collisionObject.isStaticOrKinematicObject() && !collisionObject.isActive()) {
-                Vector3f otherMin = new Vector3f();
-                Vector3f otherMax = new Vector3f();
-                collisionObject.getCollisionShape().getAabb(collisionObject.getWorldTransform(new Transform()), otherMin, otherMax);
-                if (AabbUtil2.testAabbAgainstAabb2(min, max, otherMin, otherMax)) {
-                    collisionObject.activate();
-                }
-            }
-        }
+        awakenInAreaCallback.init(min, max);
+        aabbTest(min, max, awakenInAreaCallback);
     }
 
     @Override
@@ -232,58 +315,265 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         }
     }
 
+    /**
+     * Clears forces of active bodies and of inactive bodies that had forces applied
+     * since the last call.
+     */
     @Override
     public void clearForces() {
-        // todo: iterate over awake simulation islands!
-        for (int i = 0; i < collisionObjects.size(); i++) {
-            CollisionObject colObj = collisionObjects.getQuick(i);
-
-            RigidBody body = RigidBody.upcast(colObj);
-            if (body != null) {
+        updateActiveBodies();
+        for (int i = 0; i < activeBodies.size(); i++) {
+            activeBodies.getQuick(i).clearForces();
+        }
+        for (int i = 0; i < forceChanges.size(); i++) {
+            RigidBody body = forceChanges.getQuick(i);
+            if (body.dynamicsWorld == this) {
+                body.forceChangeQueued = false;
                 body.clearForces();
             }
         }
+        forceChanges.clear();
+    }
+
+    void queueForceChange(RigidBody body) {
+        forceChanges.add(body);
     }
 
     /**
      * Apply gravity, call this once per timestep.
      */
     public void applyGravity() {
-        // todo: iterate over awake simulation islands!
-        for (int i = 0; i < collisionObjects.size(); i++) {
-            CollisionObject colObj = collisionObjects.getQuick(i);
+        updateActiveBodies();
+        for (int i = 0; i < activeBodies.size(); i++) {
+            activeBodies.getQuick(i).applyGravity();
+        }
+    }
 
-            RigidBody body = RigidBody.upcast(colObj);
-            if (body != null && body.isActive()) {
-                body.applyGravity();
+    /**
+     * Updates the array of active dynamic bodies from bodies whose activation state
+     * or collision flags changed since the last update. Called at the start of each
+     * per-body phase of the step, so the cost depends on the number of changes
+     * rather than the number of bodies in the world.
+     */
+    protected void updateActiveBodies() {
+        for (int i = 0; i < activationChanges.size(); i++) {
+            RigidBody body = activationChanges.getQuick(i);
+            if (body.dynamicsWorld != this) {
+                // removed from the world meanwhile
+                continue;
+            }
+            body.activationChangeQueued = false;
+
+            if (!pairWakeUpPending && needsPairWakeUp(body)) {
+                pairWakeUpPending = true;
+            }
+
+            if (body.isActive() && !body.isStaticOrKinematicObject()) {
+                if (body.activeIndex < 0) {
+                    body.activeIndex = activeBodies.size();
+                    activeBodies.add(body);
+                }
+            } else {
+                if (body.activeIndex >= 0) {
+                    removeActiveBody(body);
+                    body.clearForces();
+                }
+                deactivatedBodies.add(body);
             }
         }
+        activationChanges.clear();
     }
 
-    protected void synchronizeMotionStates() {
-        Transform interpolatedTransform = new Transform();
+    /**
+     * Wakes up sleeping pairs only when a body with sleeping pairs was activated since
+     * the last call, as found by {@link #updateActiveBodies}, so resting pairs don't
+     * cost anything per step. Objects other than rigid bodies are checked directly.
+     */
+    @Override
+    protected void wakeUpSleepingPairs() {
+        updateActiveBodies();
+
+        if (!pairWakeUpPending) {
+            for (int i = 0; i < otherObjects.size(); i++) {
+                if (needsPairWakeUp(otherObjects.getQuick(i))) {
+                    pairWakeUpPending = true;
+                    break;
+                }
+            }
+        }
 
-        Transform tmpTrans = new Transform();
-        Vector3f tmpLinVel = new Vector3f();
-        Vector3f tmpAngVel = new Vector3f();
+        if (pairWakeUpPending) {
+            pairWakeUpPending = false;
+            OverlappingPairCache pairCache = getBroadphase().getOverlappingPairCache();
+            if (pairCache instanceof HashedOverlappingPairCache) {
+                ((HashedOverlappingPairCache) pairCache).wakeUpSleepingPairs();
+            }
+        }
+    }
 
-        // todo: iterate over awake simulation islands!
-        for (int i = 0; i < collisionObjects.size(); i++) {
-            CollisionObject colObj = collisionObjects.getQuick(i);
+    private boolean needsPairWakeUp(CollisionObject colObj) {
+        BroadphaseProxy proxy = colObj.getBroadphaseHandle();
+        OverlappingPairCache pairCache = getBroadphase().getOverlappingPairCache();
+        return proxy != null && pairCache instanceof HashedOverlappingPairCache && ((HashedOverlappingPairCache) pairCache).needsWakeUp(proxy);
+    }
 
-            RigidBody body = RigidBody.upcast(colObj);
-            if (body != null && body.getMotionState() != null && !body.isStaticOrKinematicObject()) {
-                // we need to call the update at least once, even for sleeping objects
-                // otherwise the 'graphics' transform never updates properly
-                // so todo: add 'dirty' flag
-                //if (body->getActivationState() != ISLAND_SLEEPING)
-                {
-                    TransformUtil.integrateTransform(
-                            body.getInterpolationWorldTransform(tmpTrans),
-                            body.getInterpolationLinearVelocity(tmpLinVel),
-                            body.getInterpolationAngularVelocity(tmpAngVel),
-                            localTime * body.getHitFraction(), interpolatedTransform);
-                    body.getMotionState().setWorldTransform(interpolatedTransform);
+    void queueActivationChange(RigidBody body) {
+        // changes made by parallel tasks are queued by the tasks, in the order of bodies
+        if (!deferActivationChanges) {
+            activationChanges.add(body);
+        }
+    }
+
+    private void removeActiveBody(RigidBody body) {
+        int index = body.activeIndex;
+        if (index < 0) {
+            return;
+        }
+        int last = activeBodies.size() - 1;
+        RigidBody lastBody = activeBodies.getQuick(last);
+        activeBodies.setQuick(index, lastBody);
+        lastBody.activeIndex = index;
+        activeBodies.removeQuick(last);
+        body.activeIndex = -1;
+    }
+
+    /**
+     * Enables {@link RigidBodyStateStore}, which runs integration of active bodies as
+     * batch loops over contiguous arrays. Results can differ from the per-body path
+     * by rounding.
+     */
+    public void setUseBodyStateStore(boolean useBodyStateStore) {
+        if (useBodyStateStore) {
+            if (bodyStateStore == null) {
+                bodyStateStore = new RigidBodyStateStore();
+            }
+        } else {
+            bodyStateStore = null;
+        }
+    }
+
+    public boolean getUseBodyStateStore() {
+        return bodyStateStore != null;
+    }
+
+    /**
+     * Enables batched CCD motion clamping. Fast bodies are collected during integration,
+     * candidates of their swept spheres are taken from the broadphase instead of testing
+     * all collision objects, and times of impact are resolved for all of them at once
+     * (in parallel when tasks are enabled, see {@link #setNumTasks}). Sweeps don't see
+     * the clamped motion of other fast bodies in the same step.
+     */
+    public void setUseBatchedCcd(boolean useBatchedCcd) {
+        this.useBatchedCcd = useBatchedCcd;
+    }
+
+    public boolean getUseBatchedCcd() {
+        return useBatchedCcd;
+    }
+
+    /**
+     * When disabled, motion states are synchronized once per stepSimulation call instead
+     * of after every substep. Actions that read the motion states during the step (such
+     * as RaycastVehicle) then see the transforms of the previous call. Enabled by default.
+     */
+    public void setSynchronizeEachSubStep(boolean synchronizeEachSubStep) {
+        this.synchronizeEachSubStep = synchronizeEachSubStep;
+    }
+
+    public boolean getSynchronizeEachSubStep() {
+        return synchronizeEachSubStep;
+    }
+
+    /**
+     * Sets how many fixed substeps skipped by the maxSubSteps or time budget clamping
+     * are kept and simulated by the following stepSimulation calls. Skipped substeps
+     * over this limit are dropped, see {@link #getLastDroppedTime}. Default is 0, all
+     * skipped time is dropped.
+     */
+    public void setMaxCatchUpSubSteps(int maxCatchUpSubSteps) {
+        this.maxCatchUpSubSteps = maxCatchUpSubSteps;
+        pendingSubSteps = Math.min(pendingSubSteps, maxCatchUpSubSteps);
+    }
+
+    public int getMaxCatchUpSubSteps() {
+        return maxCatchUpSubSteps;
+    }
+
+    /**
+     * Sets wall clock time in seconds available for the substeps of one stepSimulation
+     * call. The number of substeps is reduced using the measured average substep time,
+     * at least one substep is always simulated. Zero (default) disables the budget.
+     */
+    public void setStepTimeBudget(float stepTimeBudget) {
+        this.stepTimeBudget = stepTimeBudget;
+    }
+
+    public float getStepTimeBudget() {
+        return stepTimeBudget;
+    }
+
+    /**
+     * Returns number of fixed substeps simulated by the last stepSimulation call.
+     */
+    public int getLastNumSubSteps() {
+        return lastNumSubSteps;
+    }
+
+    /**
+     * Returns number of skipped substeps waiting to be caught up.
+     */
+    public int getNumPendingSubSteps() {
+        return pendingSubSteps;
+    }
+
+    /**
+     * Returns simulation time dropped by the last stepSimulation call.
+     */
+    public float getLastDroppedTime() {
+        return lastDroppedTime;
+    }
+
+    public float getTotalDroppedTime() {
+        return totalDroppedTime;
+    }
+
+    public void resetTotalDroppedTime() {
+        totalDroppedTime = 0f;
+    }
+
+    /**
+     * Returns moving average of wall clock time of one substep in seconds.
+     */
+    public float getAverageSubStepTime() {
+        return averageSubStepTime;
+    }
+
+    /**
+     * Returns dynamic bodies that were active at the last per-body phase of the step.
+     * The order of bodies is not stable.
+     */
+    public ObjectArrayList<RigidBody> getActiveBodies() {
+        return activeBodies;
+    }
+
+    protected void synchronizeMotionStates() {
+        updateActiveBodies();
+
+        dirtyBodies.clear();
+        collectDirtyBodies(deactivatedBodies, dirtyBodies);
+        int numDirtyDeactivated = dirtyBodies.size();
+        collectDirtyBodies(activeBodies, dirtyBodies);
+        collectDirtyBodies(transformChanges, dirtyBodies);
+        transformChanges.clear();
+
+        if (exportTransforms == null) {
+            synchronizeBodyMotionStates(numDirtyDeactivated);
+        } else {
+            // sleeping bodies that were moved are exported again, see exportTransforms
+            for (int i = numDirtyDeactivated; i < dirtyBodies.size(); i++) {
+                RigidBody body = dirtyBodies.getQuick(i);
+                if (body.activeIndex < 0) {
+                    deactivatedBodies.add(body);
                 }
             }
         }
@@ -298,6 +588,217 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         }
     }
 
+    private void synchronizeBodyMotionStates(int numDirtyDeactivated) {
+        Transform interpolatedTransform = new Transform();
+
+        Transform tmpTrans = new Transform();
+        Vector3f tmpLinVel = new Vector3f();
+        Vector3f tmpAngVel = new Vector3f();
+
+        // active bodies are extrapolated by localTime, all of them are updated when it changes
+        boolean interpolationChanged = (localTime != synchronizedLocalTime);
+        synchronizedLocalTime = localTime;
+
+        // sleeping bodies are updated once when they leave the active bodies, and then only when moved
+        for (int i = 0; i < deactivatedBodies.size(); i++) {
+            RigidBody body = deactivatedBodies.getQuick(i);
+            if (body.dynamicsWorld == this) {
+                synchronizeBodyMotionState(body, interpolatedTransform, tmpTrans, tmpLinVel, tmpAngVel);
+            }
+        }
+        deactivatedBodies.clear();
+
+        for (int i = numDirtyDeactivated; i < dirtyBodies.size(); i++) {
+            RigidBody body = dirtyBodies.getQuick(i);
+            if (!interpolationChanged || body.activeIndex < 0) {
+                synchronizeBodyMotionState(body, interpolatedTransform, tmpTrans, tmpLinVel, tmpAngVel);
+            }
+        }
+
+        if (interpolationChanged) {
+            for (int i = 0; i < activeBodies.size(); i++) {
+                synchronizeBodyMotionState(activeBodies.getQuick(i), interpolatedTransform, tmpTrans, tmpLinVel, tmpAngVel);
+            }
+        }
+    }
+
+    void queueTransformChange(RigidBody body) {
+        transformChanges.add(body);
+    }
+
+    /**
+     * Adds bodies with changed transform to the given list and to the changed bodies
+     * of the current step, and clears their dirty flag.
+     */
+    private void collectDirtyBodies(ObjectArrayList<RigidBody> bodies, ObjectArrayList<RigidBody> out) {
+        for (int i = 0; i < bodies.size(); i++) {
+            RigidBody body = bodies.getQuick(i);
+            if (body.transformDirty && body.dynamicsWorld == this) {
+                body.transformDirty = false;
+                out.add(body);
+                if (body.changedBodiesStamp != changedBodiesStamp) {
+                    body.changedBodiesStamp = changedBodiesStamp;
+                    changedBodies.add(body);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns rigid bodies whose transform changed during the last stepSimulation call,
+     * either by the simulation or by setting the transform since the previous call.
+     * Newly added bodies are reported by their first call. Each body is contained once,
+     * the order of bodies is not stable.
+     */
+    public ObjectArrayList<RigidBody> getChangedBodies() {
+        return changedBodies;
+    }
+
+    private void synchronizeBodyMotionState(RigidBody body, Transform interpolatedTransform, Transform tmpTrans, Vector3f tmpLinVel, Vector3f tmpAngVel) {
+        if (body.getMotionState() != null && !body.isStaticOrKinematicObject()) {
+            TransformUtil.integrateTransform(
+                    body.getInterpolationWorldTransform(tmpTrans),
+                    body.getInterpolationLinearVelocity(tmpLinVel),
+                    body.getInterpolationAngularVelocity(tmpAngVel),
+                    localTime * body.getHitFraction(), interpolatedTransform);
+            body.getMotionState().setWorldTransform(interpolatedTransform);
+        }
+    }
+
+    /**
+     * Writes interpolated transforms of dynamic bodies into the export buffers. Active
+     * bodies are written every step, sleeping bodies only once after they fall asleep
+     * or after their transform is set.
+     */
+    protected void exportTransforms() {
+        updateActiveBodies();
+
+        FloatBuffer transforms = exportTransforms;
+        IntBuffer ids = exportIds;
+        transforms.clear();
+        ids.clear();
+        int capacity = Math.min(transforms.capacity() / TRANSFORM_EXPORT_STRIDE, ids.capacity());
+        int count = 0;
+
+        // sleeping bodies are exported once, bodies that didn't fit stay for the next step
+        int numDeactivated = deactivatedBodies.size();
+        int numKept = 0;
+        for (int i = 0; i < numDeactivated; i++) {
+            RigidBody body = deactivatedBodies.getQuick(i);
+            if (body.dynamicsWorld != this || body.isActive() || body.isStaticOrKinematicObject() || body.sleepingTransformExported) {
+                continue;
+            }
+            if (count < capacity) {
+                body.sleepingTransformExported = true;
+                exportTransform(body, count++, !body.sleepingTransformSet);
+            } else {
+                deactivatedBodies.setQuick(numKept++, body);
+            }
+        }
+        while (deactivatedBodies.size() > numKept) {
+            deactivatedBodies.removeQuick(deactivatedBodies.size() - 1);
+        }
+
+        // active bodies that didn't fit are exported first in the next step
+        int numActive = activeBodies.size();
+        int start = numActive > 0 ? exportCursor % numActive : 0;
+        int numOverflowed = numKept;
+        int next = start;
+        for (int i = 0; i < numActive; i++) {
+            int index = (start + i) % numActive;
+            RigidBody body = activeBodies.getQuick(index);
+            body.sleepingTransformExported = false;
+            body.sleepingTransformSet = false;
+            if (count < capacity) {
+                exportTransform(body, count++, true);
+                next = index + 1;
+            } else {
+                numOverflowed++;
+            }
+        }
+        exportCursor = numOverflowed > 0 ? next : 0;
+
+        transforms.limit(count * TRANSFORM_EXPORT_STRIDE).position(0);
+        ids.limit(count).position(0);
+        numExportedTransforms = count;
+        numOverflowedTransforms = numOverflowed;
+    }
+
+    private void exportTransform(RigidBody body, int count, boolean interpolate) {
+        if (interpolate) {
+            TransformUtil.integrateTransform(
+                    body.getInterpolationWorldTransform(exportTmpTrans),
+                    body.getInterpolationLinearVelocity(exportLinVel),
+                    body.getInterpolationAngularVelocity(exportAngVel),
+                    localTime * body.getHitFraction(), exportTransform);
+        } else {
+            // set by setWorldTransform, which doesn't update the interpolation transform
+            body.getWorldTransform(exportTransform);
+        }
+        exportTransform.getRotation(exportRotation);
+
+        FloatBuffer transforms = exportTransforms;
+        int index = count * TRANSFORM_EXPORT_STRIDE;
+        transforms.put(index, exportTransform.origin.x);
+        transforms.put(index + 1, exportTransform.origin.y);
+        transforms.put(index + 2, exportTransform.origin.z);
+        transforms.put(index + 3, exportRotation.x);
+        transforms.put(index + 4, exportRotation.y);
+        transforms.put(index + 5, exportRotation.z);
+        transforms.put(index + 6, exportRotation.w);
+        exportIds.put(count, body.getUserIndex());
+    }
+
+    /**
+     * Enables bulk export of transforms instead of calling {@link MotionState}s of bodies.
+     * After each {@link #stepSimulation} the transforms buffer contains interpolated
+     * position (x, y, z) and rotation quaternion (x, y, z, w) of each dynamic body that
+     * moved, and the ids buffer contains their {@link CollisionObject#getUserIndex user index}.
+     * Both buffers are set up for reading (position 0, limit at the end of written data).<p>
+     *
+     * The buffers should have room for all dynamic bodies. Bodies that don't fit are
+     * exported first in the next steps (the order of active bodies is not stable, so
+     * this is best effort), {@link #getNumOverflowedTransforms} reports how many bodies
+     * were left out. Pass null to switch back to motion states.
+     */
+    public void setTransformExportBuffers(FloatBuffer transforms, IntBuffer ids) {
+        if ((transforms == null) != (ids == null)) {
+            throw new IllegalArgumentException("both export buffers must be set");
+        }
+        this.exportTransforms = transforms;
+        this.exportIds = ids;
+        this.numExportedTransforms = 0;
+        this.numOverflowedTransforms = 0;
+        this.exportCursor = 0;
+
+        // export sleeping bodies again to fill the new buffers, or update their motion states
+        updateActiveBodies();
+        deactivatedBodies.clear();
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            RigidBody body = RigidBody.upcast(collisionObjects.getQuick(i));
+            if (body != null) {
+                body.sleepingTransformExported = false;
+                if (body.activeIndex < 0) {
+                    deactivatedBodies.add(body);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns number of bodies written to the export buffers by the last step.
+     */
+    public int getNumExportedTransforms() {
+        return numExportedTransforms;
+    }
+
+    /**
+     * Returns number of bodies that didn't fit into the export buffers in the last step.
+     */
+    public int getNumOverflowedTransforms() {
+        return numOverflowedTransforms;
+    }
+
     @Override
     public int stepSimulation(float timeStep, int maxSubSteps, float fixedTimeStep) {
         startProfiling(timeStep);
@@ -306,6 +807,9 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
         BulletStats.pushProfile("stepSimulation");
         try {
+            changedBodies.clear();
+            changedBodiesStamp++;
+
             int numSimulationSubSteps = 0;
 
             if (maxSubSteps != 0) {
@@ -319,6 +823,7 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
                 //variable timestep
                 fixedTimeStep = timeStep;
                 localTime = timeStep;
+                pendingSubSteps = 0;
                 if (ScalarUtil.fuzzyZero(timeStep)) {
                     numSimulationSubSteps = 0;
                     maxSubSteps = 0;
@@ -332,22 +837,51 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
             if (getDebugDrawer() != null) {
                 BulletGlobals.setDeactivationDisabled((getDebugDrawer().getDebugMode() & DebugDrawModes.NO_DEACTIVATION) != 0);
             }
-            if (numSimulationSubSteps != 0) {
+            // substeps skipped by the previous calls are caught up first
+            int dueSimulationSteps = numSimulationSubSteps + pendingSubSteps;
+            pendingSubSteps = 0;
+            lastNumSubSteps = 0;
+            lastDroppedTime = 0f;
+
+            if (dueSimulationSteps != 0) {
                 saveKinematicState(fixedTimeStep);
 
                 applyGravity();
 
                 // clamp the number of substeps, to prevent simulation grinding spiralling down to a halt
-                int clampedSimulationSteps = (numSimulationSubSteps > maxSubSteps) ? maxSubSteps : numSimulationSubSteps;
+                int clampedSimulationSteps = (dueSimulationSteps > maxSubSteps) ? maxSubSteps : dueSimulationSteps;
+
+                // run only as many substeps as fit into the time budget, at least one
+                if (stepTimeBudget > 0f && averageSubStepTime > 0f) {
+                    int affordableSteps = Math.max(1, (int) (stepTimeBudget / averageSubStepTime));
+                    clampedSimulationSteps = Math.min(clampedSimulationSteps, affordableSteps);
+                }
 
                 for (int i = 0; i < clampedSimulationSteps; i++) {
+                    long subStepStart = System.nanoTime();
                     internalSingleStepSimulation(fixedTimeStep);
-                    synchronizeMotionStates();
+                    float subStepTime = (System.nanoTime() - subStepStart) * 1e-9f;
+                    averageSubStepTime = (averageSubStepTime == 0f) ? subStepTime : averageSubStepTime + (subStepTime - averageSubStepTime) * 0.1f;
+
+                    if (synchronizeEachSubStep) {
+                        synchronizeMotionStates();
+                    }
                 }
+                lastNumSubSteps = clampedSimulationSteps;
+
+                // skipped substeps are kept for the next calls up to the catch up limit, the rest is dropped
+                int skippedSteps = dueSimulationSteps - clampedSimulationSteps;
+                pendingSubSteps = Math.min(skippedSteps, maxCatchUpSubSteps);
+                lastDroppedTime = (skippedSteps - pendingSubSteps) * fixedTimeStep;
+                totalDroppedTime += lastDroppedTime;
             }
 
             synchronizeMotionStates();
 
+            if (exportTransforms != null) {
+                exportTransforms();
+            }
+
             clearForces();
 
             //#ifndef BT_NO_PROFILE
@@ -358,7 +892,8 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         } finally {
             BulletStats.popProfile();
 
-            BulletStats.stepSimulationTime = (System.nanoTime() - t0) / 1000000;
+            BulletStats.stepSimulationNanos = System.nanoTime() - t0;
+            BulletStats.stepSimulationTime = BulletStats.stepSimulationNanos / 1000000;
         }
     }
 
@@ -423,6 +958,39 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         return out;
     }
 
+    @Override
+    public void addCollisionObject(CollisionObject collisionObject, short collisionFilterGroup, short collisionFilterMask) {
+        super.addCollisionObject(collisionObject, collisionFilterGroup, collisionFilterMask);
+
+        RigidBody body = RigidBody.upcast(collisionObject);
+        if (body != null) {
+            body.dynamicsWorld = this;
+            body.activationChangeQueued = false;
+            body.activationStateChanged();
+            body.transformDirty = false;
+            body.changedBodiesStamp = 0;
+            body.transformChanged();
+            // forces applied before adding are cleared after the first step
+            body.forceChangeQueued = false;
+            body.forceChanged();
+        } else {
+            otherObjects.add(collisionObject);
+        }
+    }
+
+    @Override
+    public void removeCollisionObject(CollisionObject collisionObject) {
+        RigidBody body = RigidBody.upcast(collisionObject);
+        if (body != null) {
+            removeActiveBody(body);
+            body.dynamicsWorld = null;
+        } else {
+            otherObjects.remove(collisionObject);
+        }
+
+        super.removeCollisionObject(collisionObject);
+    }
+
     @Override
     public void removeRigidBody(RigidBody body) {
         removeCollisionObject(body);
@@ -433,6 +1001,7 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         if (!body.isStaticOrKinematicObject()) {
             body.setGravity(gravity);
         }
+        body.sleepingTransformExported = false;
 
         if (body.getCollisionShape() != null) {
             boolean isDynamic = !(body.isStaticObject() || body.isKinematicObject());
@@ -447,6 +1016,7 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         if (!body.isStaticOrKinematicObject()) {
             body.setGravity(gravity);
         }
+        body.sleepingTransformExported = false;
 
         if (body.getCollisionShape() != null) {
             addCollisionObject(body, group, mask);
@@ -479,32 +1049,13 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
     protected void updateActivationState(float timeStep) {
         BulletStats.pushProfile("updateActivationState");
         try {
-            Vector3f tmp = new Vector3f();
+            updateActivationStateLoop.timeStep = timeStep;
+            int numChunks = runChunks(updateActivationStateLoop, collisionObjects.size());
 
-            for (int i = 0; i < collisionObjects.size(); i++) {
-                CollisionObject colObj = collisionObjects.getQuick(i);
-                RigidBody body = RigidBody.upcast(colObj);
-                if (body != null) {
-                    body.updateDeactivation(timeStep);
-
-                    if (body.wantsSleeping()) {
-                        if (body.isStaticOrKinematicObject()) {
-                            body.setActivationState(CollisionObject.ISLAND_SLEEPING);
-                        } else {
-                            if (body.getActivationState() == CollisionObject.ACTIVE_TAG) {
-                                body.setActivationState(CollisionObject.WANTS_DEACTIVATION);
-                            }
-                            if (body.getActivationState() == CollisionObject.ISLAND_SLEEPING) {
-                                tmp.set(0f, 0f, 0f);
-                                body.setAngularVelocity(tmp);
-                                body.setLinearVelocity(tmp);
-                            }
-                        }
-                    } else {
-                        if (body.getActivationState() != CollisionObject.DISABLE_DEACTIVATION) {
-                            body.setActivationState(CollisionObject.ACTIVE_TAG);
-                        }
-                    }
+            for (int i = 0; i < numChunks; i++) {
+                ObjectArrayList<RigidBody> deferred = chunkTasks.getQuick(i).deferred;
+                for (int j = 0; j < deferred.size(); j++) {
+                    activationChanges.add(deferred.getQuick(j));
                 }
             }
         } finally {
@@ -512,6 +1063,29 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         }
     }
 
+    private void updateActivationState(RigidBody body, float timeStep, Vector3f tmp) {
+        body.updateDeactivation(timeStep);
+
+        if (body.wantsSleeping()) {
+            if (body.isStaticOrKinematicObject()) {
+                body.setActivationState(CollisionObject.ISLAND_SLEEPING);
+            } else {
+                if (body.getActivationState() == CollisionObject.ACTIVE_TAG) {
+                    body.setActivationState(CollisionObject.WANTS_DEACTIVATION);
+                }
+                if (body.getActivationState() == CollisionObject.ISLAND_SLEEPING) {
+                    tmp.set(0f, 0f, 0f);
+                    body.setAngularVelocity(tmp);
+                    body.setLinearVelocity(tmp);
+                }
+            }
+        } else {
+            if (body.getActivationState() != CollisionObject.DISABLE_DEACTIVATION) {
+                body.setActivationState(CollisionObject.ACTIVE_TAG);
+            }
+        }
+    }
+
     @Override
     public void addConstraint(TypedConstraint constraint, boolean disableCollisionsBetweenLinkedBodies) {
         constraints.add(constraint);
@@ -562,15 +1136,18 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         public ConstraintSolver solver;
         public ObjectArrayList<TypedConstraint> sortedConstraints;
         public int numConstraints;
+        // start of constraints of each island in sortedConstraints, indexed by islandId + 1
+        public int[] islandConstraintOffsets;
         public IDebugDraw debugDrawer;
         //public StackAlloc* m_stackAlloc;
         public Dispatcher dispatcher;
 
-        public void init(ContactSolverInfo solverInfo, ConstraintSolver solver, ObjectArrayList<TypedConstraint> sortedConstraints, int numConstraints, IDebugDraw debugDrawer, Dispatcher dispatcher) {
+        public void init(ContactSolverInfo solverInfo, ConstraintSolver solver, ObjectArrayList<TypedConstraint> sortedConstraints, int numConstraints, int[] islandConstraintOffsets, IDebugDraw debugDrawer, Dispatcher dispatcher) {
             this.solverInfo = solverInfo;
             this.solver = solver;
             this.sortedConstraints = sortedConstraints;
             this.numConstraints = numConstraints;
+            this.islandConstraintOffsets = islandConstraintOffsets;
             this.debugDrawer = debugDrawer;
             this.dispatcher = dispatcher;
         }
@@ -581,25 +1158,12 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
                 solver.solveGroup(bodies, numBodies, manifolds, manifolds_offset, numManifolds, sortedConstraints, 0, numConstraints, solverInfo, debugDrawer/*,m_stackAlloc*/, dispatcher);
             } else {
                 // also add all non-contact constraints/joints for this island
-                //ObjectArrayList<TypedConstraint> startConstraint = null;
                 int startConstraint_idx = -1;
                 int numCurConstraints = 0;
-                int i;
 
-                // find the first constraint for this island
-                for (i = 0; i < numConstraints; i++) {
-                    if (getConstraintIslandId(sortedConstraints.getQuick(i)) == islandId) {
-                        //startConstraint = &m_sortedConstraints[i];
-                        //startConstraint = sortedConstraints.subList(i, sortedConstraints.size());
-                        startConstraint_idx = i;
-                        break;
-                    }
-                }
-                // count the number of constraints in this island
-                for (; i < numConstraints; i++) {
-                    if (getConstraintIslandId(sortedConstraints.getQuick(i)) == islandId) {
-                        numCurConstraints++;
-                    }
+                if (numConstraints > 0) {
+                    startConstraint_idx = islandConstraintOffsets[islandId + 1];
+                    numCurConstraints = islandConstraintOffsets[islandId + 2] - startConstraint_idx;
                 }
 
                 // only call solveGroup if there is some work: avoid virtual function call, its overhead can be excessive
@@ -613,20 +1177,68 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
     private ObjectArrayList<TypedConstraint> sortedConstraints = new ObjectArrayList<TypedConstraint>();
     private InplaceSolverIslandCallback solverCallback = new InplaceSolverIslandCallback();
 
+    // island id of each constraint, and start of constraints of each island (indexed by islandId + 1)
+    private int[] constraintIslandIds = new int[0];
+    private int[] islandConstraintOffsets = new int[0];
+    private int[] islandConstraintFill = new int[0];
+
+    /**
+     * Sorts constraints by island id into sortedConstraints using bucket sort, and
+     * computes range of constraints for each island. Island ids are indices of
+     * collision objects or -1, constraints keep their order within each island.
+     * Constraints with any other id (stale tags, e.g. of bodies removed from the
+     * world) are put at the end, after the constraints of all islands.
+     */
+    protected void sortConstraintsOnIslands() {
+        int numConstraints = constraints.size();
+        // extra buckets for island id -1 and for invalid ids, one extra offset for the end
+        int numIslands = collisionObjects.size();
+        int numBuckets = numIslands + 2;
+
+        if (constraintIslandIds.length < numConstraints) {
+            constraintIslandIds = new int[Math.max(numConstraints, constraintIslandIds.length * 2)];
+        }
+        if (islandConstraintOffsets.length < numBuckets + 1) {
+            int newLength = Math.max(numBuckets + 1, islandConstraintOffsets.length * 2);
+            islandConstraintOffsets = new int[newLength];
+            islandConstraintFill = new int[newLength];
+        }
+
+        int[] offsets = islandConstraintOffsets;
+        for (int i = 0; i <= numBuckets; i++) {
+            offsets[i] = 0;
+        }
+        for (int i = 0; i < numConstraints; i++) {
+            int islandId = getConstraintIslandId(constraints.getQuick(i));
+            int bucket = (islandId >= -1 && islandId < numIslands) ? islandId + 1 : numBuckets - 1;
+            constraintIslandIds[i] = bucket;
+            offsets[bucket + 1]++;
+        }
+        for (int i = 1; i <= numBuckets; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        int[] fill = islandConstraintFill;
+        System.arraycopy(offsets, 0, fill, 0, numBuckets);
+
+        sortedConstraints.clear();
+        for (int i = 0; i < numConstraints; i++) {
+            sortedConstraints.add(null);
+        }
+        for (int i = 0; i < numConstraints; i++) {
+            sortedConstraints.setQuick(fill[constraintIslandIds[i]]++, constraints.getQuick(i));
+        }
+    }
+
     protected void solveConstraints(ContactSolverInfo solverInfo) {
         BulletStats.pushProfile("solveConstraints");
         try {
             // sorted version of all btTypedConstraint, based on islandId
-            sortedConstraints.clear();
-            for (int i = 0; i < constraints.size(); i++) {
-                sortedConstraints.add(constraints.getQuick(i));
-            }
-            //Collections.sort(sortedConstraints, sortConstraintOnIslandPredicate);
-            MiscUtil.quickSort(sortedConstraints, sortConstraintOnIslandPredicate);
+            sortConstraintsOnIslands();
 
             ObjectArrayList<TypedConstraint> constraintsPtr = getNumConstraints() != 0 ? sortedConstraints : null;
 
-            solverCallback.init(solverInfo, constraintSolver, constraintsPtr, sortedConstraints.size(), debugDrawer/*,m_stackAlloc*/, dispatcher1);
+            solverCallback.init(solverInfo, constraintSolver, constraintsPtr, sortedConstraints.size(), islandConstraintOffsets, debugDrawer/*,m_stackAlloc*/, dispatcher1);
 
             constraintSolver.prepareSolve(getCollisionWorld().getNumCollisionObjects(), getCollisionWorld().getDispatcher().getNumManifolds());
 
@@ -672,53 +1284,133 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
     protected void integrateTransforms(float timeStep) {
         BulletStats.pushProfile("integrateTransforms");
         try {
-            Vector3f tmp = new Vector3f();
-            Transform tmpTrans = new Transform();
+            // pick up bodies activated by the collision detection
+            updateActiveBodies();
 
-            Transform predictedTrans = new Transform();
-            for (int i = 0; i < collisionObjects.size(); i++) {
-                CollisionObject colObj = collisionObjects.getQuick(i);
-                RigidBody body = RigidBody.upcast(colObj);
-                if (body != null) {
-                    body.setHitFraction(1f);
-
-                    if (body.isActive() && (!body.isStaticOrKinematicObject())) {
-                        body.predictIntegratedTransform(timeStep, predictedTrans);
-
-                        tmp.sub(predictedTrans.origin, body.getWorldTransform(tmpTrans).origin);
-                        float squareMotion = tmp.lengthSquared();
-
-                        if (body.getCcdSquareMotionThreshold() != 0f && body.getCcdSquareMotionThreshold() < squareMotion) {
-                            BulletStats.pushProfile("CCD motion clamping");
-                            try {
-                                if (body.getCollisionShape().isConvex()) {
-                                    BulletStats.gNumClampedCcdMotions++;
-
-                                    ClosestNotMeConvexResultCallback sweepResults = new ClosestNotMeConvexResultCallback(body, body.getWorldTransform(tmpTrans).origin, predictedTrans.origin, getBroadphase().getOverlappingPairCache(), getDispatcher());
-                                    //ConvexShape convexShape = (ConvexShape)body.getCollisionShape();
-                                    SphereShape tmpSphere = new SphereShape(body.getCcdSweptSphereRadius()); //btConvexShape* convexShape = static_cast<btConvexShape*>(body->getCollisionShape());
-
-                                    sweepResults.collisionFilterGroup = body.getBroadphaseProxy().collisionFilterGroup;
-                                    sweepResults.collisionFilterMask = body.getBroadphaseProxy().collisionFilterMask;
-
-                                    convexSweepTest(tmpSphere, body.getWorldTransform(tmpTrans), predictedTrans, sweepResults);
-                                    // JAVA NOTE: added closestHitFraction test to prevent objects being stuck
-                                    if (sweepResults.hasHit() && (sweepResults.closestHitFraction > 0.0001f)) {
-                                        body.setHitFraction(sweepResults.closestHitFraction);
-                                        body.predictIntegratedTransform(timeStep * body.getHitFraction(), predictedTrans);
-                                        body.setHitFraction(0f);
-                                        //System.out.printf("clamped integration to hit fraction = %f\n", sweepResults.closestHitFraction);
-                                    }
-                                }
-                            } finally {
-                                BulletStats.popProfile();
-                            }
-                        }
+            if (bodyStateStore != null) {
+                bodyStateStore.setBodies(activeBodies);
+            }
+            integrateTransformsLoop.timeStep = timeStep;
+            int numChunks = runChunks(integrateTransformsLoop, activeBodies.size());
+
+            // CCD motion clamping is always done afterwards, in the order of bodies, so the
+            // sweeps see the same transforms regardless of the number of tasks
+            for (int i = 0; i < numChunks; i++) {
+                ObjectArrayList<RigidBody> deferred = chunkTasks.getQuick(i).deferred;
+                for (int j = 0; j < deferred.size(); j++) {
+                    ccdBodies.add(deferred.getQuick(j));
+                }
+            }
+
+            if (useBatchedCcd) {
+                resolveCcdMotions(timeStep);
+            } else {
+                Vector3f tmp = new Vector3f();
+                Transform tmpTrans = new Transform();
+                Transform predictedTrans = new Transform();
+                for (int i = 0; i < ccdBodies.size(); i++) {
+                    integrateTransform(ccdBodies.getQuick(i), timeStep, predictedTrans, tmpTrans, tmp);
+                }
+                ccdBodies.clear();
+            }
+        } finally {
+            BulletStats.popProfile();
+        }
+    }
+
+    private void integrateTransform(RigidBody body, float timeStep, Transform predictedTrans, Transform tmpTrans, Vector3f tmp) {
+        body.setHitFraction(1f);
+
+        body.predictIntegratedTransform(timeStep, predictedTrans);
+
+        tmp.sub(predictedTrans.origin, body.getWorldTransform(tmpTrans).origin);
+        float squareMotion = tmp.lengthSquared();
+
+        if (body.getCcdSquareMotionThreshold() != 0f && body.getCcdSquareMotionThreshold() < squareMotion) {
+            BulletStats.pushProfile("CCD motion clamping");
+            try {
+                if (body.getCollisionShape().isConvex()) {
+                    BulletStats.gNumClampedCcdMotions++;
 
-                        body.proceedToTransform(predictedTrans);
+                    ClosestNotMeConvexResultCallback sweepResults = new ClosestNotMeConvexResultCallback(body, body.getWorldTransform(tmpTrans).origin, predictedTrans.origin, getBroadphase().getOverlappingPairCache(), getDispatcher());
+                    //ConvexShape convexShape = (ConvexShape)body.getCollisionShape();
+                    SphereShape tmpSphere = new SphereShape(body.getCcdSweptSphereRadius()); //btConvexShape* convexShape = static_cast<btConvexShape*>(body->getCollisionShape());
+
+                    sweepResults.collisionFilterGroup = body.getBroadphaseProxy().collisionFilterGroup;
+                    sweepResults.collisionFilterMask = body.getBroadphaseProxy().collisionFilterMask;
+
+                    convexSweepTest(tmpSphere, body.getWorldTransform(tmpTrans), predictedTrans, sweepResults);
+                    // JAVA NOTE: added closestHitFraction test to prevent objects being stuck
+                    if (sweepResults.hasHit() && (sweepResults.closestHitFraction > 0.0001f)) {
+                        body.setHitFraction(sweepResults.closestHitFraction);
+                        body.predictIntegratedTransform(timeStep * body.getHitFraction(), predictedTrans);
+                        body.setHitFraction(0f);
+                        //System.out.printf("clamped integration to hit fraction = %f\n", sweepResults.closestHitFraction);
                     }
                 }
+            } finally {
+                BulletStats.popProfile();
             }
+        }
+
+        body.proceedToTransform(predictedTrans);
+        cacheAabb(body);
+    }
+
+    /**
+     * Clamps the motion of fast bodies collected by integrateTransforms. Candidates of
+     * all swept spheres are collected from the broadphase first, times of impact against
+     * convex candidates are resolved per body in parallel chunks, the other candidates
+     * (meshes, compounds, voxel worlds) are resolved serially and the bodies are moved
+     * in the order they were collected.
+     */
+    protected void resolveCcdMotions(float timeStep) {
+        int numBodies = ccdBodies.size();
+        if (numBodies == 0) {
+            return;
+        }
+
+        BulletStats.pushProfile("CCD motion clamping");
+        try {
+            while (ccdSweeps.size() < numBodies) {
+                ccdSweeps.add(new CcdSweep(getBroadphase().getOverlappingPairCache(), dispatcher1));
+            }
+
+            for (int i = 0; i < numBodies; i++) {
+                CcdSweep sweep = ccdSweeps.getQuick(i);
+                if (sweep.init(ccdBodies.getQuick(i), timeStep)) {
+                    ccdCandidateCallback.sweep = sweep;
+                    getBroadphase().aabbTest(sweep.aabbMin, sweep.aabbMax, ccdCandidateCallback);
+                }
+            }
+            ccdCandidateCallback.sweep = null;
+
+            float allowedPenetration = getDispatchInfo().allowedCcdPenetration;
+            resolveCcdSweepsLoop.allowedPenetration = allowedPenetration;
+            runChunks(resolveCcdSweepsLoop, numBodies, MIN_CCD_CHUNK_SIZE);
+
+            for (int i = 0; i < numBodies; i++) {
+                CcdSweep sweep = ccdSweeps.getQuick(i);
+                sweep.resolve(sweep.otherCandidates, allowedPenetration);
+
+                RigidBody body = sweep.body;
+                if (body.getCollisionShape().isConvex()) {
+                    BulletStats.gNumClampedCcdMotions++;
+
+                    ClosestNotMeConvexResultCallback sweepResults = sweep.callback;
+                    // JAVA NOTE: added closestHitFraction test to prevent objects being stuck
+                    if (sweepResults.hasHit() && (sweepResults.closestHitFraction > 0.0001f)) {
+                        body.setHitFraction(sweepResults.closestHitFraction);
+                        body.predictIntegratedTransform(timeStep * body.getHitFraction(), sweep.predictedTrans);
+                        body.setHitFraction(0f);
+                    }
+                }
+
+                body.proceedToTransform(sweep.predictedTrans);
+                cacheAabb(body);
+                sweep.clear();
+            }
+            ccdBodies.clear();
         } finally {
             BulletStats.popProfile();
         }
@@ -727,21 +1419,43 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
     protected void predictUnconstraintMotion(float timeStep) {
         BulletStats.pushProfile("predictUnconstraintMotion");
         try {
-            Transform tmpTrans = new Transform();
+            updateActiveBodies();
 
-            for (int i = 0; i < collisionObjects.size(); i++) {
-                CollisionObject colObj = collisionObjects.getQuick(i);
-                RigidBody body = RigidBody.upcast(colObj);
-                if (body != null) {
-                    if (!body.isStaticOrKinematicObject()) {
-                        if (body.isActive()) {
-                            body.integrateVelocities(timeStep);
-                            // damping
-                            body.applyDamping(timeStep);
+            if (bodyStateStore != null) {
+                bodyStateStore.setBodies(activeBodies);
+            }
+            predictUnconstraintMotionLoop.timeStep = timeStep;
+            runChunks(predictUnconstraintMotionLoop, activeBodies.size());
+        } finally {
+            BulletStats.popProfile();
+        }
+    }
 
-                            body.predictIntegratedTransform(timeStep, body.getInterpolationWorldTransform(tmpTrans));
-                        }
-                    }
+    @Override
+    public void updateAabbs() {
+        if (taskPool == null) {
+            super.updateAabbs();
+            return;
+        }
+
+        BulletStats.pushProfile("updateAabbs");
+        try {
+            int numObjects = collisionObjects.size();
+            if (aabbs.length < 6 * numObjects) {
+                aabbs = new float[6 * numObjects];
+            }
+            runChunks(calculateAabbsLoop, numObjects);
+
+            // the broadphase is updated serially, in the order of objects
+            Vector3f minAabb = new Vector3f();
+            Vector3f maxAabb = new Vector3f();
+            for (int i = 0; i < numObjects; i++) {
+                CollisionObject colObj = collisionObjects.getQuick(i);
+                if (colObj.isActive()) {
+                    int index = i * 6;
+                    minAabb.set(aabbs[index], aabbs[index + 1], aabbs[index + 2]);
+                    maxAabb.set(aabbs[index + 3], aabbs[index + 4], aabbs[index + 5]);
+                    setAabb(colObj, minAabb, maxAabb);
                 }
             }
         } finally {
@@ -749,6 +1463,68 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         }
     }
 
+    /**
+     * Runs the loop over given number of elements. When the task pool is enabled and
+     * there are enough elements, the range is split into chunks processed in parallel
+     * and the number of chunks is returned, otherwise the loop is run on the current
+     * thread and 0 is returned. Work deferred by chunk i is in the deferred list of
+     * chunkTasks[i], chunks are in the order of elements.
+     */
+    private int runChunks(ChunkLoop loop, int count) {
+        return runChunks(loop, count, MIN_CHUNK_SIZE);
+    }
+
+    private int runChunks(ChunkLoop loop, int count, int minChunkSize) {
+        int numChunks = 1;
+        if (taskPool != null) {
+            numChunks = Math.min(numTasks * CHUNKS_PER_TASK, count / minChunkSize);
+        }
+
+        if (numChunks <= 1) {
+            loop.process(0, count, null);
+            return 0;
+        }
+
+        while (chunkTasks.size() < numChunks) {
+            chunkTasks.add(new ChunkTask());
+        }
+        chunkTaskList.clear();
+        for (int i = 0; i < numChunks; i++) {
+            ChunkTask task = chunkTasks.getQuick(i);
+            task.loop = loop;
+            task.start = (int) ((long) count * i / numChunks);
+            task.end = (int) ((long) count * (i + 1) / numChunks);
+            task.deferred.clear();
+            chunkTaskList.add(task);
+        }
+
+        deferActivationChanges = true;
+        try {
+            List<Future<Object>> results = taskPool.invokeAll(chunkTaskList);
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            deferActivationChanges = false;
+            for (int i = 0; i < numChunks; i++) {
+                chunkTasks.getQuick(i).loop = null;
+            }
+        }
+        return numChunks;
+    }
+
     protected void startProfiling(float timeStep) {
         //#ifndef BT_NO_PROFILE
         CProfileManager.reset();
@@ -1050,19 +1826,37 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
         return DynamicsWorldType.DISCRETE_DYNAMICS_WORLD;
     }
 
+    /**
+     * Sets number of threads used for per-body phases (velocity and transform
+     * integration, activation state and AABB update). The work is split into chunks
+     * processed by a {@link ForkJoinPool}, CCD motion clamping, broadphase updates and
+     * activation changes are merged serially in the order of bodies, so results don't
+     * depend on the number of tasks. Values of 1 or less process everything on the
+     * simulation thread (default).<p>
+     *
+     * Note that collision shapes of active objects must support concurrent calls of
+     * {@link CollisionShape#getAabb}, and motion states are still called serially.
+     * With {@link #setUseBatchedCcd batched CCD} the sweeps against convex candidates
+     * also run concurrently, so support mapping of convex shapes (eg.
+     * {@link ConvexShape#localGetSupportingVertex}) must be thread-safe too. This holds
+     * for the built-in shapes as long as they are not modified during the step.
+     */
     public void setNumTasks(int numTasks) {
+        if (taskPool != null) {
+            taskPool.shutdown();
+            taskPool = null;
+        }
+        this.numTasks = Math.max(numTasks, 1);
+        if (this.numTasks > 1) {
+            taskPool = new ForkJoinPool(this.numTasks);
+        }
     }
 
-    ////////////////////////////////////////////////////////////////////////////
+    public int getNumTasks() {
+        return numTasks;
+    }
 
-    private static final Comparator<TypedConstraint> sortConstraintOnIslandPredicate = new Comparator<TypedConstraint>() {
-        public int compare(TypedConstraint lhs, TypedConstraint rhs) {
-            int rIslandId0, lIslandId0;
-            rIslandId0 = getConstraintIslandId(rhs);
-            lIslandId0 = getConstraintIslandId(lhs);
-            return lIslandId0 < rIslandId0 ? -1 : +1;
-        }
-    };
+    ////////////////////////////////////////////////////////////////////////////
 
 //	private static class DebugDrawcallback implements TriangleCallback, InternalTriangleIndexCallback {
 //		private IDebugDraw debugDrawer;
@@ -1095,12 +1889,295 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 //		}
 //	}
 
+    /**
+     * Loop over a range of bodies or collision objects. When deferred is not null the
+     * range is processed in parallel with other chunks, work that must be done in the
+     * order of bodies (CCD, activation changes) is added to it instead.
+     */
+    private abstract static class ChunkLoop {
+        public abstract void process(int start, int end, ObjectArrayList<RigidBody> deferred);
+    }
+
+    private static class ChunkTask implements Callable<Object> {
+        public ChunkLoop loop;
+        public int start;
+        public int end;
+        public final ObjectArrayList<RigidBody> deferred = new ObjectArrayList<RigidBody>();
+
+        public Object call() {
+            loop.process(start, end, deferred);
+            return null;
+        }
+    }
+
+    private class PredictUnconstraintMotionLoop extends ChunkLoop {
+        public float timeStep;
+
+        @Override
+        public void process(int start, int end, ObjectArrayList<RigidBody> deferred) {
+            RigidBodyStateStore store = bodyStateStore;
+            if (store != null) {
+                store.load(start, end);
+                store.integrateVelocities(timeStep, start, end);
+                // damping
+                store.applyDamping(timeStep, start, end);
+                store.storeVelocities(start, end);
+                return;
+            }
+
+            Transform tmpTrans = new Transform();
+            for (int i = start; i < end; i++) {
+                RigidBody body = activeBodies.getQuick(i);
+                body.integrateVelocities(timeStep);
+                // damping
+                body.applyDamping(timeStep);
+
+                body.predictIntegratedTransform(timeStep, body.getInterpolationWorldTransform(tmpTrans));
+            }
+        }
+    }
+
+    private class IntegrateTransformsLoop extends ChunkLoop {
+        public float timeStep;
+
+        @Override
+        public void process(int start, int end, ObjectArrayList<RigidBody> deferred) {
+            Vector3f tmp = new Vector3f();
+            Transform tmpTrans = new Transform();
+            Transform predictedTrans = new Transform();
+            // fast bodies are deferred to the serial CCD pass, see integrateTransforms
+            ObjectArrayList<RigidBody> ccdList = deferred != null ? deferred : ccdBodies;
+
+            RigidBodyStateStore store = bodyStateStore;
+            if (store != null) {
+                store.load(start, end);
+                store.predictIntegratedTransforms(timeStep, start, end);
+                store.updateInertiaTensors(start, end);
+
+                for (int i = start; i < end; i++) {
+                    RigidBody body = store.getBody(i);
+                    float ccdThreshold = body.getCcdSquareMotionThreshold();
+                    if (ccdThreshold != 0f && ccdThreshold < store.getPredictedSquareMotion(i)) {
+                        ccdList.add(body);
+                    } else {
+                        body.setHitFraction(1f);
+                        store.proceedToTransform(i);
+                        cacheAabb(body);
+                    }
+                }
+                return;
+            }
+
+            for (int i = start; i < end; i++) {
+                RigidBody body = activeBodies.getQuick(i);
+                float ccdThreshold = body.getCcdSquareMotionThreshold();
+                if (ccdThreshold != 0f) {
+                    body.predictIntegratedTransform(timeStep, predictedTrans);
+                    tmp.sub(predictedTrans.origin, body.getWorldTransform(tmpTrans).origin);
+                    if (ccdThreshold < tmp.lengthSquared()) {
+                        ccdList.add(body);
+                        continue;
+                    }
+                }
+                integrateTransform(body, timeStep, predictedTrans, tmpTrans, tmp);
+            }
+        }
+    }
+
+    private class UpdateActivationStateLoop extends ChunkLoop {
+        public float timeStep;
+
+        @Override
+        public void process(int start, int end, ObjectArrayList<RigidBody> deferred) {
+            Vector3f tmp = new Vector3f();
+            for (int i = start; i < end; i++) {
+                RigidBody body = RigidBody.upcast(collisionObjects.getQuick(i));
+                if (body != null) {
+                    boolean queued = body.activationChangeQueued;
+                    updateActivationState(body, timeStep, tmp);
+                    if (deferred != null && !queued && body.activationChangeQueued) {
+                        deferred.add(body);
+                    }
+                }
+            }
+        }
+    }
+
+    private class CalculateAabbsLoop extends ChunkLoop {
+        @Override
+        public void process(int start, int end, ObjectArrayList<RigidBody> deferred) {
+            Vector3f minAabb = new Vector3f();
+            Vector3f maxAabb = new Vector3f();
+            for (int i = start; i < end; i++) {
+                CollisionObject colObj = collisionObjects.getQuick(i);
+                if (colObj.isActive()) {
+                    getUpdatedAabb(colObj, minAabb, maxAabb);
+                    int index = i * 6;
+                    aabbs[index] = minAabb.x;
+                    aabbs[index + 1] = minAabb.y;
+                    aabbs[index + 2] = minAabb.z;
+                    aabbs[index + 3] = maxAabb.x;
+                    aabbs[index + 4] = maxAabb.y;
+                    aabbs[index + 5] = maxAabb.z;
+                }
+            }
+        }
+    }
+
+    private class ResolveCcdSweepsLoop extends ChunkLoop {
+        public float allowedPenetration;
+
+        @Override
+        public void process(int start, int end, ObjectArrayList<RigidBody> deferred) {
+            for (int i = start; i < end; i++) {
+                CcdSweep sweep = ccdSweeps.getQuick(i);
+                sweep.resolve(sweep.convexCandidates, allowedPenetration);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Swept sphere of a fast body, reused between steps.
+     */
+    private static class CcdSweep {
+        public RigidBody body;
+        public final Transform fromTrans = new Transform();
+        public final Transform predictedTrans = new Transform();
+        public final Vector3f aabbMin = new Vector3f();
+        public final Vector3f aabbMax = new Vector3f();
+        public final SphereShape sphere = new SphereShape(1f);
+        public final ClosestNotMeConvexResultCallback callback;
+        public final ObjectArrayList<CollisionObject> convexCandidates = new ObjectArrayList<CollisionObject>();
+        public final ObjectArrayList<CollisionObject> otherCandidates = new ObjectArrayList<CollisionObject>();
+
+        private final Vector3f castShapeAabbMin = new Vector3f();
+        private final Vector3f castShapeAabbMax = new Vector3f();
+        private final Vector3f linVel = new Vector3f();
+        private final Vector3f angVel = new Vector3f();
+        private final Transform rotation = new Transform();
+        private final Quat4f tmpQuat = new Quat4f();
+        private final Transform tmpTrans = new Transform();
+        private final Vector3f objectAabbMin = new Vector3f();
+        private final Vector3f objectAabbMax = new Vector3f();
+        private final Vector3f hitNormal = new Vector3f();
+        private final float[] hitLambda = new float[1];
+
+        public CcdSweep(OverlappingPairCache pairCache, Dispatcher dispatcher) {
+            callback = new ClosestNotMeConvexResultCallback(pairCache, dispatcher);
+        }
+
+        /**
+         * Predicts the motion of the body and computes the world space AABB containing
+         * all objects the sweep can hit. Returns false when the body doesn't need the sweep.
+         */
+        public boolean init(RigidBody body, float timeStep) {
+            this.body = body;
+            body.setHitFraction(1f);
+            body.predictIntegratedTransform(timeStep, predictedTrans);
+            if (!body.getCollisionShape().isConvex()) {
+                return false;
+            }
+
+            body.getWorldTransform(fromTrans);
+            sphere.setUnscaledRadius(body.getCcdSweptSphereRadius());
+            callback.init(body, fromTrans.origin, predictedTrans.origin);
+
+            // same expansion as in CollisionWorld.convexSweepTest
+            TransformUtil.calculateVelocity(fromTrans, predictedTrans, 1f, linVel, angVel);
+            rotation.setIdentity();
+            rotation.setRotation(fromTrans.getRotation(tmpQuat));
+            sphere.calculateTemporalAabb(rotation, linVel, angVel, 1f, castShapeAabbMin, castShapeAabbMax);
+
+            aabbMin.set(fromTrans.origin);
+            VectorUtil.setMin(aabbMin, predictedTrans.origin);
+            aabbMin.sub(castShapeAabbMax);
+            aabbMax.set(fromTrans.origin);
+            VectorUtil.setMax(aabbMax, predictedTrans.origin);
+            aabbMax.sub(castShapeAabbMin);
+            return true;
+        }
+
+        public void resolve(ObjectArrayList<CollisionObject> candidates, float allowedPenetration) {
+            for (int i = 0; i < candidates.size(); i++) {
+                CollisionObject collisionObject = candidates.getQuick(i);
+                collisionObject.getWorldTransform(tmpTrans);
+                collisionObject.getCollisionShape().getAabb(tmpTrans, objectAabbMin, objectAabbMax);
+                AabbUtil2.aabbExpand(objectAabbMin, objectAabbMax, castShapeAabbMin, castShapeAabbMax);
+                hitLambda[0] = 1f;
+                if (AabbUtil2.rayAabb(fromTrans.origin, predictedTrans.origin, objectAabbMin, objectAabbMax, hitLambda, hitNormal)) {
+                    CollisionWorld.objectQuerySingle(sphere, fromTrans, predictedTrans,
+                            collisionObject,
+                            collisionObject.getCollisionShape(),
+                            tmpTrans,
+                            callback,
+                            allowedPenetration);
+                }
+            }
+        }
+
+        public void clear() {
+            body = null;
+            callback.init(null, fromTrans.origin, predictedTrans.origin);
+            convexCandidates.clear();
+            otherCandidates.clear();
+        }
+    }
+
+    private static class CcdCandidateCallback extends BroadphaseAabbCallback {
+        public CcdSweep sweep;
+
+        @Override
+        public boolean process(BroadphaseProxy proxy) {
+            if (sweep.callback.needsCollision(proxy)) {
+                CollisionObject collisionObject = (CollisionObject) proxy.clientObject;
+                if (collisionObject.getCollisionShape().isConvex()) {
+                    sweep.convexCandidates.add(collisionObject);
+                } else {
+                    sweep.otherCandidates.add(collisionObject);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class AwakenInAreaCallback extends BroadphaseAabbCallback {
+        private final Vector3f min = new Vector3f();
+        private final Vector3f max = new Vector3f();
+        private final Vector3f otherMin = new Vector3f();
+        private final Vector3f otherMax = new Vector3f();
+        private final Transform tmpTrans = new Transform();
+
+        public void init(Vector3f min, Vector3f max) {
+            this.min.set(min);
+            this.max.set(max);
+        }
+
+        @Override
+        public boolean process(BroadphaseProxy proxy) {
+            CollisionObject collisionObject = (CollisionObject) proxy.clientObject;
+            if (!collisionObject.isStaticOrKinematicObject() && !collisionObject.isActive()) {
+                // broadphase AABBs are conservative, test the actual shape bounds
+                collisionObject.getCollisionShape().getAabb(collisionObject.getWorldTransform(tmpTrans), otherMin, otherMax);
+                if (AabbUtil2.testAabbAgainstAabb2(min, max, otherMin, otherMax)) {
+                    collisionObject.activate();
+                }
+            }
+            return true;
+        }
+    }
+
     private static class ClosestNotMeConvexResultCallback extends ClosestConvexResultCallback {
         private CollisionObject me;
         private float allowedPenetration = 0f;
         private OverlappingPairCache pairCache;
         private Dispatcher dispatcher;
 
+        private final ObjectArrayList<PersistentManifold> manifoldArray = new ObjectArrayList<PersistentManifold>();
+        private final Vector3f linVelA = new Vector3f();
+        private final Vector3f relativeVelocity = new Vector3f();
+
         public ClosestNotMeConvexResultCallback(CollisionObject me, Vector3f fromA, Vector3f toA, OverlappingPairCache pairCache, Dispatcher dispatcher) {
             super(fromA, toA);
             this.me = me;
@@ -1108,18 +2185,36 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
             this.dispatcher = dispatcher;
         }
 
+        public ClosestNotMeConvexResultCallback(OverlappingPairCache pairCache, Dispatcher dispatcher) {
+            this(null, new Vector3f(), new Vector3f(), pairCache, dispatcher);
+        }
+
+        /**
+         * Prepares the callback for a new sweep of given object, the collision filter
+         * is taken from its broadphase proxy.
+         */
+        public void init(CollisionObject me, Vector3f fromA, Vector3f toA) {
+            this.me = me;
+            convexFromWorld.set(fromA);
+            convexToWorld.set(toA);
+            closestHitFraction = 1f;
+            hitCollisionObject = null;
+            if (me != null) {
+                collisionFilterGroup = me.getBroadphaseHandle().collisionFilterGroup;
+                collisionFilterMask = me.getBroadphaseHandle().collisionFilterMask;
+            }
+        }
+
         @Override
         public float addSingleResult(LocalConvexResult convexResult, boolean normalInWorldSpace) {
             if (convexResult.hitCollisionObject == me) {
                 return 1f;
             }
 
-            Vector3f linVelA = new Vector3f(), linVelB = new Vector3f();
             linVelA.sub(convexToWorld, convexFromWorld);
-            linVelB.set(0f, 0f, 0f);//toB.getOrigin()-fromB.getOrigin();
+            //linVelB = toB.getOrigin()-fromB.getOrigin(), which is zero
 
-            Vector3f relativeVelocity = new Vector3f();
-            relativeVelocity.sub(linVelA, linVelB);
+            relativeVelocity.set(linVelA);
             // don't report time of impact for motion away from the contact normal (or causes minor penetration)
             if (convexResult.hitNormalLocal.dot(relativeVelocity) >= -allowedPenetration) {
                 return 1f;
@@ -1145,7 +2240,7 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
             // call needsResponse, see http://code.google.com/p/bullet/issues/detail?id=179
             if (dispatcher.needsResponse(me, otherObj)) {
                 // don't do CCD when there are already contact points (touching contact/penetration)
-                ObjectArrayList<PersistentManifold> manifoldArray = new ObjectArrayList<PersistentManifold>();
+                manifoldArray.clear();
                 BroadphasePair collisionPair = pairCache.findPair(me.getBroadphaseHandle(), proxy0);
                 if (collisionPair != null) {
                     if (collisionPair.algorithm != null) {
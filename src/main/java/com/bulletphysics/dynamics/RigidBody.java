@@ -97,6 +97,26 @@ public class RigidBody extends CollisionObject {
     // optionalMotionState allows to automatic synchronize the world transform for active objects
     private MotionState optionalMotionState;
 
+    // set when the transform of the sleeping body was already written by the transform export,
+    // cleared when the transform is set
+    boolean sleepingTransformExported;
+    // transform was set while not active, the export uses it instead of the interpolated one
+    boolean sleepingTransformSet;
+
+    // world the body is added to, tracks activation changes, see DiscreteDynamicsWorld.updateActiveBodies
+    DiscreteDynamicsWorld dynamicsWorld;
+    boolean activationChangeQueued;
+    // index in the active bodies array of the world, -1 if not active
+    int activeIndex = -1;
+    // forces were applied while not active, see DiscreteDynamicsWorld.clearForces
+    boolean forceChangeQueued;
+
+    // transform changed since the last motion state synchronization, see DiscreteDynamicsWorld.getChangedBodies
+    boolean transformDirty = true;
+    int changedBodiesStamp;
+
+    private final Quat4f tmpOrientation = new Quat4f();
+
     // keep track of typed constraints referencing this rigid body
     private final ObjectArrayList<TypedConstraint> constraintRefs = new ObjectArrayList<TypedConstraint>();
 
@@ -282,38 +302,42 @@ public class RigidBody extends CollisionObject {
         //#endif
 
         if (additionalDamping) {
-            // Additional damping can help avoiding lowpass jitter motion, help stability for ragdolls etc.
-            // Such damping is undesirable, so once the overall simulation quality of the rigid body dynamics system has improved, this should become obsolete
-            if ((angularVelocity.lengthSquared() < additionalAngularDampingThresholdSqr) &&
-                    (linearVelocity.lengthSquared() < additionalLinearDampingThresholdSqr)) {
-                angularVelocity.scale(additionalDampingFactor);
-                linearVelocity.scale(additionalDampingFactor);
-            }
+            applyAdditionalDamping();
+        }
+    }
+
+    void applyAdditionalDamping() {
+        // Additional damping can help avoiding lowpass jitter motion, help stability for ragdolls etc.
+        // Such damping is undesirable, so once the overall simulation quality of the rigid body dynamics system has improved, this should become obsolete
+        if ((angularVelocity.lengthSquared() < additionalAngularDampingThresholdSqr) &&
+                (linearVelocity.lengthSquared() < additionalLinearDampingThresholdSqr)) {
+            angularVelocity.scale(additionalDampingFactor);
+            linearVelocity.scale(additionalDampingFactor);
+        }
 
-            float speed = linearVelocity.length();
-            if (speed < linearDamping) {
-                float dampVel = 0.005f;
-                if (speed > dampVel) {
-                    Vector3f dir = new Vector3f(linearVelocity);
-                    dir.normalize();
-                    dir.scale(dampVel);
-                    linearVelocity.sub(dir);
-                } else {
-                    linearVelocity.set(0f, 0f, 0f);
-                }
+        float speed = linearVelocity.length();
+        if (speed < linearDamping) {
+            float dampVel = 0.005f;
+            if (speed > dampVel) {
+                Vector3f dir = new Vector3f(linearVelocity);
+                dir.normalize();
+                dir.scale(dampVel);
+                linearVelocity.sub(dir);
+            } else {
+                linearVelocity.set(0f, 0f, 0f);
             }
+        }
 
-            float angSpeed = angularVelocity.length();
-            if (angSpeed < angularDamping) {
-                float angDampVel = 0.005f;
-                if (angSpeed > angDampVel) {
-                    Vector3f dir = new Vector3f(angularVelocity);
-                    dir.normalize();
-                    dir.scale(angDampVel);
-                    angularVelocity.sub(dir);
-                } else {
-                    angularVelocity.set(0f, 0f, 0f);
-                }
+        float angSpeed = angularVelocity.length();
+        if (angSpeed < angularDamping) {
+            float angDampVel = 0.005f;
+            if (angSpeed > angDampVel) {
+                Vector3f dir = new Vector3f(angularVelocity);
+                dir.normalize();
+                dir.scale(angDampVel);
+                angularVelocity.sub(dir);
+            } else {
+                angularVelocity.set(0f, 0f, 0f);
             }
         }
     }
@@ -326,6 +350,7 @@ public class RigidBody extends CollisionObject {
             collisionFlags &= (~CollisionFlags.STATIC_OBJECT);
             inverseMass = 1f / mass;
         }
+        activationStateChanged();
 
         invInertiaLocal.set(inertia.x != 0f ? 1f / inertia.x : 0f,
                 inertia.y != 0f ? 1f / inertia.y : 0f,
@@ -368,10 +393,12 @@ public class RigidBody extends CollisionObject {
         getAngularVelocity(interpolationAngularVelocity);
         worldTransform.set(xform);
         updateInertiaTensor();
+        transformChanged();
     }
 
     public void applyCentralForce(Vector3f force) {
         totalForce.add(applyVelocityFactor(force, linearFactor));
+        forceChanged();
     }
 
     public Vector3f getInvInertiaDiagLocal(Vector3f out) {
@@ -390,6 +417,7 @@ public class RigidBody extends CollisionObject {
 
     public void applyTorque(Vector3f torque) {
         totalTorque.add(applyVelocityFactor(torque, angularFactor));
+        forceChanged();
     }
 
     public void applyForce(Vector3f force, Vector3f rel_pos) {
@@ -434,6 +462,14 @@ public class RigidBody extends CollisionObject {
         totalTorque.set(0f, 0f, 0f);
     }
 
+    void forceChanged() {
+        // forces of active bodies are cleared by the world directly
+        if (dynamicsWorld != null && activeIndex < 0 && !forceChangeQueued) {
+            forceChangeQueued = true;
+            dynamicsWorld.queueForceChange(this);
+        }
+    }
+
     public void updateInertiaTensor() {
         Matrix3f mat1 = new Matrix3f();
         MatrixUtil.scale(mat1, worldTransform.basis, invInertiaLocal);
@@ -554,6 +590,28 @@ public class RigidBody extends CollisionObject {
         return false;
     }
 
+    @Override
+    protected void transformChanged() {
+        super.transformChanged();
+        sleepingTransformExported = false;
+        sleepingTransformSet = activeIndex < 0;
+        if (!transformDirty) {
+            transformDirty = true;
+            // active bodies are checked by the world, the parallel tasks only move active bodies
+            if (dynamicsWorld != null && activeIndex < 0) {
+                dynamicsWorld.queueTransformChange(this);
+            }
+        }
+    }
+
+    @Override
+    protected void activationStateChanged() {
+        if (dynamicsWorld != null && !activationChangeQueued) {
+            activationChangeQueued = true;
+            dynamicsWorld.queueActivationChange(this);
+        }
+    }
+
     public BroadphaseProxy getBroadphaseProxy() {
         return broadphaseHandle;
     }
@@ -610,6 +668,109 @@ public class RigidBody extends CollisionObject {
         return true;
     }
 
+    ////////////////////////////////////////////////////////////////////////////
+    // state transfer for RigidBodyStateStore
+
+    void loadState(RigidBodyStateStore store, int i) {
+        int c = store.capacity;
+
+        Vector3f origin = worldTransform.origin;
+        store.position[i] = origin.x;
+        store.position[c + i] = origin.y;
+        store.position[2 * c + i] = origin.z;
+
+        Quat4f orn = worldTransform.getRotation(tmpOrientation);
+        store.orientation[i] = orn.x;
+        store.orientation[c + i] = orn.y;
+        store.orientation[2 * c + i] = orn.z;
+        store.orientation[3 * c + i] = orn.w;
+
+        loadVelocities(store, i);
+
+        store.totalForce[i] = totalForce.x;
+        store.totalForce[c + i] = totalForce.y;
+        store.totalForce[2 * c + i] = totalForce.z;
+        store.totalTorque[i] = totalTorque.x;
+        store.totalTorque[c + i] = totalTorque.y;
+        store.totalTorque[2 * c + i] = totalTorque.z;
+
+        store.inverseMass[i] = inverseMass;
+        store.invInertiaLocal[i] = invInertiaLocal.x;
+        store.invInertiaLocal[c + i] = invInertiaLocal.y;
+        store.invInertiaLocal[2 * c + i] = invInertiaLocal.z;
+
+        Matrix3f m = invInertiaTensorWorld;
+        float[] iw = store.invInertiaWorld;
+        iw[i] = m.m00;
+        iw[c + i] = m.m01;
+        iw[2 * c + i] = m.m02;
+        iw[3 * c + i] = m.m10;
+        iw[4 * c + i] = m.m11;
+        iw[5 * c + i] = m.m12;
+        iw[6 * c + i] = m.m20;
+        iw[7 * c + i] = m.m21;
+        iw[8 * c + i] = m.m22;
+
+        store.linearDamping[i] = linearDamping;
+        store.angularDamping[i] = angularDamping;
+        store.additionalDamping[i] = additionalDamping;
+    }
+
+    void loadVelocities(RigidBodyStateStore store, int i) {
+        int c = store.capacity;
+        store.linearVelocity[i] = linearVelocity.x;
+        store.linearVelocity[c + i] = linearVelocity.y;
+        store.linearVelocity[2 * c + i] = linearVelocity.z;
+        store.angularVelocity[i] = angularVelocity.x;
+        store.angularVelocity[c + i] = angularVelocity.y;
+        store.angularVelocity[2 * c + i] = angularVelocity.z;
+    }
+
+    void storeVelocities(RigidBodyStateStore store, int i) {
+        int c = store.capacity;
+        linearVelocity.set(store.linearVelocity[i], store.linearVelocity[c + i], store.linearVelocity[2 * c + i]);
+        angularVelocity.set(store.angularVelocity[i], store.angularVelocity[c + i], store.angularVelocity[2 * c + i]);
+    }
+
+    /**
+     * Same as {@link #proceedToTransform} for a dynamic body, with basis and inertia
+     * tensor computed by the store.
+     */
+    void storeTransform(RigidBodyStateStore store, int i) {
+        int c = store.capacity;
+        float[] b = store.predictedBasis;
+        float[] iw = store.invInertiaWorld;
+
+        worldTransform.origin.set(store.predictedPosition[i], store.predictedPosition[c + i], store.predictedPosition[2 * c + i]);
+        Matrix3f m = worldTransform.basis;
+        m.m00 = b[i];
+        m.m01 = b[c + i];
+        m.m02 = b[2 * c + i];
+        m.m10 = b[3 * c + i];
+        m.m11 = b[4 * c + i];
+        m.m12 = b[5 * c + i];
+        m.m20 = b[6 * c + i];
+        m.m21 = b[7 * c + i];
+        m.m22 = b[8 * c + i];
+        interpolationWorldTransform.set(worldTransform);
+        interpolationLinearVelocity.set(linearVelocity);
+        interpolationAngularVelocity.set(angularVelocity);
+
+        m = invInertiaTensorWorld;
+        m.m00 = iw[i];
+        m.m01 = iw[c + i];
+        m.m02 = iw[2 * c + i];
+        m.m10 = iw[3 * c + i];
+        m.m11 = iw[4 * c + i];
+        m.m12 = iw[5 * c + i];
+        m.m20 = iw[6 * c + i];
+        m.m21 = iw[7 * c + i];
+        m.m22 = iw[8 * c + i];
+        transformChanged();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
     public void addConstraintRef(TypedConstraint c) {
         int index = constraintRefs.indexOf(c);
         if (index == -1) {
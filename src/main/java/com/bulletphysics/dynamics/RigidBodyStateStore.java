@@ -0,0 +1,346 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.dynamics;
+
+import com.bulletphysics.BulletGlobals;
+import com.bulletphysics.linearmath.TransformUtil;
+import com.bulletphysics.util.ObjectArrayList;
+
+/**
+ * RigidBodyStateStore keeps integration state of rigid bodies in contiguous float
+ * arrays (structure of arrays), so the per-body phases of {@link DiscreteDynamicsWorld}
+ * can run as tight loops over all bodies. Each column stores its components one
+ * after another, eg. x of all bodies, then y of all bodies, then z of all bodies,
+ * with a stride of {@link #getCapacity capacity}.<p>
+ *
+ * The bodies remain the authoritative copy of the state, the store is filled by
+ * {@link #load} at the start of a phase and written back when the phase ends.
+ * Enabled by {@link DiscreteDynamicsWorld#setUseBodyStateStore}.
+ */
+public class RigidBodyStateStore {
+
+    private static final float MAX_ANGVEL = BulletGlobals.SIMD_HALF_PI;
+
+    RigidBody[] bodies = new RigidBody[0];
+    int numBodies;
+    int capacity;
+
+    // current transform
+    float[] position;
+    float[] orientation;
+
+    float[] linearVelocity;
+    float[] angularVelocity;
+    float[] totalForce;
+    float[] totalTorque;
+
+    float[] inverseMass;
+    float[] invInertiaLocal;
+    // row major 3x3 matrix
+    float[] invInertiaWorld;
+
+    float[] linearDamping;
+    float[] angularDamping;
+    boolean[] additionalDamping;
+
+    // predicted transform, basis is row major 3x3 matrix
+    float[] predictedPosition;
+    float[] predictedOrientation;
+    float[] predictedBasis;
+
+    public RigidBodyStateStore() {
+        ensureCapacity(16);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(size, capacity * 2);
+
+        RigidBody[] newBodies = new RigidBody[newCapacity];
+        System.arraycopy(bodies, 0, newBodies, 0, numBodies);
+        bodies = newBodies;
+        capacity = newCapacity;
+
+        // contents are reloaded on each phase, no need to copy them
+        position = new float[3 * newCapacity];
+        orientation = new float[4 * newCapacity];
+        linearVelocity = new float[3 * newCapacity];
+        angularVelocity = new float[3 * newCapacity];
+        totalForce = new float[3 * newCapacity];
+        totalTorque = new float[3 * newCapacity];
+        inverseMass = new float[newCapacity];
+        invInertiaLocal = new float[3 * newCapacity];
+        invInertiaWorld = new float[9 * newCapacity];
+        linearDamping = new float[newCapacity];
+        angularDamping = new float[newCapacity];
+        additionalDamping = new boolean[newCapacity];
+        predictedPosition = new float[3 * newCapacity];
+        predictedOrientation = new float[4 * newCapacity];
+        predictedBasis = new float[9 * newCapacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getNumBodies() {
+        return numBodies;
+    }
+
+    public RigidBody getBody(int index) {
+        return bodies[index];
+    }
+
+    /**
+     * Sets dynamic bodies kept in the store, their state is gathered by {@link #load}.
+     * Methods processing the bodies work on a range of indices, so the bodies can be
+     * split between multiple threads.
+     */
+    public void setBodies(ObjectArrayList<RigidBody> bodyList) {
+        int n = bodyList.size();
+        for (int i = n; i < numBodies; i++) {
+            bodies[i] = null;
+        }
+        ensureCapacity(n);
+        numBodies = n;
+
+        for (int i = 0; i < n; i++) {
+            bodies[i] = bodyList.getQuick(i);
+        }
+    }
+
+    /**
+     * Gathers state of the bodies.
+     */
+    public void load(int start, int end) {
+        for (int i = start; i < end; i++) {
+            bodies[i].loadState(this, i);
+        }
+    }
+
+    /**
+     * Writes velocities back to the bodies.
+     */
+    public void storeVelocities(int start, int end) {
+        for (int i = start; i < end; i++) {
+            bodies[i].storeVelocities(this, i);
+        }
+    }
+
+    /**
+     * Moves body to its predicted transform, same as {@link RigidBody#proceedToTransform}.
+     * Requires {@link #updateInertiaTensors} to be called after the prediction.
+     */
+    public void proceedToTransform(int index) {
+        bodies[index].storeTransform(this, index);
+    }
+
+    public void integrateVelocities(float step, int start, int end) {
+        int c = capacity;
+        float[] lv = linearVelocity;
+        float[] av = angularVelocity;
+        float[] f = totalForce;
+        float[] t = totalTorque;
+        float[] im = inverseMass;
+        float[] iw = invInertiaWorld;
+
+        for (int i = start; i < end; i++) {
+            float s = im[i] * step;
+            lv[i] = s * f[i] + lv[i];
+            lv[c + i] = s * f[c + i] + lv[c + i];
+            lv[2 * c + i] = s * f[2 * c + i] + lv[2 * c + i];
+        }
+
+        for (int i = start; i < end; i++) {
+            float tx = t[i], ty = t[c + i], tz = t[2 * c + i];
+            float wx = iw[i] * tx + iw[c + i] * ty + iw[2 * c + i] * tz;
+            float wy = iw[3 * c + i] * tx + iw[4 * c + i] * ty + iw[5 * c + i] * tz;
+            float wz = iw[6 * c + i] * tx + iw[7 * c + i] * ty + iw[8 * c + i] * tz;
+            av[i] = step * wx + av[i];
+            av[c + i] = step * wy + av[c + i];
+            av[2 * c + i] = step * wz + av[2 * c + i];
+        }
+
+        // clamp angular velocity. collision calculations will fail on higher angular velocities
+        for (int i = start; i < end; i++) {
+            float x = av[i], y = av[c + i], z = av[2 * c + i];
+            float angvel = (float) Math.sqrt(x * x + y * y + z * z);
+            if (angvel * step > MAX_ANGVEL) {
+                float s = (MAX_ANGVEL / step) / angvel;
+                av[i] = x * s;
+                av[c + i] = y * s;
+                av[2 * c + i] = z * s;
+            }
+        }
+    }
+
+    public void applyDamping(float timeStep, int start, int end) {
+        int c = capacity;
+        float[] lv = linearVelocity;
+        float[] av = angularVelocity;
+
+        for (int i = start; i < end; i++) {
+            float ls = (float) Math.pow(1f - linearDamping[i], timeStep);
+            float as = (float) Math.pow(1f - angularDamping[i], timeStep);
+            lv[i] *= ls;
+            lv[c + i] *= ls;
+            lv[2 * c + i] *= ls;
+            av[i] *= as;
+            av[c + i] *= as;
+            av[2 * c + i] *= as;
+        }
+
+        // rarely used, done by the body itself
+        for (int i = start; i < end; i++) {
+            if (additionalDamping[i]) {
+                RigidBody body = bodies[i];
+                body.storeVelocities(this, i);
+                body.applyAdditionalDamping();
+                body.loadVelocities(this, i);
+            }
+        }
+    }
+
+    /**
+     * Predicts transforms using current velocities, same as {@link TransformUtil#integrateTransform}.
+     */
+    public void predictIntegratedTransforms(float timeStep, int start, int end) {
+        int c = capacity;
+        float[] p = position;
+        float[] o = orientation;
+        float[] lv = linearVelocity;
+        float[] av = angularVelocity;
+        float[] pp = predictedPosition;
+        float[] po = predictedOrientation;
+
+        for (int i = start; i < end; i++) {
+            pp[i] = timeStep * lv[i] + p[i];
+            pp[c + i] = timeStep * lv[c + i] + p[c + i];
+            pp[2 * c + i] = timeStep * lv[2 * c + i] + p[2 * c + i];
+        }
+
+        for (int i = start; i < end; i++) {
+            float wx = av[i], wy = av[c + i], wz = av[2 * c + i];
+            float angle = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+
+            // limit the angular motion
+            if (angle * timeStep > TransformUtil.ANGULAR_MOTION_THRESHOLD) {
+                angle = TransformUtil.ANGULAR_MOTION_THRESHOLD / timeStep;
+            }
+
+            float s;
+            if (angle < 0.001f) {
+                // use Taylor's expansions of sync function
+                s = 0.5f * timeStep - (timeStep * timeStep * timeStep) * (0.020833333333f) * angle * angle;
+            } else {
+                s = (float) Math.sin(0.5f * angle * timeStep) / angle;
+            }
+            float dx = s * wx, dy = s * wy, dz = s * wz;
+            float dw = (float) Math.cos(angle * timeStep * 0.5f);
+
+            float ox = o[i], oy = o[c + i], oz = o[2 * c + i], ow = o[3 * c + i];
+            float qx = dw * ox + ow * dx + dy * oz - dz * oy;
+            float qy = dw * oy + ow * dy - dx * oz + dz * ox;
+            float qz = dw * oz + ow * dz + dx * oy - dy * ox;
+            float qw = dw * ow - dx * ox - dy * oy - dz * oz;
+
+            float norm = qx * qx + qy * qy + qz * qz + qw * qw;
+            if (norm > 0f) {
+                norm = 1f / (float) Math.sqrt(norm);
+                qx *= norm;
+                qy *= norm;
+                qz *= norm;
+                qw *= norm;
+            }
+            po[i] = qx;
+            po[c + i] = qy;
+            po[2 * c + i] = qz;
+            po[3 * c + i] = qw;
+        }
+    }
+
+    /**
+     * Returns squared distance between current and predicted position.
+     */
+    public float getPredictedSquareMotion(int index) {
+        int c = capacity;
+        float dx = predictedPosition[index] - position[index];
+        float dy = predictedPosition[c + index] - position[c + index];
+        float dz = predictedPosition[2 * c + index] - position[2 * c + index];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Computes basis and world inverse inertia tensor of predicted transforms.
+     */
+    public void updateInertiaTensors(int start, int end) {
+        int c = capacity;
+        float[] po = predictedOrientation;
+        float[] b = predictedBasis;
+        float[] il = invInertiaLocal;
+        float[] iw = invInertiaWorld;
+
+        for (int i = start; i < end; i++) {
+            float x = po[i], y = po[c + i], z = po[2 * c + i], w = po[3 * c + i];
+            float d = x * x + y * y + z * z + w * w;
+            float s = 2f / d;
+            float xs = x * s, ys = y * s, zs = z * s;
+            float wx = w * xs, wy = w * ys, wz = w * zs;
+            float xx = x * xs, xy = x * ys, xz = x * zs;
+            float yy = y * ys, yz = y * zs, zz = z * zs;
+            b[i] = 1f - (yy + zz);
+            b[c + i] = xy - wz;
+            b[2 * c + i] = xz + wy;
+            b[3 * c + i] = xy + wz;
+            b[4 * c + i] = 1f - (xx + zz);
+            b[5 * c + i] = yz - wx;
+            b[6 * c + i] = xz - wy;
+            b[7 * c + i] = yz + wx;
+            b[8 * c + i] = 1f - (xx + yy);
+        }
+
+        // invInertiaWorld = basis * diag(invInertiaLocal) * basis^T
+        for (int i = start; i < end; i++) {
+            float sx = il[i], sy = il[c + i], sz = il[2 * c + i];
+            float b00 = b[i], b01 = b[c + i], b02 = b[2 * c + i];
+            float b10 = b[3 * c + i], b11 = b[4 * c + i], b12 = b[5 * c + i];
+            float b20 = b[6 * c + i], b21 = b[7 * c + i], b22 = b[8 * c + i];
+            float s00 = b00 * sx, s01 = b01 * sy, s02 = b02 * sz;
+            float s10 = b10 * sx, s11 = b11 * sy, s12 = b12 * sz;
+            float s20 = b20 * sx, s21 = b21 * sy, s22 = b22 * sz;
+            iw[i] = s00 * b00 + s01 * b01 + s02 * b02;
+            iw[c + i] = s00 * b10 + s01 * b11 + s02 * b12;
+            iw[2 * c + i] = s00 * b20 + s01 * b21 + s02 * b22;
+            iw[3 * c + i] = s10 * b00 + s11 * b01 + s12 * b02;
+            iw[4 * c + i] = s10 * b10 + s11 * b11 + s12 * b12;
+            iw[5 * c + i] = s10 * b20 + s11 * b21 + s12 * b22;
+            iw[6 * c + i] = s20 * b00 + s21 * b01 + s22 * b02;
+            iw[7 * c + i] = s20 * b10 + s21 * b11 + s22 * b12;
+            iw[8 * c + i] = s20 * b20 + s21 * b21 + s22 * b22;
+        }
+    }
+
+}
@@ -185,23 +185,23 @@ public class GImpactCollisionAlgorithm extends CollisionAlgorithm {
 
             if (child_has_transform0) {
                 tmpTrans.mul(orgtrans0, shape0.getChildTransform(triface0));
-                body0.setWorldTransform(tmpTrans);
+                body0.internalSetTemporaryWorldTransform(tmpTrans);
             }
 
             if (child_has_transform1) {
                 tmpTrans.mul(orgtrans1, shape1.getChildTransform(triface1));
-                body1.setWorldTransform(tmpTrans);
+                body1.internalSetTemporaryWorldTransform(tmpTrans);
             }
 
             // collide two convex shapes
             convex_vs_convex_collision(body0, body1, colshape0, colshape1);
 
             if (child_has_transform0) {
-                body0.setWorldTransform(orgtrans0);
+                body0.internalSetTemporaryWorldTransform(orgtrans0);
             }
 
             if (child_has_transform1) {
-                body1.setWorldTransform(orgtrans1);
+                body1.internalSetTemporaryWorldTransform(orgtrans1);
             }
 
         }
@@ -276,7 +276,7 @@ public class GImpactCollisionAlgorithm extends CollisionAlgorithm {
 
             if (child_has_transform0) {
                 tmpTrans.mul(orgtrans0, shape0.getChildTransform(child_index));
-                body0.setWorldTransform(tmpTrans);
+                body0.internalSetTemporaryWorldTransform(tmpTrans);
             }
 
             // collide two shapes
@@ -288,7 +288,7 @@ public class GImpactCollisionAlgorithm extends CollisionAlgorithm {
 
             // restore transforms
             if (child_has_transform0) {
-                body0.setWorldTransform(orgtrans0);
+                body0.internalSetTemporaryWorldTransform(orgtrans0);
             }
 
         }
@@ -306,14 +306,14 @@ public class GImpactCollisionAlgorithm extends CollisionAlgorithm {
             CollisionShape colshape1 = shape1.getChildShape(i);
             childtrans1.mul(orgtrans1, shape1.getChildTransform(i, tmpTrans));
 
-            body1.setWorldTransform(childtrans1);
+            body1.internalSetTemporaryWorldTransform(childtrans1);
 
             // collide child shape
             gimpact_vs_shape(body0, body1,
                     shape0, colshape1, swapped);
 
             // restore transforms
-            body1.setWorldTransform(orgtrans1);
+            body1.internalSetTemporaryWorldTransform(orgtrans1);
         }
     }
 
@@ -680,7 +680,7 @@ public class GImpactCollisionAlgorithm extends CollisionAlgorithm {
     }
 
     public static class CreateFunc extends CollisionAlgorithmCreateFunc {
-        private final ObjectPool<GImpactCollisionAlgorithm> pool = ObjectPool.get(GImpactCollisionAlgorithm.class);
+        private final ObjectPool<GImpactCollisionAlgorithm> pool = new ObjectPool<GImpactCollisionAlgorithm>(GImpactCollisionAlgorithm.class);
 
         @Override
         public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
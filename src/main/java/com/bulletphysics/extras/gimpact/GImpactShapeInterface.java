@@ -69,6 +69,7 @@ public abstract class GImpactShapeInterface extends ConcaveShape {
             return;
         }
         calcLocalAABB();
+        invalidateLocalBounds();
         needs_update = false;
     }
 
@@ -67,6 +67,7 @@ public class TriangleShapeEx extends TriangleShape {
         t.transform(vertices1[0]);
         t.transform(vertices1[1]);
         t.transform(vertices1[2]);
+        invalidateLocalBounds();
     }
 
     public void buildTriPlane(Vector4f plane) {
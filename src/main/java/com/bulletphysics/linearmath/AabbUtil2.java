@@ -134,27 +134,12 @@ public class AabbUtil2 {
     }
 
     public static void transformAabb(Vector3f halfExtents, float margin, Transform t, Vector3f aabbMinOut, Vector3f aabbMaxOut) {
-        Vector3f halfExtentsWithMargin = new Vector3f();
-        halfExtentsWithMargin.x = halfExtents.x + margin;
-        halfExtentsWithMargin.y = halfExtents.y + margin;
-        halfExtentsWithMargin.z = halfExtents.z + margin;
-
-        Matrix3f abs_b = new Matrix3f(t.basis);
-        MatrixUtil.absolute(abs_b);
-
-        Vector3f tmp = new Vector3f();
-
-        Vector3f center = new Vector3f(t.origin);
-        Vector3f extent = new Vector3f();
-        abs_b.getRow(0, tmp);
-        extent.x = tmp.dot(halfExtentsWithMargin);
-        abs_b.getRow(1, tmp);
-        extent.y = tmp.dot(halfExtentsWithMargin);
-        abs_b.getRow(2, tmp);
-        extent.z = tmp.dot(halfExtentsWithMargin);
-
-        aabbMinOut.sub(center, extent);
-        aabbMaxOut.add(center, extent);
+        float hx = halfExtents.x + margin;
+        float hy = halfExtents.y + margin;
+        float hz = halfExtents.z + margin;
+
+        Vector3f center = t.origin;
+        transformExtents(t.basis, center.x, center.y, center.z, hx, hy, hz, aabbMinOut, aabbMaxOut);
     }
 
     public static void transformAabb(Vector3f localAabbMin, Vector3f localAabbMax, float margin, Transform trans, Vector3f aabbMinOut, Vector3f aabbMaxOut) {
@@ -162,36 +147,51 @@ public class AabbUtil2 {
         assert (localAabbMin.y <= localAabbMax.y);
         assert (localAabbMin.z <= localAabbMax.z);
 
-        Vector3f localHalfExtents = new Vector3f();
-        localHalfExtents.sub(localAabbMax, localAabbMin);
-        localHalfExtents.scale(0.5f);
+        float hx = (localAabbMax.x - localAabbMin.x) * 0.5f + margin;
+        float hy = (localAabbMax.y - localAabbMin.y) * 0.5f + margin;
+        float hz = (localAabbMax.z - localAabbMin.z) * 0.5f + margin;
 
-        localHalfExtents.x += margin;
-        localHalfExtents.y += margin;
-        localHalfExtents.z += margin;
+        float cx = (localAabbMax.x + localAabbMin.x) * 0.5f;
+        float cy = (localAabbMax.y + localAabbMin.y) * 0.5f;
+        float cz = (localAabbMax.z + localAabbMin.z) * 0.5f;
 
-        Vector3f localCenter = new Vector3f();
-        localCenter.add(localAabbMax, localAabbMin);
-        localCenter.scale(0.5f);
+        transformCenterExtents(trans, cx, cy, cz, hx, hy, hz, aabbMinOut, aabbMaxOut);
+    }
 
-        Matrix3f abs_b = new Matrix3f(trans.basis);
-        MatrixUtil.absolute(abs_b);
+    /**
+     * Transforms local AABB given by its center and half extents (margin already included).
+     * This is the common fast path for the world AABB of all shapes with cached local bounds,
+     * it doesn't allocate any temporaries.
+     */
+    public static void transformCenterExtents(Vector3f localCenter, Vector3f localHalfExtents, Transform trans, Vector3f aabbMinOut, Vector3f aabbMaxOut) {
+        transformCenterExtents(trans,
+                localCenter.x, localCenter.y, localCenter.z,
+                localHalfExtents.x, localHalfExtents.y, localHalfExtents.z,
+                aabbMinOut, aabbMaxOut);
+    }
 
-        Vector3f center = new Vector3f(localCenter);
-        trans.transform(center);
+    private static void transformCenterExtents(Transform trans, float cx, float cy, float cz, float hx, float hy, float hz, Vector3f aabbMinOut, Vector3f aabbMaxOut) {
+        Matrix3f b = trans.basis;
+        Vector3f o = trans.origin;
 
-        Vector3f extent = new Vector3f();
-        Vector3f tmp = new Vector3f();
+        // same operation order as Transform.transform, keeps results identical
+        float wx = b.m00 * cx + b.m01 * cy + b.m02 * cz + o.x;
+        float wy = b.m10 * cx + b.m11 * cy + b.m12 * cz + o.y;
+        float wz = b.m20 * cx + b.m21 * cy + b.m22 * cz + o.z;
 
-        abs_b.getRow(0, tmp);
-        extent.x = tmp.dot(localHalfExtents);
-        abs_b.getRow(1, tmp);
-        extent.y = tmp.dot(localHalfExtents);
-        abs_b.getRow(2, tmp);
-        extent.z = tmp.dot(localHalfExtents);
+        transformExtents(b, wx, wy, wz, hx, hy, hz, aabbMinOut, aabbMaxOut);
+    }
+
+    /**
+     * Rotates the half extents by absolute value of the basis and writes the resulting AABB around given world center.
+     */
+    private static void transformExtents(Matrix3f b, float wx, float wy, float wz, float hx, float hy, float hz, Vector3f aabbMinOut, Vector3f aabbMaxOut) {
+        float ex = Math.abs(b.m00) * hx + Math.abs(b.m01) * hy + Math.abs(b.m02) * hz;
+        float ey = Math.abs(b.m10) * hx + Math.abs(b.m11) * hy + Math.abs(b.m12) * hz;
+        float ez = Math.abs(b.m20) * hx + Math.abs(b.m21) * hy + Math.abs(b.m22) * hz;
 
-        aabbMinOut.sub(center, extent);
-        aabbMaxOut.add(center, extent);
+        aabbMinOut.set(wx - ex, wy - ey, wz - ez);
+        aabbMaxOut.set(wx + ex, wy + ey, wz + ez);
     }
 
 }
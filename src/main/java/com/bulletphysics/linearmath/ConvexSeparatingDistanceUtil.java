@@ -0,0 +1,120 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.linearmath;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+
+/**
+ * ConvexSeparatingDistanceUtil keeps a conservative lower bound of the distance
+ * between two convex objects, given a separating axis and distance from a previous
+ * query. The bound is reduced by the relative linear motion along the axis and by
+ * the angular motion of both objects, so the exact query can be skipped while it
+ * stays positive.
+ */
+public class ConvexSeparatingDistanceUtil {
+
+    private final Transform transA = new Transform();
+    private final Transform transB = new Transform();
+    private final Vector3f separatingNormal = new Vector3f();
+    private float boundingRadiusA;
+    private float boundingRadiusB;
+    private float separatingDistance;
+
+    private final Vector3f relLinMotion = new Vector3f();
+    private final Vector3f tmp = new Vector3f();
+
+    /**
+     * Resets the bound, bounding radii are measured from the origin of each object
+     * (see {@link com.bulletphysics.collision.shapes.CollisionShape#getAngularMotionDisc}).
+     */
+    public void init(float boundingRadiusA, float boundingRadiusB) {
+        this.boundingRadiusA = boundingRadiusA;
+        this.boundingRadiusB = boundingRadiusB;
+        this.separatingDistance = 0f;
+    }
+
+    public float getConservativeSeparatingDistance() {
+        return separatingDistance;
+    }
+
+    /**
+     * Reduces the bound by the motion of both objects since the last update.
+     */
+    public void updateSeparatingDistance(Transform transA, Transform transB) {
+        if (separatingDistance > 0f) {
+            relLinMotion.sub(transB.origin, this.transB.origin);
+            tmp.sub(transA.origin, this.transA.origin);
+            relLinMotion.sub(tmp);
+            float projectedLinMotion = relLinMotion.dot(separatingNormal);
+            if (projectedLinMotion < 0f) {
+                projectedLinMotion = 0f;
+            }
+
+            float angularMotion = boundingRadiusA * rotationChord(this.transA.basis, transA.basis) +
+                    boundingRadiusB * rotationChord(this.transB.basis, transB.basis);
+
+            separatingDistance -= projectedLinMotion + angularMotion;
+        }
+
+        this.transA.set(transA);
+        this.transB.set(transB);
+    }
+
+    /**
+     * Stores result of an exact query. The separating vector points from B to A and
+     * doesn't need to be normalized. Non-positive distance disables the bound.
+     */
+    public void initSeparatingDistance(Vector3f separatingVector, float separatingDistance, Transform transA, Transform transB) {
+        this.separatingDistance = separatingDistance;
+        if (separatingDistance > 0f) {
+            float len = separatingVector.length();
+            if (len < 1e-6f) {
+                this.separatingDistance = 0f;
+                return;
+            }
+            separatingNormal.scale(1f / len, separatingVector);
+            this.transA.set(transA);
+            this.transB.set(transB);
+        }
+    }
+
+    /**
+     * Returns the maximum displacement of a point at unit distance from the rotation
+     * center, ie. the chord 2*sin(angle/2) = sqrt(3 - trace(R0^T * R1)).
+     */
+    private static float rotationChord(Matrix3f r0, Matrix3f r1) {
+        if (r0.equals(r1)) {
+            // avoid accumulating rounding errors for objects that don't rotate
+            return 0f;
+        }
+        float trace =
+                r0.m00 * r1.m00 + r0.m10 * r1.m10 + r0.m20 * r1.m20 +
+                r0.m01 * r1.m01 + r0.m11 * r1.m11 + r0.m21 * r1.m21 +
+                r0.m02 * r1.m02 + r0.m12 * r1.m12 + r0.m22 * r1.m22;
+        float chordSqr = 3f - trace;
+        return chordSqr > 0f ? (float) Math.sqrt(chordSqr) : 0f;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2008 Erwin Coumans  http://www.bulletphysics.com/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package com.bulletphysics.dynamics;
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import com.bulletphysics.linearmath.DefaultMotionState;
+import com.bulletphysics.linearmath.Transform;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.vecmath.Vector3f;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DiscreteDynamicsWorld#setTransformExportBuffers}.
+ */
+public class TransformExportTest {
+
+    private static final int BODY_ID = 7;
+
+    private DiscreteDynamicsWorld world;
+    private RigidBody body;
+    private FloatBuffer transforms;
+    private IntBuffer ids;
+
+    @Before
+    public void setUp() {
+        DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+        world = new DiscreteDynamicsWorld(new CollisionDispatcher(collisionConfiguration), new DbvtBroadphase(),
+                new SequentialImpulseConstraintSolver(), collisionConfiguration);
+        world.setGravity(new Vector3f(0f, -10f, 0f));
+
+        Transform trans = new Transform();
+        trans.setIdentity();
+        trans.origin.set(0f, -1f, 0f);
+        world.addRigidBody(new RigidBody(new RigidBodyConstructionInfo(0f, new DefaultMotionState(trans),
+                new BoxShape(new Vector3f(50f, 1f, 50f)), new Vector3f())));
+
+        BoxShape box = new BoxShape(new Vector3f(0.5f, 0.5f, 0.5f));
+        Vector3f localInertia = new Vector3f();
+        box.calculateLocalInertia(1f, localInertia);
+        trans.origin.set(0f, 0.5f, 0f);
+        body = new RigidBody(new RigidBodyConstructionInfo(1f, new DefaultMotionState(trans), box, localInertia));
+        body.setUserIndex(BODY_ID);
+        world.addRigidBody(body);
+
+        transforms = ByteBuffer.allocateDirect(16 * 7 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        ids = ByteBuffer.allocateDirect(16 * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        world.setTransformExportBuffers(transforms, ids);
+
+        // let the body fall asleep, it is exported once and then left out
+        for (int i = 0; i < 600 && body.isActive(); i++) {
+            world.stepSimulation(1f / 60f, 1);
+        }
+        world.stepSimulation(1f / 60f, 1);
+        assertFalse(body.isActive());
+        assertEquals(0, world.getNumExportedTransforms());
+    }
+
+    @Test
+    public void sleepingBodyMovedBySetCenterOfMassTransformIsExported() {
+        Transform trans = new Transform();
+        trans.setIdentity();
+        trans.origin.set(10f, 3f, -4f);
+        body.setCenterOfMassTransform(trans);
+        world.stepSimulation(1f / 60f, 1);
+
+        assertExported(trans.origin);
+    }
+
+    @Test
+    public void sleepingBodyMovedBySetWorldTransformIsExported() {
+        Transform trans = new Transform();
+        trans.setIdentity();
+        trans.origin.set(-6f, 2f, 8f);
+        body.setWorldTransform(trans);
+        world.stepSimulation(1f / 60f, 1);
+
+        assertExported(trans.origin);
+
+        // not exported again until it moves
+        world.stepSimulation(1f / 60f, 1);
+        assertEquals(0, world.getNumExportedTransforms());
+    }
+
+    private void assertExported(Vector3f origin) {
+        assertFalse(body.isActive());
+        int index = -1;
+        for (int i = 0; i < world.getNumExportedTransforms(); i++) {
+            if (ids.get(i) == BODY_ID) {
+                index = i;
+            }
+        }
+        assertTrue("moved body was not exported", index >= 0);
+        assertEquals(origin.x, transforms.get(index * 7), 1e-5f);
+        assertEquals(origin.y, transforms.get(index * 7 + 1), 1e-5f);
+        assertEquals(origin.z, transforms.get(index * 7 + 2), 1e-5f);
+    }
+
+}